@@ -6,12 +6,15 @@ import java.util.List;
 import algorithms.Algorithm;
 import algorithms.Option;
 import algorithms.Parameter;
+import api.UsageException;
 import archive.ArchiveFactoryCreator;
 import archive.ArchiveReader;
 import archive.ArchiveReaderFactory;
 import archive.ArchiveWriter;
 import archive.ArchiveWriterFactory;
 import key.Key;
+import logging.LogLevel;
+import logging.Logger;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -31,6 +34,8 @@ public class Definition implements algorithms.Definition
 	public static final String WIDTH_PARAM = "Width";
 	public static final String HEIGHT_PARAM = "Height";
 	public static final String COLORS_PARAM = "Colors";
+	public static final String COMPRESSION_LEVEL_PARAM = "CompressionLevel";
+	public static final String FILTER_STRATEGY_PARAM = "FilterStrategy";
 	
 	private static Definition s_self;
 
@@ -118,6 +123,38 @@ public class Definition implements algorithms.Definition
 			algo.addParameter(param);
 		}
 
+		{
+			// compression level
+			Parameter param = new Parameter(COMPRESSION_LEVEL_PARAM, Parameter.INT_TYPE, false, true);
+			param.setDescription("How hard to compress the output image. Higher levels make "
+				+ "smaller files but take longer to create. (0 is no compression, 9 is the most.)");
+
+			param.addOption(new Option("0", "9"));
+			
+			param.setValue("6");
+
+			algo.addParameter(param);
+		}
+		
+		{
+			// filter strategy
+			Parameter param = new Parameter(FILTER_STRATEGY_PARAM, Parameter.STRING_TYPE, false, true);
+			param.setDescription("How rows of pixels are filtered before compression. "
+				+ "Adaptive tries every filter on every row, which makes the smallest files "
+				+ "but is the slowest. None is the fastest.");
+
+			param.addOption(new Option("adaptive"));
+			param.addOption(new Option("none"));
+			param.addOption(new Option("sub"));
+			param.addOption(new Option("up"));
+			param.addOption(new Option("average"));
+			param.addOption(new Option("paeth"));
+			
+			param.setValue("adaptive");
+
+			algo.addParameter(param);
+		}
+
 		return algo;
 	}
 
@@ -159,11 +196,39 @@ public class Definition implements algorithms.Definition
 	{
 		List<Algorithm> presets = new LinkedList<Algorithm>();
 		
-		//plain default
+		//plain default, balances size and speed
 		Algorithm defaultAlgo = constructDefaultAlgorithm();
 		defaultAlgo.setPresetName("image_default");
 		presets.add(defaultAlgo);
 		
+		try
+		{
+			//fastest
+			Algorithm fastest = constructDefaultAlgorithm();
+			fastest.setPresetName("image_fastest");
+			fastest.setParameter(COMPRESSION_LEVEL_PARAM, "1");
+			fastest.setParameter(FILTER_STRATEGY_PARAM, "none");
+			presets.add(fastest);
+			
+			//balanced
+			Algorithm balanced = constructDefaultAlgorithm();
+			balanced.setPresetName("image_balanced");
+			balanced.setParameter(COMPRESSION_LEVEL_PARAM, "4");
+			balanced.setParameter(FILTER_STRATEGY_PARAM, "sub");
+			presets.add(balanced);
+			
+			//smallest
+			Algorithm smallest = constructDefaultAlgorithm();
+			smallest.setPresetName("image_smallest");
+			smallest.setParameter(COMPRESSION_LEVEL_PARAM, "9");
+			smallest.setParameter(FILTER_STRATEGY_PARAM, "adaptive");
+			presets.add(smallest);
+		}
+		catch (UsageException e)
+		{
+			Logger.log(LogLevel.k_debug,  e, false);
+		}
+		
 		return presets;
 	}
 }
@@ -16,6 +16,9 @@ import util.algorithms.UniqueRandomRange;
  */
 public class Image implements Archive
 {
+	// the number of bytes whose order and xor values are drawn at a time
+	protected static final int CHUNK_SIZE = 8192;
+
 	protected Algorithm f_algorithm;
 	protected BufferedImage f_img;
 	protected UniqueRandomRange f_randOrder;
@@ -26,7 +29,6 @@ public class Image implements Archive
 	protected byte[] f_uuid;
 	protected int f_width;
 	protected int f_height;
-	protected int[] f_rgbs;
 
 	/**
 	 * Creates an image archive interpreter instance
@@ -41,7 +43,6 @@ public class Image implements Archive
 		f_width = Integer.parseInt(p_algo.getParameterValue(Definition.WIDTH_PARAM));
 		f_height = Integer.parseInt(p_algo.getParameterValue(Definition.HEIGHT_PARAM));
 		f_maxWriteSize = f_width * f_height * 3;
-		f_rgbs = new int[f_width * f_height];
 	}
 
 	/**
@@ -50,8 +51,17 @@ public class Image implements Archive
 	protected void reset()
 	{
 		// use any constant seed to start
-		f_random = new HashRandom(Constants.DEFAULT_SEED);
-		f_randOrder = new UniqueRandomRange(f_random, f_maxWriteSize);
+		// (the generator and range are reused between archives)
+		if (f_random == null)
+		{
+			f_random = new HashRandom(Constants.DEFAULT_SEED);
+			f_randOrder = new UniqueRandomRange(f_random, f_maxWriteSize);
+		}
+		else
+		{
+			f_random.reseed(Constants.DEFAULT_SEED);
+			f_randOrder.reset(f_random, f_maxWriteSize);
+		}
 	}
 
 	/* (non-Javadoc)
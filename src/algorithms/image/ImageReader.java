@@ -3,16 +3,13 @@ package algorithms.image;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
 import algorithms.Algorithm;
 import archive.ArchiveReader;
-import archive.ArchiveIOException;
 import key.Key;
 import logging.LogLevel;
 import logging.Logger;
 import util.ByteConversion;
-import util.algorithms.ImageUtil;
+import util.algorithms.PNGDecoder;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -20,6 +17,12 @@ import util.algorithms.ImageUtil;
  */
 public class ImageReader extends Image implements ArchiveReader
 {
+	private PNGDecoder f_decoder;
+	private byte[] f_pixelData;
+	private byte[] f_cropped;
+	private int[] f_indexChunk;
+	private byte[] f_xorChunk;
+
 	/**
 	 * Constructs an image reader
 	 * @param p_algo The associated algorithm which contains required
@@ -29,17 +32,9 @@ public class ImageReader extends Image implements ArchiveReader
 	public ImageReader(Algorithm p_algo, Key p_key)
 	{
 		super(p_algo, p_key);
-	}
-
-	/**
-	 * Reads a byte of data from the archive
-	 * @return The byte that was read
-	 * @throws ArchiveIOException if there are no more bytes to read
-	 */
-	private byte read() throws ArchiveIOException
-	{
-		byte secured = getImageByte(f_randOrder.next());
-		return ByteConversion.intToByte(secured ^ f_random.nextByte());
+		f_decoder = new PNGDecoder();
+		f_indexChunk = new int[CHUNK_SIZE];
+		f_xorChunk = new byte[CHUNK_SIZE];
 	}
 
 	/* (non-Javadoc)
@@ -48,19 +43,37 @@ public class ImageReader extends Image implements ArchiveReader
 	@Override
 	public int read(byte[] p_bytes, int p_offset, int p_length)
 	{
-		for (int x = p_offset; x < p_offset + p_length; ++x)
+		// only as many bytes as there are image indices left can be read
+		int total = Math.min(p_length, f_randOrder.remainingNumbers());
+
+		//before the stream is secured, the order and the xor bytes come from
+		//the same generator, so they must be drawn one byte at a time
+		if (f_randOrder.usesGenerator(f_random))
 		{
-			try
+			for (int x = p_offset; x < p_offset + total; ++x)
 			{
-				p_bytes[x] = read();
-			}
-			catch (ArchiveIOException e)
-			{
-				return x;
+				f_randOrder.next(f_indexChunk, 0, 1);
+				p_bytes[x] = ByteConversion.intToByte(getImageByte(f_indexChunk[0]) ^ f_random.nextByte());
 			}
+
+			return p_offset + total;
+		}
+
+		//otherwise, pull the order and the xor bytes in chunks
+		int read = 0;
+		while (read < total)
+		{
+			int chunk = f_randOrder.next(f_indexChunk, 0, Math.min(CHUNK_SIZE, total - read));
+			f_random.nextBytes(f_xorChunk, 0, chunk);
+
+			int start = p_offset + read;
+			for (int i = 0; i < chunk; ++i)
+				p_bytes[start + i] = ByteConversion.intToByte(getImageByte(f_indexChunk[i]) ^ f_xorChunk[i]);
+
+			read += chunk;
 		}
 
-		return p_offset + p_length;
+		return p_offset + read;
 	}
 
 	/**
@@ -70,21 +83,9 @@ public class ImageReader extends Image implements ArchiveReader
 	 */
 	private byte getImageByte(int p_index)
 	{
-		int color = p_index % 3;
-		int pixel = p_index / 3;
-
-		if (color == 0)
-		{
-			return ImageUtil.getRed(f_rgbs[pixel]);
-		}
-		else if (color == 1)
-		{
-			return ImageUtil.getGreen(f_rgbs[pixel]);
-		}
-		else
-		{
-			return ImageUtil.getBlue(f_rgbs[pixel]);
-		}
+		// pixel data is stored in red, green, blue order, which
+		// is the same order as the image indices
+		return f_pixelData[p_index];
 	}
 
 	/* (non-Javadoc)
@@ -93,8 +94,27 @@ public class ImageReader extends Image implements ArchiveReader
 	@Override
 	public void loadFile(File p_file) throws IOException
 	{
-		f_img = ImageIO.read(p_file);
-		f_img.getRGB(0, 0, f_width, f_height, f_rgbs, 0, f_width);
+		// the decoder keeps its buffers, so loading each archive doesn't
+		// allocate a new set of image sized arrays
+		PNGDecoder decoder = f_decoder;
+		decoder.read(p_file);
+		if (decoder.getWidth() < f_width || decoder.getHeight() < f_height)
+			throw new IOException("The image is smaller than the algorithm's dimensions: "
+							+ p_file.getName());
+
+		f_pixelData = decoder.getRGB();
+
+		// only the top left corner of a larger image is used
+		if (decoder.getWidth() != f_width)
+		{
+			if (f_cropped == null)
+				f_cropped = new byte[f_maxWriteSize];
+
+			for (int y = 0; y < f_height; ++y)
+				System.arraycopy(f_pixelData, y * decoder.getWidth() * 3, f_cropped,
+								y * f_width * 3, f_width * 3);
+			f_pixelData = f_cropped;
+		}
 
 		reset();
 	}
@@ -105,20 +125,23 @@ public class ImageReader extends Image implements ArchiveReader
 	@Override
 	public long skip(long p_bytes)
 	{
-		long skipped = 0;
-		try
+		// only as many bytes as there are image indices left can be skipped
+		int skipped = (int) Math.min(p_bytes, f_randOrder.remainingNumbers());
+
+		// skipping advances the order and the xor bytes exactly as reading
+		// would, but the image itself is never touched
+		if (f_randOrder.usesGenerator(f_random))
 		{
-			for (long l = 0; l < p_bytes; ++l)
+			for (int i = 0; i < skipped; ++i)
 			{
-				f_randOrder.next();
+				f_randOrder.skip(1);
 				f_random.nextByte();
-				++skipped;
 			}
 		}
-		catch (ArchiveIOException e)
+		else
 		{
-			// couldn't skip as many as requested,
-			// nothing to do
+			f_randOrder.skip(skipped);
+			f_random.skipBytes(skipped);
 		}
 
 		Logger.log(LogLevel.k_debug, "Skipping " + p_bytes + " bytes was requested and "
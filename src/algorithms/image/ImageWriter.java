@@ -1,12 +1,12 @@
 package algorithms.image;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
 import algorithms.Algorithm;
+import algorithms.Parameter;
 import archive.ArchiveWriter;
 import archive.ArchiveIOException;
 import key.Key;
@@ -14,7 +14,7 @@ import logging.LogLevel;
 import logging.Logger;
 import report.JobStatus;
 import util.ByteConversion;
-import util.algorithms.ImageUtil;
+import util.algorithms.PNGEncoder;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -22,7 +22,10 @@ import util.algorithms.ImageUtil;
  */
 public class ImageWriter extends Image implements ArchiveWriter
 {
-	private byte[][] f_imgBytes;
+	private byte[] f_pixelData;
+	private int[] f_indexChunk;
+	private byte[] f_xorChunk;
+	private PNGEncoder f_encoder;
 
 	/**
 	 * Constructs an image writer
@@ -34,7 +37,18 @@ public class ImageWriter extends Image implements ArchiveWriter
 	{
 		super(p_algo, p_key);
 		
-		f_imgBytes = new byte[3][f_width * f_height];
+		// data is written straight into the raster of a single image which
+		// lives as long as the writer, so nothing needs to be repacked on save
+		// should really use the rgb configuration parameter somehow
+		f_img = new BufferedImage(f_width, f_height, BufferedImage.TYPE_3BYTE_BGR);
+		f_pixelData = ((DataBufferByte) f_img.getRaster().getDataBuffer()).getData();
+		f_indexChunk = new int[CHUNK_SIZE];
+		f_xorChunk = new byte[CHUNK_SIZE];
+
+		Parameter level = p_algo.getParameter(Definition.COMPRESSION_LEVEL_PARAM);
+		Parameter filter = p_algo.getParameter(Definition.FILTER_STRATEGY_PARAM);
+		f_encoder = PNGEncoder.create(level == null ? null : level.getValue(),
+						filter == null ? null : filter.getValue());
 	}
 
 	/* (non-Javadoc)
@@ -43,9 +57,6 @@ public class ImageWriter extends Image implements ArchiveWriter
 	@Override
 	public void newArchive()
 	{
-		// should really use the rgb configuration parameter somehow
-		f_img = new BufferedImage(f_width, f_height, BufferedImage.TYPE_INT_RGB);
-		
 		reset();
 	}
 
@@ -74,13 +85,35 @@ public class ImageWriter extends Image implements ArchiveWriter
 	@Override
 	public int write(byte[] p_bytes, int p_offset, int p_length)
 	{
-		for (int x = p_offset; x < p_offset + p_length; ++x)
+		//before the stream is secured, the order and the xor bytes come from
+		//the same generator, so they must be drawn one byte at a time
+		if (f_randOrder.usesGenerator(f_random))
 		{
-			if (!write(p_bytes[x]))
-				return x - p_offset;
+			for (int x = p_offset; x < p_offset + p_length; ++x)
+			{
+				if (!write(p_bytes[x]))
+					return x - p_offset;
+			}
+
+			return p_length;
 		}
 
-		return p_length;
+		//otherwise, pull the order and the xor bytes in chunks
+		int total = Math.min(p_length, f_randOrder.remainingNumbers());
+		int written = 0;
+		while (written < total)
+		{
+			int chunk = f_randOrder.next(f_indexChunk, 0, Math.min(CHUNK_SIZE, total - written));
+			f_random.nextBytes(f_xorChunk, 0, chunk);
+
+			int start = p_offset + written;
+			for (int i = 0; i < chunk; ++i)
+				setImageByte(f_indexChunk[i], ByteConversion.intToByte(p_bytes[start + i] ^ f_xorChunk[i]));
+
+			written += chunk;
+		}
+
+		return written;
 	}
 
 	/* (non-Javadoc)
@@ -89,13 +122,6 @@ public class ImageWriter extends Image implements ArchiveWriter
 	@Override
 	public void saveFile(File p_archiveStagingFolder, String p_fileName)
 	{
-		//compute rgb's
-		for (int i = 0; i < f_width * f_height; ++i)
-			f_rgbs[i] = ImageUtil.toRGB(f_imgBytes[0][i], f_imgBytes[1][i], f_imgBytes[2][i]);
-		
-		//assign imgData to image
-		f_img.setRGB(0, 0, f_width, f_height, f_rgbs, 0, f_width);
-		
 		try
 		{
 			File imgFile = new File(p_archiveStagingFolder.getAbsolutePath(), p_fileName + ".png");
@@ -103,7 +129,7 @@ public class ImageWriter extends Image implements ArchiveWriter
 							"Saving archive file: " + imgFile.getAbsolutePath());
 			if (!imgFile.getParentFile().exists())
 				imgFile.getParentFile().mkdirs();
-			ImageIO.write(f_img, "PNG", imgFile);
+			f_encoder.write(f_img, imgFile);
 
 			// update progress
 			JobStatus.incrementArchivesCreated(1);
@@ -123,7 +149,8 @@ public class ImageWriter extends Image implements ArchiveWriter
 	{
 		int color = p_index % 3;
 		int pixel = p_index / 3;
-		
-		f_imgBytes[color][pixel] = p_data;
+
+		// the raster stores each pixel in blue, green, red order
+		f_pixelData[(pixel * 3) + (2 - color)] = p_data;
 	}
 }
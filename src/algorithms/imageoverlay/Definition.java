@@ -31,6 +31,8 @@ public class Definition implements algorithms.Definition
 	public static final String IMAGE_FOLDER_PARAM = "ImageFolder";
 	public static final String IMAGE_CONSUMPTION_MODE_PARAM = "ImageConsumptionMode";
 	public static final String IMAGE_TYPE_PARAM = "ImageType";
+	public static final String COMPRESSION_LEVEL_PARAM = "CompressionLevel";
+	public static final String FILTER_STRATEGY_PARAM = "FilterStrategy";
 	
 	private static Definition s_self;
 
@@ -131,6 +133,38 @@ public class Definition implements algorithms.Definition
 			algo.addParameter(param);
 		}
 
+		{
+			// compression level
+			Parameter param = new Parameter(COMPRESSION_LEVEL_PARAM, Parameter.INT_TYPE, false, true);
+			param.setDescription("How hard to compress the output image. Higher levels make "
+				+ "smaller files but take longer to create. (0 is no compression, 9 is the most.)");
+
+			param.addOption(new Option("0", "9"));
+			
+			param.setValue("6");
+
+			algo.addParameter(param);
+		}
+		
+		{
+			// filter strategy
+			Parameter param = new Parameter(FILTER_STRATEGY_PARAM, Parameter.STRING_TYPE, false, true);
+			param.setDescription("How rows of pixels are filtered before compression. "
+				+ "Adaptive tries every filter on every row, which makes the smallest files "
+				+ "but is the slowest. None is the fastest.");
+
+			param.addOption(new Option("adaptive"));
+			param.addOption(new Option("none"));
+			param.addOption(new Option("sub"));
+			param.addOption(new Option("up"));
+			param.addOption(new Option("average"));
+			param.addOption(new Option("paeth"));
+			
+			param.setValue("adaptive");
+
+			algo.addParameter(param);
+		}
+
 		return algo;
 	}
 
@@ -27,10 +27,12 @@ public class ImageOverlay implements Archive
 	protected byte[] f_uuid;
 	protected InsertionDensity f_density;
 	protected int f_colorIndex;
-	protected int[] f_split;
-	protected int[] f_curPixelCoord;
+	protected int f_colorShift;
+	protected int[] f_pixels;
+	protected int f_curPixel;
 	private int f_colorMod;
 	private boolean f_incrementFailed;
+	private int[] f_pixelDraw;
 
 	/**
 	 * Creates an image overlay archive interpreter instance
@@ -47,20 +49,20 @@ public class ImageOverlay implements Archive
 		f_incrementFailed = false;
 		f_colorIndex = 0;
 		f_colorMod = 0;
+		f_pixelDraw = new int[1];
 		
 		f_density = InsertionDensity.parseDensity(p_algo.getParameterValue("InsertionDensity"));
-		f_curPixelCoord = new int[2];
-		
-		//the split array is just a stationary array
-		//for efficiency in the byte splitting operations
-		if (f_density.equals(InsertionDensity.k_25))
-		{
-			f_split = new int[4];
-		}
-		else //k_50
-		{
-			f_split = new int[2];
-		}
+	}
+
+	/**
+	 * Sets the image to read or write, converting it to rgb if needed. The image's
+	 * backing array is then used directly for all color access.
+	 * @param p_img The image
+	 */
+	protected void setImage(BufferedImage p_img)
+	{
+		f_img = ImageUtil.toIntRGB(p_img);
+		f_pixels = ImageUtil.getIntRGBData(f_img);
 	}
 
 	/**
@@ -69,12 +71,20 @@ public class ImageOverlay implements Archive
 	public void reset()
 	{
 		// use any constant seed to start
-		f_random = new HashRandom(Constants.DEFAULT_SEED);
+		// (the generator and range are reused between archives)
+		if (f_random == null)
+			f_random = new HashRandom(Constants.DEFAULT_SEED);
+		else
+			f_random.reseed(Constants.DEFAULT_SEED);
 
 		// obtain a random order
-		f_randOrder = new UniqueRandomRange(f_random, f_img.getWidth() * f_img.getHeight());
+		if (f_randOrder == null)
+			f_randOrder = new UniqueRandomRange(f_random, f_img.getWidth() * f_img.getHeight());
+		else
+			f_randOrder.reset(f_random, f_img.getWidth() * f_img.getHeight());
 
 		f_colorIndex = 0;
+		f_colorShift = 16;
 		f_colorMod = 0;
 
 		f_incrementFailed = false;
@@ -91,6 +101,7 @@ public class ImageOverlay implements Archive
 			throw new ArchiveIOException("The previous increment failed, so this one will too.");
 		
 		f_colorIndex = f_colorMod++ % 3;
+		f_colorShift = 16 - (8 * f_colorIndex);
 		
 		if (f_colorIndex == 0)
 			nextPixel();
@@ -104,13 +115,62 @@ public class ImageOverlay implements Archive
 	{
 		f_incrementFailed = true;
 
-		int pixel = f_randOrder.next();
-		f_curPixelCoord[1] = pixel / f_img.getWidth();//y
-		f_curPixelCoord[0] = pixel % f_img.getWidth();//x
+		f_curPixel = f_randOrder.next();
 
 		f_incrementFailed = false;
 	}
 
+	/**
+	 * Gets the number of bytes of data which fit in the rest of the image
+	 * @return The number of bytes which can still be read or written
+	 */
+	protected final int remainingBytes()
+	{
+		if (f_incrementFailed)
+			return 0;
+
+		// the colors left in the current pixel, plus all the pixels not yet drawn
+		int colorsInPixel = f_colorMod % 3 == 0 ? 0 : 3 - (f_colorMod % 3);
+		long colors = colorsInPixel + (3L * f_randOrder.remainingNumbers());
+
+		return (int) (colors / getColorsPerByte());
+	}
+
+	/**
+	 * @return The number of colors holding each byte of data
+	 */
+	protected final int getColorsPerByte()
+	{
+		return 8 / f_density.getBitsPerColor();
+	}
+
+	/**
+	 * Moves the archive interpreter forward a number of colors, leaving it in the
+	 * same state as calling nextColor() that many times. Pixels which are passed over
+	 * completely are drawn from the order but never looked at. The caller must check
+	 * that there are enough colors left (see remainingBytes()).
+	 * @param p_colors The number of colors to move forward
+	 */
+	protected final void advanceColors(int p_colors)
+	{
+		if (p_colors <= 0)
+			return;
+
+		// a pixel is drawn for every color number which is a multiple of three
+		int end = f_colorMod + p_colors;
+		int pixels = ((end + 2) / 3) - ((f_colorMod + 2) / 3);
+		if (pixels > 0)
+		{
+			f_randOrder.skip(pixels - 1);
+			f_randOrder.next(f_pixelDraw, 0, 1);
+			f_curPixel = f_pixelDraw[0];
+		}
+
+		f_colorMod = end;
+		f_colorIndex = (end - 1) % 3;
+		f_colorShift = 16 - (8 * f_colorIndex);
+	}
+
 	/* (non-Javadoc)
 	 * @see archive.Archive#getAlgorithmName()
 	 */
@@ -150,22 +210,11 @@ public class ImageOverlay implements Archive
 
 	/**
 	 * Gets the current color value
-	 * @return The current color byte
+	 * @return The current color stored as an int [0, 255]
 	 */
-	protected byte getColor()
+	protected final int getColor()
 	{
-		if (f_colorIndex == 0)
-		{
-			return ImageUtil.getRed(f_img.getRGB(f_curPixelCoord[0], f_curPixelCoord[1]));
-		}
-		else if (f_colorIndex == 1)
-		{
-			return ImageUtil.getGreen(f_img.getRGB(f_curPixelCoord[0], f_curPixelCoord[1]));
-		}
-		else
-		{
-			return ImageUtil.getBlue(f_img.getRGB(f_curPixelCoord[0], f_curPixelCoord[1]));
-		}
+		return (f_pixels[f_curPixel] >> f_colorShift) & 0xFF;
 	}
 
 	/* (non-Javadoc)
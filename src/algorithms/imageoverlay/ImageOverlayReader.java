@@ -3,13 +3,11 @@ package algorithms.imageoverlay;
 import java.io.File;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
 import algorithms.Algorithm;
 import archive.ArchiveReader;
-import archive.ArchiveIOException;
 import key.Key;
 import util.ByteConversion;
+import util.algorithms.PNGDecoder;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -17,6 +15,11 @@ import util.ByteConversion;
  */
 public class ImageOverlayReader extends ImageOverlay implements ArchiveReader
 {
+	private static final int CHUNK_SIZE = 8192;
+
+	private PNGDecoder f_decoder;
+	private byte[] f_xorChunk;
+
 	/**
 	 * Constructs an image overlay reader
 	 * @param p_algo The associated algorithm which contains required
@@ -26,66 +29,28 @@ public class ImageOverlayReader extends ImageOverlay implements ArchiveReader
 	public ImageOverlayReader(Algorithm p_algo, Key p_key)
 	{
 		super(p_algo, p_key);
+		f_decoder = new PNGDecoder();
+		f_xorChunk = new byte[CHUNK_SIZE];
 	}
 
 	/**
-	 * Reads a byte of data from the archive
-	 * @return The byte that was read
-	 * @throws ArchiveIOException if there are no more bytes to read
-	 */
-	private byte read() throws ArchiveIOException
-	{
-		byte xor = f_random.nextByte();
-
-		if (f_density.equals(InsertionDensity.k_25))
-		{
-			return ByteConversion.intToByte(ByteConversion.intToByte(steps4()) ^ xor);
-		}
-		else //k_50
-		{
-			return ByteConversion.intToByte(ByteConversion.intToByte(steps16()) ^ xor);
-		}
-	}
-	
-	/**
-	 * Reads two bits of file data per color
+	 * Reads a byte of file data from the low bits of consecutive colors. The insertion
+	 * density determines how many bits are in each color (two bits for 25%, four
+	 * bits for 50%). The caller must check that there is a byte left to read.
 	 * @return The file data byte as an int
-	 * @throws ArchiveIOException If there are no bytes left to read
 	 */
-	private final int steps4() throws ArchiveIOException
+	private final int readSplit()
 	{
-		for (int i = 0; i < 4; ++i)
-		{
-			nextColor();
-
-			int c = ByteConversion.byteToInt(getColor());
+		int bits = f_density.getBitsPerColor();
+		int dataMask = f_density.getDataMask();
 
-			f_split[i] = c % 4;
-		}
-
-		int val = (((f_split[0] * 4) + f_split[1]) * 16)
-						+ ((f_split[2] * 4) + f_split[3]);
-		
-		return val;
-	}
-	
-	/**
-	 * Reads four bits of file data per color
-	 * @return The file data byte as an int
-	 * @throws ArchiveIOException If there are no bytes left to read
-	 */
-	private final int steps16() throws ArchiveIOException
-	{
-		for (int i = 0; i < 2; ++i)
+		int val = 0;
+		for (int i = 0; i < 8; i += bits)
 		{
-			nextColor();
+			advanceColors(1);
 
-			int c = ByteConversion.byteToInt(getColor());
-
-			f_split[i] = c % 16;
+			val = (val << bits) | (getColor() & dataMask);
 		}
-
-		int val = (f_split[0] * 16) + f_split[1];
 		
 		return val;
 	}
@@ -96,19 +61,37 @@ public class ImageOverlayReader extends ImageOverlay implements ArchiveReader
 	@Override
 	public int read(byte[] p_bytes, int p_offset, int p_length)
 	{
-		for (int x = p_offset; x < p_offset + p_length; ++x)
+		// only as many bytes as there are colors left for can be read
+		int total = Math.min(p_length, remainingBytes());
+
+		//before the stream is secured, the xor bytes and the pixel order come
+		//from the same generator, so they must be drawn one byte at a time
+		if (f_randOrder.usesGenerator(f_random))
 		{
-			try
+			for (int x = p_offset; x < p_offset + total; ++x)
 			{
-				p_bytes[x] = read();
-			}
-			catch (ArchiveIOException e)
-			{
-				return x;
+				byte xor = f_random.nextByte();
+				p_bytes[x] = ByteConversion.intToByte(readSplit() ^ xor);
 			}
+
+			return p_offset + total;
+		}
+
+		//otherwise, the xor bytes are pulled in chunks
+		int read = 0;
+		while (read < total)
+		{
+			int chunk = Math.min(CHUNK_SIZE, total - read);
+			f_random.nextBytes(f_xorChunk, 0, chunk);
+
+			int start = p_offset + read;
+			for (int i = 0; i < chunk; ++i)
+				p_bytes[start + i] = ByteConversion.intToByte(readSplit() ^ f_xorChunk[i]);
+
+			read += chunk;
 		}
 
-		return p_offset + p_length;
+		return p_offset + read;
 	}
 
 	/* (non-Javadoc)
@@ -117,7 +100,10 @@ public class ImageOverlayReader extends ImageOverlay implements ArchiveReader
 	@Override
 	public void loadFile(File p_file) throws IOException
 	{
-		f_img = ImageIO.read(p_file);
+		// the decoder and the image from the last archive are reused
+		// when the next image has the same dimensions
+		f_decoder.read(p_file);
+		setImage(f_decoder.toIntRGBImage(f_img));
 		reset();
 	}
 
@@ -127,33 +113,22 @@ public class ImageOverlayReader extends ImageOverlay implements ArchiveReader
 	@Override
 	public long skip(long p_bytes)
 	{
-		long skipped = 0;
-		try
+		// only as many bytes as there are colors left for can be skipped
+		int skipped = (int) Math.min(p_bytes, remainingBytes());
+
+		// the colors are passed over without being read
+		if (f_randOrder.usesGenerator(f_random))
 		{
-			for (long l = 0; l < p_bytes; ++l)
+			for (int i = 0; i < skipped; ++i)
 			{
 				f_random.nextByte();
-				
-				if (f_density.equals(InsertionDensity.k_25))
-				{
-					nextColor();
-					nextColor();
-					nextColor();
-					nextColor();
-				}
-				else //k_50
-				{
-					nextColor();
-					nextColor();
-				}
-
-				++skipped;
+				advanceColors(getColorsPerByte());
 			}
 		}
-		catch (ArchiveIOException e)
+		else
 		{
-			// couldn't skip as many as requested,
-			// nothing to do
+			f_random.skipBytes(skipped);
+			advanceColors(skipped * getColorsPerByte());
 		}
 
 		return skipped;
@@ -1,6 +1,5 @@
 package algorithms.imageoverlay;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -9,6 +8,7 @@ import javax.imageio.ImageIO;
 
 import algorithms.Algorithm;
 import algorithms.Option;
+import algorithms.Parameter;
 import api.UsageException;
 import archive.ArchiveWriter;
 import archive.CreationJobFileState;
@@ -19,7 +19,7 @@ import logging.LogLevel;
 import logging.Logger;
 import report.JobStatus;
 import util.ByteConversion;
-import util.algorithms.ImageUtil;
+import util.algorithms.PNGEncoder;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -29,6 +29,7 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 {
 	private InputImageManager f_manager;
 	private File f_imgFile;
+	private PNGEncoder f_encoder;
 
 	/**
 	 * Constructs an image overlay writer
@@ -60,6 +61,11 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 		ConsumptionMode mode = ConsumptionMode.parseMode(
 			p_algo.getParameterValue(Definition.IMAGE_CONSUMPTION_MODE_PARAM));
 		f_manager = InputImageManager.getInstance(imageFolder, mode);
+
+		Parameter level = p_algo.getParameter(Definition.COMPRESSION_LEVEL_PARAM);
+		Parameter filter = p_algo.getParameter(Definition.FILTER_STRATEGY_PARAM);
+		f_encoder = PNGEncoder.create(level == null ? null : level.getValue(),
+						filter == null ? null : filter.getValue());
 	}
 
 	/* (non-Javadoc)
@@ -98,14 +104,14 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 		{
 			try
 			{
-				f_img = ImageIO.read(f_imgFile);
+				BufferedImage img = ImageIO.read(f_imgFile);
 				
-				//using the faster rgb math operations requires
+				//working on the raster directly requires
 				//a standard color model
-				if (f_img.getType() != BufferedImage.TYPE_INT_RGB)
-				{
-					reinterpretColorModel();
-				}
+				setImage(img);
+				if (img.getType() != BufferedImage.TYPE_INT_RGB)
+					Logger.log(LogLevel.k_debug, "Color model changed to rgb.");
+
 				foundFile = true;
 			}
 			catch (IOException e)
@@ -121,22 +127,6 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 		}
 	}
 	
-	/**
-	 * @credit http://stackoverflow.com/questions/26918675/removing-transparency-in-png-bufferedimage
-	 * Changes the color model of the current image to rgb.
-	 */
-	private void reinterpretColorModel()
-	{
-		BufferedImage copy = new BufferedImage(f_img.getWidth(), f_img.getHeight(), BufferedImage.TYPE_INT_RGB);
-		Graphics2D g2d = copy.createGraphics();
-		g2d.drawImage(f_img, 0, 0, null);
-		g2d.dispose();
-		
-		f_img = copy;
-		
-		Logger.log(LogLevel.k_debug, "Color model changed to rgb.");
-	}
-
 	/* (non-Javadoc)
 	 * @see archive.ArchiveWriter#write(byte)
 	 */
@@ -148,14 +138,7 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 			int secured = ByteConversion
 				.byteToInt(ByteConversion.intToByte(p_byte ^ f_random.nextByte()));
 			
-			if (f_density == InsertionDensity.k_25)
-			{
-				steps4(secured);
-			}
-			else //k_50
-			{
-				steps16(secured);
-			}
+			writeSplit(secured);
 		}
 		catch (ArchiveIOException e)
 		{
@@ -167,76 +150,33 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 	}
 	
 	/**
-	 * Writes a byte of data with two bits per color
-	 * @param p_val The byte of data to write stored as an int [0, 255]
-	 * @throws ArchiveIOException If no more data is available
-	 */
-	private final void steps4(int p_val) throws ArchiveIOException
-	{
-		int div16 = p_val / 16;
-		int mod16 = p_val % 16;
-
-		f_split[0] = div16 / 4;
-		f_split[1] = div16 % 4;
-		f_split[2] = mod16 / 4;
-		f_split[3] = mod16 % 4;
-
-		for (int i = 0; i < 4; ++i)
-		{
-			nextColor();
-
-			int color = ByteConversion.byteToInt(getColor());
-
-			int step = (color / 4) * 4;
-
-			setColor(ByteConversion.intToByte(step + f_split[i]));
-		}
-	}
-	
-	/**
-	 * Writes a byte of data with four bits per color
+	 * Writes a byte of data into the low bits of consecutive colors. The insertion
+	 * density determines how many bits go in each color (two bits for 25%, four
+	 * bits for 50%).
 	 * @param p_val The byte of data to write stored as an int [0, 255]
 	 * @throws ArchiveIOException If no more data is available
 	 */
-	private final void steps16(int p_val) throws ArchiveIOException
+	private final void writeSplit(int p_val) throws ArchiveIOException
 	{
-		f_split[0] = p_val / 16;
-		f_split[1] = p_val % 16;
+		int[] split = f_density.getSplit(p_val);
+		int imageMask = ~f_density.getDataMask() & 0xFF;
 
-		for (int i = 0; i < 2; ++i)
+		for (int i = 0; i < split.length; ++i)
 		{
 			nextColor();
 
-			int color = ByteConversion.byteToInt(getColor());
-
-			int step = (color / 16) * 16;
-
-			setColor(ByteConversion.intToByte(step + f_split[i]));
+			setColor((getColor() & imageMask) | split[i]);
 		}
 	}
 
 	/**
 	 * Sets the color at the current position to the specified value
-	 * @param p_data The color value to set
+	 * @param p_color The color value to set stored as an int [0, 255]
 	 */
-	private void setColor(byte p_data)
+	private void setColor(int p_color)
 	{
-		if (f_colorIndex == 0)
-		{
-			f_img.setRGB(f_curPixelCoord[0], f_curPixelCoord[1], 
-				ImageUtil.setRed(f_img.getRGB(f_curPixelCoord[0], f_curPixelCoord[1]), p_data));
-
-		}
-		else if (f_colorIndex == 1)
-		{
-			f_img.setRGB(f_curPixelCoord[0], f_curPixelCoord[1], 
-				ImageUtil.setGreen(f_img.getRGB(f_curPixelCoord[0], f_curPixelCoord[1]), p_data));
-		}
-		else
-		{
-			f_img.setRGB(f_curPixelCoord[0], f_curPixelCoord[1], 
-				ImageUtil.setBlue(f_img.getRGB(f_curPixelCoord[0], f_curPixelCoord[1]), p_data));
-		}
+		f_pixels[f_curPixel] = (f_pixels[f_curPixel] & ~(0xFF << f_colorShift))
+						| (p_color << f_colorShift);
 	}
 
 	/* (non-Javadoc)
@@ -268,7 +208,7 @@ public class ImageOverlayWriter extends ImageOverlay implements ArchiveWriter
 			if (!archiveFile.getParentFile().exists())
 				archiveFile.getParentFile().mkdirs();
 			
-			ImageIO.write(f_img, "png", archiveFile);
+			f_encoder.write(f_img, archiveFile);
 
 			// update progress
 			JobStatus.incrementArchivesCreated(1);
@@ -12,10 +12,12 @@ import java.util.Map;
  */
 public enum InsertionDensity
 {
-	k_25,
-	k_50;
+	k_25(2),
+	k_50(4);
 	
 	private static Map<String, InsertionDensity> s_map;
+	private final int f_bitsPerColor;
+	private final int[][] f_splitTable;
 	
 	static
 	{
@@ -24,6 +26,57 @@ public enum InsertionDensity
 		s_map.put("50%", k_50);
 	}
 	
+	/**
+	 * Constructs an insertion density and its split table
+	 * @param p_bitsPerColor The number of bits of file data stored in each color
+	 */
+	private InsertionDensity(int p_bitsPerColor)
+	{
+		f_bitsPerColor = p_bitsPerColor;
+
+		//precompute how every byte value is split across colors,
+		//most significant bits first
+		int colors = 8 / p_bitsPerColor;
+		int mask = getDataMask();
+		f_splitTable = new int[256][colors];
+		for (int value = 0; value < 256; ++value)
+		{
+			for (int i = 0; i < colors; ++i)
+			{
+				int shift = 8 - (p_bitsPerColor * (i + 1));
+				f_splitTable[value][i] = (value >> shift) & mask;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bits of file data stored in each color
+	 * @return The bits per color
+	 */
+	public int getBitsPerColor()
+	{
+		return f_bitsPerColor;
+	}
+
+	/**
+	 * Gets the mask which selects the file data bits of a color
+	 * @return The data mask
+	 */
+	public int getDataMask()
+	{
+		return (1 << f_bitsPerColor) - 1;
+	}
+
+	/**
+	 * Gets the pieces a byte of file data is split into, one per color
+	 * @param p_value The byte of data stored as an int [0, 255]
+	 * @return The pieces of the byte, most significant bits first
+	 */
+	public int[] getSplit(int p_value)
+	{
+		return f_splitTable[p_value];
+	}
+
 	/**
 	 * Gets the associated enum from a percent string
 	 * @param p_string The display string representation of the enum
@@ -44,8 +44,17 @@ public abstract class Text implements Archive
 	protected void reset()
 	{
 		// use any constant seed to start
-		f_random = new HashRandom(Constants.DEFAULT_SEED);
-		f_order = new UniqueRandomRange(f_random, f_blockSize);
+		// (the generator and range are reused between archives)
+		if (f_random == null)
+		{
+			f_random = new HashRandom(Constants.DEFAULT_SEED);
+			f_order = new UniqueRandomRange(f_random, f_blockSize);
+		}
+		else
+		{
+			f_random.reseed(Constants.DEFAULT_SEED);
+			f_order.reset(f_random, f_blockSize);
+		}
 	}
 
 	/* (non-Javadoc)
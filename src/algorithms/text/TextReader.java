@@ -2,13 +2,12 @@ package algorithms.text;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 
 import algorithms.Algorithm;
 import archive.ArchiveReader;
-import archive.ArchiveIOException;
 import key.Key;
 import util.ByteConversion;
+import util.TextCodec;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -16,6 +15,11 @@ import util.ByteConversion;
  */
 public class TextReader extends Text implements ArchiveReader{
 
+	private static final int CHUNK_SIZE = 8192;
+
+	private int[] f_indexChunk;
+	private byte[] f_xorChunk;
+
 	/**
 	 * Constructs a text reader
 	 * @param p_algo The associated algorithm which contains required
@@ -25,19 +29,8 @@ public class TextReader extends Text implements ArchiveReader{
 	public TextReader(Algorithm p_algo, Key p_key)
 	{
 		super(p_algo, p_key);
-	}
-	
-	/**
-	 * Reads a byte of data from the archive
-	 * @return The byte that was read
-	 * @throws ArchiveIOException if there are no more bytes to read
-	 */
-	private final byte read() throws ArchiveIOException
-	{
-		byte xor = f_random.nextByte();
-		byte val = f_buffer[f_order.next()];
-		
-		return ByteConversion.intToByte(ByteConversion.intToByte(val) ^ xor);
+		f_indexChunk = new int[CHUNK_SIZE];
+		f_xorChunk = new byte[CHUNK_SIZE];
 	}
 
 	/* (non-Javadoc)
@@ -46,19 +39,39 @@ public class TextReader extends Text implements ArchiveReader{
 	@Override
 	public int read(byte[] p_bytes, int p_offset, int p_length)
 	{
-		for (int x = p_offset; x < p_offset + p_length; ++x)
+		// only as many bytes as there are buffer indices left can be read
+		int total = Math.min(p_length, f_order.remainingNumbers());
+		
+		//before the stream is secured, the xor bytes and the order come from
+		//the same generator, so they must be drawn one byte at a time
+		if (f_order.usesGenerator(f_random))
 		{
-			try
+			for (int x = p_offset; x < p_offset + total; ++x)
 			{
-				p_bytes[x] = read();
-			}
-			catch (ArchiveIOException e)
-			{
-				return x;
+				//order matters
+				byte xor = f_random.nextByte();
+				f_order.next(f_indexChunk, 0, 1);
+				p_bytes[x] = ByteConversion.intToByte(f_buffer[f_indexChunk[0]] ^ xor);
 			}
+			
+			return p_offset + total;
+		}
+		
+		//otherwise, pull the xor bytes and the order in chunks
+		int read = 0;
+		while (read < total)
+		{
+			int chunk = f_order.next(f_indexChunk, 0, Math.min(CHUNK_SIZE, total - read));
+			f_random.nextBytes(f_xorChunk, 0, chunk);
+			
+			int start = p_offset + read;
+			for (int i = 0; i < chunk; ++i)
+				p_bytes[start + i] = ByteConversion.intToByte(f_buffer[f_indexChunk[i]] ^ f_xorChunk[i]);
+			
+			read += chunk;
 		}
 		
-		return p_offset + p_length;
+		return p_offset + read;
 	}
 
 	/* (non-Javadoc)
@@ -67,11 +80,10 @@ public class TextReader extends Text implements ArchiveReader{
 	@Override
 	public void loadFile(File p_file) throws IOException
 	{
-		String encoded = new String(Files.readAllBytes(p_file.toPath()));
 		if (f_algorithm.getParameter(Definition.ENCODING_PARAM).getValue().equals(Definition.BASE64_ENCODING))
-			f_buffer = ByteConversion.base64ToBytes(encoded);
+			f_buffer = TextCodec.readBase64(p_file, f_buffer);
 		else
-			f_buffer = ByteConversion.hexToBytes(encoded);
+			f_buffer = TextCodec.readHex(p_file, f_buffer);
 		
 		f_blockSize = f_buffer.length;
 		reset();
@@ -83,22 +95,23 @@ public class TextReader extends Text implements ArchiveReader{
 	@Override
 	public long skip(long p_bytes)
 	{
-		long skipped = 0;
-		try
+		// only as many bytes as there are buffer indices left can be skipped
+		int skipped = (int) Math.min(p_bytes, f_order.remainingNumbers());
+		
+		// the buffer itself is never touched
+		if (f_order.usesGenerator(f_random))
 		{
-			for (long l = 0; l < p_bytes; ++l)
+			for (int i = 0; i < skipped; ++i)
 			{
 				//order matters
 				f_random.nextByte();
-				f_order.next();
-				
-				++skipped;
+				f_order.skip(1);
 			}
 		}
-		catch (ArchiveIOException e)
+		else
 		{
-			// couldn't skip as many as requested,
-			// nothing to do
+			f_random.skipBytes(skipped);
+			f_order.skip(skipped);
 		}
 
 		return skipped;
@@ -2,7 +2,6 @@ package algorithms.text;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 
 import algorithms.Algorithm;
 import archive.ArchiveWriter;
@@ -12,6 +11,7 @@ import logging.LogLevel;
 import logging.Logger;
 import report.JobStatus;
 import util.ByteConversion;
+import util.TextCodec;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
@@ -36,7 +36,11 @@ public class TextWriter extends Text implements ArchiveWriter
 	@Override
 	public void newArchive()
 	{
-		f_buffer = new byte[f_blockSize];
+		// every byte of the buffer is overwritten before it is saved,
+		// so the same buffer is used for every archive
+		if (f_buffer == null)
+			f_buffer = new byte[f_blockSize];
+
 		reset();
 	}
 
@@ -87,13 +91,10 @@ public class TextWriter extends Text implements ArchiveWriter
 			File toSave = new File(p_archiveStagingFolder.getAbsolutePath(), p_filename + ".txt");
 			Logger.log(LogLevel.k_info, "Saving archive file: " + toSave.getAbsolutePath());
 
-			PrintWriter writer = new PrintWriter(toSave);
 			if (f_algorithm.getParameter(Definition.ENCODING_PARAM).getValue().equals(Definition.BASE64_ENCODING))
-				writer.print(ByteConversion.bytesToBase64(f_buffer));
+				TextCodec.writeBase64(f_buffer, toSave);
 			else
-				writer.print(ByteConversion.bytesToHex(f_buffer));
-
-			writer.close();
+				TextCodec.writeHex(f_buffer, toSave);
 
 			// update progress
 			JobStatus.incrementArchivesCreated(1);
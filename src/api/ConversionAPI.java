@@ -2,6 +2,7 @@ package api;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 import algorithms.Algorithm;
@@ -9,6 +10,8 @@ import archive.ArchiveContents;
 import archive.CreationJob;
 import data.ArchiveFile;
 import archive.ArchiveExtractor;
+import archive.ExtractionFilter;
+import archive.FileContents;
 import key.Key;
 import logging.LogLevel;
 import logging.Logger;
@@ -65,6 +68,32 @@ public abstract class ConversionAPI
 		return extractor.viewAll(p_archiveFile);
 	}
 	
+	/**
+	 * Opens an archive in order to view the contents as they are read, rather than
+	 * after the whole archive is read
+	 * @param p_algo The algorithm to use
+	 * @param p_key The key to use
+	 * @param p_archiveFile The archive file to view
+	 * @return An iterator over the files in the archive (which haven't been extracted)
+	 * @throws IOException If the archive cannot be viewed
+	 * @throws UsageException If the archive file cannot be found
+	 */
+	public static Iterator<FileContents> iterateArchive(Algorithm p_algo, Key p_key, 
+		File p_archiveFile) throws IOException, UsageException
+	{
+		if (!p_archiveFile.exists())
+			throw new UsageException("The specified archive file cannot be found.");
+		
+		if (p_archiveFile.isDirectory())
+			throw new UsageException("The specified file path must "
+				+ "name a file, not a directory.");
+		
+		ArchiveExtractor extractor = new ArchiveExtractor(p_algo, p_key,
+						p_archiveFile.getAbsoluteFile().getParentFile());
+		
+		return extractor.iterateContents(p_archiveFile);
+	}
+	
 	/**
 	 * Extracts all files contained within the specified archive, or all files in all archives
 	 * contained within the specified folder.
@@ -80,6 +109,28 @@ public abstract class ConversionAPI
 	 */
 	public static void extractAll(Algorithm p_algo, Key p_key,
 		File p_archiveLocation, File p_extractionFolder) throws IOException, UsageException
+	{
+		extractAll(p_algo, p_key, p_archiveLocation, p_extractionFolder, null);
+	}
+	
+	/**
+	 * Extracts the files contained within the specified archive, or in all archives
+	 * contained within the specified folder, whose paths are selected by a filter.
+	 * The data of other files is skipped without being extracted.
+	 * @param p_algo The algorithm to use
+	 * @param p_key The key to use
+	 * @param p_archiveLocation The archive to extract files from, or a folder of archives to
+	 * extract files from.
+	 * @param p_extractionFolder The folder to write the extracted files to
+	 * @param p_filter Selects the files to extract by their paths (for example with include and
+	 * exclude patterns), or null to extract everything
+	 * @throws IOException If only a single archive is being extracted and it failed to be read, 
+	 * or any extracted files cannot be written. (If a folder of archives is being extracted, some
+	 * can fail while others can still succeed.)
+	 * @throws UsageException If the archive location cannot be found.
+	 */
+	public static void extractAll(Algorithm p_algo, Key p_key, File p_archiveLocation,
+		File p_extractionFolder, ExtractionFilter p_filter) throws IOException, UsageException
 	{
 		if (!p_archiveLocation.exists())
 			throw new UsageException("The specified archive location cannot be found.");
@@ -94,9 +145,9 @@ public abstract class ConversionAPI
 		ArchiveExtractor extractor = new ArchiveExtractor(p_algo, p_key, enclosingFolder);
 		
 		if (p_archiveLocation.isDirectory())
-			extractor.extractAllFromArchiveFolder(p_archiveLocation, p_extractionFolder);
+			extractor.extractAllFromArchiveFolder(p_archiveLocation, p_extractionFolder, p_filter);
 		else
-			extractor.extractAllFromArchiveFile(p_archiveLocation, p_extractionFolder);
+			extractor.extractAllFromArchiveFile(p_archiveLocation, p_extractionFolder, p_filter);
 	}
 	
 	/**
@@ -124,4 +175,65 @@ public abstract class ConversionAPI
 		
 		extractor.extractFileByIndex(p_archiveFile, p_extractionFolder, p_index);
 	}
+	
+	/**
+	 * Extracts the files from an archive which are selected by a filter. The archive is
+	 * only read once, no matter how many files are selected.
+	 * @param p_algo The algorithm to use
+	 * @param p_key The key to use
+	 * @param p_archiveFile The archive file to extract files from
+	 * @param p_extractionFolder The folder to write the extracted files to
+	 * @param p_filter The filter which selects the files (by index, path or pattern)
+	 * @return If all the selected files were extracted successfully
+	 * @throws IOException If the archive cannot be read or extracted files cannot be written.
+	 * @throws UsageException If the archive file cannot be found.
+	 */
+	public static boolean extractFiles(Algorithm p_algo, Key p_key, File p_archiveFile,
+		File p_extractionFolder, ExtractionFilter p_filter) throws IOException, UsageException
+	{
+		if (!p_archiveFile.exists())
+			throw new UsageException("The specified archive file cannot be found.");
+		
+		if (p_archiveFile.isDirectory())
+			throw new UsageException("The specified file path must "
+				+ "name a file, not a directory.");
+		
+		ArchiveExtractor extractor = new ArchiveExtractor(p_algo, p_key,
+						p_archiveFile.getAbsoluteFile().getParentFile());
+		
+		return extractor.extractFiles(p_archiveFile, p_extractionFolder, p_filter);
+	}
+	
+	/**
+	 * Extracts a range of bytes of a file which starts in the specified archive. Only
+	 * the archives holding the range are read.
+	 * @param p_algo The algorithm to use
+	 * @param p_key The key to use
+	 * @param p_archiveFile The archive file holding the start of the file
+	 * @param p_extractionFolder The folder to write the range to. The range is named
+	 * <name>.<start>-<end> after the file and the range.
+	 * @param p_filter Selects the file, or null for the first file which starts in the archive
+	 * @param p_offset The offset of the range in the file. A negative offset counts back
+	 * from the end of the file.
+	 * @param p_length The length of the range, or a negative number for the rest of the file
+	 * @return If the whole range was extracted
+	 * @throws IOException If the archive cannot be read or the range cannot be written.
+	 * @throws UsageException If the archive file cannot be found.
+	 */
+	public static boolean extractRange(Algorithm p_algo, Key p_key, File p_archiveFile,
+		File p_extractionFolder, ExtractionFilter p_filter, long p_offset, long p_length)
+		throws IOException, UsageException
+	{
+		if (!p_archiveFile.exists())
+			throw new UsageException("The specified archive file cannot be found.");
+		
+		if (p_archiveFile.isDirectory())
+			throw new UsageException("A byte range can only be extracted from an archive "
+				+ "file, not a directory.");
+		
+		ArchiveExtractor extractor = new ArchiveExtractor(p_algo, p_key,
+						p_archiveFile.getAbsoluteFile().getParentFile());
+		
+		return extractor.extractRange(p_archiveFile, p_extractionFolder, p_filter, p_offset, p_length);
+	}
 }
@@ -1,17 +1,31 @@
 package archive;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import algorithms.Algorithm;
 import algorithms.AlgorithmRegistry;
+import archive.ArchivePrefetcher.PrefetchedArchive;
 import config.Constants;
+import config.Settings;
 import data.ArchiveFile;
 import data.FileType;
 import data.Metadata;
@@ -26,20 +40,32 @@ import util.FileSystemUtil;
  * The archive extractor class handles reading archives and writing
  * the files contained within them back out into their original form.
  * This may include 'chain reading' when a file spans multiple archives.
+ * A large file may also have been split into stripes written to different archive
+ * streams (archive version 1), in which case each stripe is written to its own place
+ * in the file and the file is finished once all of them are.
  */
 public class ArchiveExtractor {
 	
+	// big enough for any file header field, file data grows the buffer as needed
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	
 	private ArchiveReader f_archive;
+	private ArchiveReader f_headerReader;
 	private long f_curFragmentNumber;
 	private byte[] f_buffer;
 	private File f_enclosingFolder;
 	private File f_curArchiveFile;
+	private File f_preloadedFile;
+	private long f_archivePosition;
+	private int f_archiveVersion;
+	private int f_runPosition;
 	private ExtractionManager f_manager;
 	private Algorithm f_algo;
 	private Key f_key;
 	
 	/**
-	 * Constructs an archive extractor
+	 * Constructs an archive extractor. Archive headers in the enclosing folder are
+	 * only read when an extraction chain needs to find the next archive.
 	 * @param p_algo The algorithm to use
 	 * @param p_key The key to use
 	 * @param p_enclosingFolder The folder where the archives are found
@@ -47,8 +73,6 @@ public class ArchiveExtractor {
 	public ArchiveExtractor(Algorithm p_algo, Key p_key, File p_enclosingFolder)
 	{
 		this(p_algo, p_key, p_enclosingFolder, new ExtractionManager());
-		
-		mapHeaders(p_enclosingFolder);
 	}
 	
 	/**
@@ -64,7 +88,7 @@ public class ArchiveExtractor {
 		setEnclosingFolder(p_enclosingFolder);
 		f_archive = AlgorithmRegistry.getArchiveReaderFactory(p_algo, p_key).createReader();
 		
-		f_buffer = new byte[Constants.MAX_READ_BUFFER_SIZE];
+		f_buffer = new byte[INITIAL_BUFFER_SIZE];
 		f_algo = p_algo;
 		f_key = p_key;
 		f_manager = p_manager;
@@ -99,29 +123,11 @@ public class ArchiveExtractor {
 	{
 		ArchiveContents archiveContents = parseArchiveContents(p_archiveFile);
 		
-		try
-		{
-			//keep trying to read files until one can't be read
-			FileContents fileContents = readNextFileHeader(true);
-			while (fileContents != null) //TODO change to true
-			{
-				//add header information to archive contents
-				archiveContents.addFileContents(fileContents);
-				
-				//skip over the file data
-				boolean allDataSkipped = skipNextFileData(fileContents);
-				fileContents.setFragment(!allDataSkipped);
-				
-				//try to get the next header
-				fileContents = readNextFileHeader(true);
-			}
-		}
-		catch (ArchiveIOException e)
+		Iterator<FileContents> contents = new ContentsIterator();
+		while (contents.hasNext())
 		{
-			//this will happen whenever the next file cannot be read
-			//this is normal if we've reached the end of the archive
-			Logger.log(LogLevel.k_debug, "The next file header could not be read "
-							+ "(possibly because we're at the end of an archive): " + e.getMessage());
+			//add header information to archive contents
+			archiveContents.addFileContents(contents.next());
 		}
 			
 		if (archiveContents.getFileContents().isEmpty())
@@ -137,6 +143,22 @@ public class ArchiveExtractor {
 		return archiveContents;
 	}
 	
+	/**
+	 * Opens an archive file to go through the files in it one at a time. Each file
+	 * header is only read when the iterator gets to it, so the first files can be shown
+	 * before the rest of the archive is read. The iterator reads with this extractor,
+	 * so the extractor shouldn't be used for anything else until the iteration is done.
+	 * @param p_archiveFile The archive file
+	 * @return An iterator over the files in the archive (which aren't extracted)
+	 * @throws IOException If the archive file cannot be parsed or read
+	 */
+	public Iterator<FileContents> iterateContents(File p_archiveFile) throws IOException
+	{
+		parseArchiveContents(p_archiveFile);
+		
+		return new ContentsIterator();
+	}
+	
 	/**
 	 * Assembles the current file data into a file. If the file is the first of multiple 
 	 * fragments, an extraction chain will start here.
@@ -146,112 +168,656 @@ public class ArchiveExtractor {
 	 * of this file
 	 * @param p_extractionFolder The folder where the file will be extracted to
 	 * @return The file which was extracted, or null if something went wrong during extraction
+	 * (in which case nothing is left behind)
 	 */
 	private File assembleCurrentFileData(ArchiveContents p_origArchiveContents, 
 		FileContents p_origFileContents, File p_extractionFolder)
 	{
-		//create temporary hidden assembly folder
-		File assemblyFolder = new File(p_extractionFolder, Constants.ASSEMBLY_FOLDER_NAME);
-		if (!assemblyFolder.exists())
-			assemblyFolder.mkdir();
+		FileAssembly assembly = null;
+		try
+		{
+			assembly = startAssembly(p_origArchiveContents, p_origFileContents, p_extractionFolder);
+
+			//read the current file data
+			long bytesWritten = readNextFileData(p_origFileContents, assembly.f_channel);
+			assembly.addFragment(bytesWritten);
+			
+			//not finished unless all the bytes were read
+			if (bytesWritten == p_origFileContents.getRemainingData() || continueAssembly(assembly))
+				return finishAssembly(assembly) ? assembly.f_output : null;
+		}
+		catch (IOException e)
+		{
+			Logger.log(LogLevel.k_error, "Failed to read file data.");
+			Logger.log(LogLevel.k_error, e, false);
+		}
+		
+		abandonAssembly(assembly);
+		return null;
+	}
+	
+	/**
+	 * Opens the partial file next to the file's place in the extraction folder, which
+	 * the file's data is written to. The partial file is preallocated to the length of
+	 * the whole file, and only replaces the file in the extraction folder once it is finished.
+	 * A file already at that place is left alone if the extraction fails.
+	 * @param p_origArchiveContents The archive contents associated with the first
+	 * fragment of the file
+	 * @param p_origFileContents The file contents associated with the first fragment
+	 * of the file
+	 * @param p_extractionFolder The folder where the file will be extracted to
+	 * @return The assembly, ready for the file data
+	 * @throws IOException If the file could not be created
+	 */
+	private FileAssembly startAssembly(ArchiveContents p_origArchiveContents,
+		FileContents p_origFileContents, File p_extractionFolder) throws IOException
+	{
+		File output = new File(p_extractionFolder, p_origFileContents.getMetadata().getFile().getPath());
+		f_manager.createFolder(output.getParentFile());
 		
-		//create temporary file for loading all fragment data into
-		File assembling = new File(assemblyFolder, "assembling");
-		if (assembling.exists())
+		if (p_origFileContents.isStripe())
 		{
-			try
+			if (f_manager.isAssemblingStripes())
+				return startStripeAssembly(p_origArchiveContents, p_origFileContents, output);
+			
+			//the other stripes are in archive streams which aren't being read, so
+			//this stripe is extracted on its own, like a range
+			long start = p_origFileContents.getStripeOffset();
+			output = new File(output.getParentFile(), output.getName() + "." + start + "-"
+							+ (start + p_origFileContents.getRemainingData()));
+			Logger.log(LogLevel.k_warning, "Only a stripe of this file is in this archive stream, "
+							+ "extract the whole folder of archives to assemble it. The stripe is extracted to: "
+							+ output.getPath());
+		}
+		
+		File part = getPartFile(output, f_runPosition);
+		FileChannel channel = openOutput(part.toPath());
+		try
+		{
+			//extend the file to its full length up front
+			long length = p_origFileContents.getRemainingData();
+			if (length > 0)
+				channel.write(ByteBuffer.allocate(1), length - 1);
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			Files.deleteIfExists(part.toPath());
+			throw e;
+		}
+		
+		return new FileAssembly(p_origArchiveContents, p_origFileContents, output,
+			part, channel, f_curArchiveFile, false);
+	}
+	
+	/**
+	 * Opens the partial file which a stripe of a file is written to. Other stripes of
+	 * the file may be written at the same time, so only the first stripe replaces the
+	 * partial file, the others just extend it to its full length, and the stripe is
+	 * written at its offset.
+	 * @param p_origArchiveContents The archive contents associated with the first
+	 * fragment of the stripe
+	 * @param p_origFileContents The file contents associated with the first fragment
+	 * of the stripe
+	 * @param p_output The file in the extraction folder
+	 * @return The assembly, ready for the stripe data
+	 * @throws IOException If the file could not be opened
+	 */
+	private FileAssembly startStripeAssembly(ArchiveContents p_origArchiveContents,
+		FileContents p_origFileContents, File p_output) throws IOException
+	{
+		FileChannel channel;
+		long length = p_origFileContents.getFileLength();
+		File part = getPartFile(p_output);
+		
+		//one stripe at a time sets up the file
+		synchronized (f_manager)
+		{
+			if (f_manager.startStripedFile(p_output))
 			{
-				Files.delete(assembling.toPath());
+				channel = openOutput(part.toPath());
 			}
-			catch (IOException e){}
+			else
+			{
+				channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+								StandardOpenOption.WRITE);
+			}
+			
+			if (length > 0 && channel.size() < length)
+				channel.write(ByteBuffer.allocate(1), length - 1);
 		}
 		
-		BufferedOutputStream outStream = null;
+		channel.position(p_origFileContents.getStripeOffset());
+		
+		Logger.log(LogLevel.k_debug, "Extracting stripe at " + p_origFileContents.getStripeOffset()
+						+ " of: " + p_output.getPath());
+		
+		return new FileAssembly(p_origArchiveContents, p_origFileContents, p_output,
+			part, channel, f_curArchiveFile, true);
+	}
+	
+	/**
+	 * Gets the partial file a file is written to before it replaces the file in the
+	 * extraction folder. It is in the same folder, so it can be moved over the file.
+	 * @param p_output The file in the extraction folder
+	 * @return The partial file
+	 */
+	private static File getPartFile(File p_output)
+	{
+		return new File(p_output.getParentFile(), p_output.getName() + Constants.PART_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Gets the partial file a file from a run of archives is written to. Runs extracted
+	 * at the same time can hold files with the same path, so each run writes its own.
+	 * @param p_output The file in the extraction folder
+	 * @param p_run The position of the run of archives
+	 * @return The partial file
+	 */
+	private static File getPartFile(File p_output, int p_run)
+	{
+		return new File(p_output.getParentFile(), p_output.getName() + "." + p_run
+						+ Constants.PART_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Opens a file for writing, replacing any file which is already there
+	 * @param p_path The path of the file
+	 * @return The channel to write the file with
+	 * @throws IOException If the file could not be opened
+	 */
+	private static FileChannel openOutput(Path p_path) throws IOException
+	{
 		try
 		{
-			outStream = new BufferedOutputStream(new FileOutputStream(assembling));
-
-			//read the current file data
-			long bytesWritten = readNextFileData(p_origFileContents, outStream);
+			return FileChannel.open(p_path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		catch (AccessDeniedException e)
+		{
+			//a read only file from an earlier extraction is replaced, not written over
+			Files.delete(p_path);
+			return FileChannel.open(p_path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		}
+	}
+	
+	/**
+	 * Follows the trail of archives to read the rest of the fragments of a file
+	 * into its assembly
+	 * @param p_assembly The assembly of the file
+	 * @return True if the file was finished, false if an archive could not be found
+	 * @throws IOException If an archive could not be read
+	 */
+	private boolean continueAssembly(FileAssembly p_assembly) throws IOException
+	{
+		ArchivePrefetcher prefetcher = createPrefetcher();
+		try
+		{
+			return continueAssembly(p_assembly, prefetcher);
+		}
+		finally
+		{
+			if (prefetcher != null)
+				prefetcher.close();
+		}
+	}
+	
+	/**
+	 * Follows the trail of archives to read the rest of the fragments of a file
+	 * into its assembly. While one fragment is being read, the archives holding the
+	 * next ones are found and loaded in the background.
+	 * @param p_assembly The assembly of the file
+	 * @param p_prefetcher The prefetcher for the following archives, or null to load
+	 * each archive when it is reached
+	 * @return True if the file was finished, false if an archive could not be found
+	 * @throws IOException If an archive could not be read
+	 */
+	private boolean continueAssembly(FileAssembly p_assembly, ArchivePrefetcher p_prefetcher) throws IOException
+	{
+		//this extractor may be in the middle of an archive, so another one follows the chain
+		ArchiveExtractor chainExtractor = this.clone();
+		
+		//archives are found in the background by one extractor at a time
+		ArchiveExtractor resolver = this.clone();
+		int nextIncrement = p_assembly.f_increment;
+		
+		boolean finished = false;
+		while (!finished)
+		{
+			//set the manager's enclosing folder
+			f_manager.setEnclosingFolder(f_enclosingFolder);
 			
-			//not finished unless all the bytes were read
-			boolean finished = bytesWritten == p_origFileContents.getRemainingData();
-			int increment = 1;
-			ArchiveExtractor curExtractor = this; 
-			while (!finished)
-			{
-				//set the current extractor's manager's enclosing folder
-				curExtractor.f_manager.setEnclosingFolder(curExtractor.f_enclosingFolder);
-				
-				//there are other fragments that need to be added,
-				//find the next archive file
-				String searchName = FileSystemUtil.getArchiveName(p_origArchiveContents.getStreamUUID(),
-					p_origArchiveContents.getArchiveSequenceNumber() + increment);
-				File nextArchiveFile = f_manager.findArchiveFile(searchName,
-					curExtractor.f_curArchiveFile.getAbsoluteFile().getParentFile());
-				
-				if (nextArchiveFile == null)
+			//there are other fragments that need to be added,
+			//find the next archive file
+			File nextArchiveFile = null;
+			if (p_prefetcher != null)
+			{
+				if (nextIncrement == p_assembly.f_increment)
+					prefetchFragment(p_prefetcher, resolver, p_assembly, nextIncrement++);
+				
+				PrefetchedArchive prefetched = p_prefetcher.next();
+				
+				//load the archives which should hold the rest of the file while this one is read
+				int needed = p_assembly.getRemainingArchives();
+				while (!p_prefetcher.isFull() && nextIncrement < p_assembly.f_increment + needed)
+					prefetchFragment(p_prefetcher, resolver, p_assembly, nextIncrement++);
+				
+				if (prefetched.getArchiveFile() != null)
 				{
-					Logger.log(LogLevel.k_error, "Could not find referenced archive file: " +
-									searchName);
-					return null;
+					chainExtractor.adopt(p_prefetcher, prefetched);
+					nextArchiveFile = prefetched.getArchiveFile();
 				}
+			}
+			
+			//otherwise search for it, asking the user if it can't be found
+			String searchName = p_assembly.getArchiveName(p_assembly.f_increment);
+			if (nextArchiveFile == null)
+				nextArchiveFile = findArchiveFile(searchName, p_assembly.f_lastArchiveFile, true);
+			
+			if (nextArchiveFile == null)
+			{
+				Logger.log(LogLevel.k_error, "Could not find referenced archive file: " +
+								searchName);
+				return false;
+			}
+			
+			//the fragment we're looking for will be the first file in the next archive
+			finished = chainExtractor.extractFragmentData(nextArchiveFile, p_assembly);
+			
+			//now looking for the next next archive file...
+			p_assembly.advance(nextArchiveFile);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Starts finding and loading the archive which holds a later fragment of a file
+	 * @param p_prefetcher The prefetcher
+	 * @param p_resolver The extractor which finds archives in the background
+	 * @param p_assembly The assembly of the file
+	 * @param p_increment The number of archives after the first fragment's archive
+	 */
+	private void prefetchFragment(ArchivePrefetcher p_prefetcher, ArchiveExtractor p_resolver,
+		FileAssembly p_assembly, int p_increment)
+	{
+		String searchName = p_assembly.getArchiveName(p_increment);
+		File curArchiveFile = p_assembly.f_lastArchiveFile;
+		
+		//the user is only asked for a missing archive once the chain gets to it
+		p_prefetcher.prefetch(() ->
+		{
+			synchronized (p_resolver)
+			{
+				return p_resolver.findArchiveFile(searchName, curArchiveFile, false);
+			}
+		});
+	}
+	
+	/**
+	 * Keeps the archives after the current one in a run loading in the background
+	 * @param p_prefetcher The prefetcher, or null if archives aren't loaded ahead
+	 * @param p_run The archive files of the run
+	 * @param p_index The index of the current archive in the run
+	 * @return The current archive, loaded, or null if there's no prefetcher
+	 * @throws IOException If the current archive could not be loaded
+	 */
+	private PrefetchedArchive prefetchRun(ArchivePrefetcher p_prefetcher, List<File> p_run,
+		int p_index) throws IOException
+	{
+		if (p_prefetcher == null)
+			return null;
+		
+		if (p_prefetcher.getSubmittedCount() == p_index)
+			p_prefetcher.prefetch(p_run.get(p_index));
+		
+		PrefetchedArchive current = p_prefetcher.next();
+		
+		while (!p_prefetcher.isFull() && p_prefetcher.getSubmittedCount() < p_run.size())
+			p_prefetcher.prefetch(p_run.get(p_prefetcher.getSubmittedCount()));
+		
+		return current;
+	}
+	
+	/**
+	 * Creates a prefetcher for loading archives ahead of the one being read
+	 * @return The prefetcher, or null if the prefetch depth is zero
+	 */
+	private ArchivePrefetcher createPrefetcher()
+	{
+		int depth = Settings.getPrefetchDepth();
+		if (depth <= 0)
+			return null;
+		
+		return new ArchivePrefetcher(AlgorithmRegistry.getArchiveReaderFactory(f_algo, f_key),
+						f_manager, depth);
+	}
+	
+	/**
+	 * Switches to reading an archive which was loaded in the background. The reader
+	 * this extractor was using goes back to the prefetcher.
+	 * @param p_prefetcher The prefetcher which loaded the archive
+	 * @param p_prefetched The loaded archive, or null to keep the current reader
+	 */
+	private void adopt(ArchivePrefetcher p_prefetcher, PrefetchedArchive p_prefetched)
+	{
+		if (p_prefetched == null || p_prefetched.getArchiveFile() == null)
+			return;
+		
+		p_prefetcher.recycle(f_archive);
+		f_archive = p_prefetched.getReader();
+		f_preloadedFile = p_prefetched.getArchiveFile();
+	}
+	
+	/**
+	 * Follows the trail of archives to finish a file
+	 * @param p_assembly The assembly of the file
+	 * @return If the file was extracted
+	 */
+	private boolean completeAssembly(FileAssembly p_assembly)
+	{
+		try
+		{
+			if (continueAssembly(p_assembly))
+				return finishAssembly(p_assembly);
+		}
+		catch (IOException e)
+		{
+			Logger.log(LogLevel.k_error, "Failed to read file data.");
+			Logger.log(LogLevel.k_error, e, false);
+		}
+		
+		Logger.log(LogLevel.k_error, "Failed to extract file: " +
+						p_assembly.f_fileContents.getMetadata().getFile().getPath());
+		abandonAssembly(p_assembly);
+		return false;
+	}
+	
+	/**
+	 * Closes a finished file, moves it to its place in the extraction folder and
+	 * applies its metadata. If that fails, the partial file is deleted and the file
+	 * in the extraction folder is left as it was, but the files after it can still
+	 * be extracted.
+	 * @param p_assembly The assembly of the file
+	 * @return If the file was extracted
+	 */
+	private boolean finishAssembly(FileAssembly p_assembly)
+	{
+		FileContents fileContents = p_assembly.f_fileContents;
+		boolean lastStripe = false;
+		try
+		{
+			if (p_assembly.f_striped)
+			{
+				p_assembly.f_channel.close();
 				
-				//the fragment we're looking for will be the first file in the next archive
-				curExtractor = this.clone();
-
-				finished = curExtractor.extractFragmentData(nextArchiveFile, outStream);
+				//the file is replaced once, after the last stripe is written and closed
+				lastStripe = f_manager.finishStripe(p_assembly.f_output, fileContents.getFileLength(),
+								p_assembly.f_written);
+				if (lastStripe)
+				{
+					f_manager.finishExtractedFile(p_assembly.f_part, p_assembly.f_output,
+									fileContents, f_runPosition);
+				}
 				
-				//now looking for the next next archive file...
-				++increment;
+				return true;
 			}
 			
-			return assembling;
+			//don't leave preallocated space if there was less data than expected
+			if (p_assembly.f_written < fileContents.getRemainingData())
+				p_assembly.f_channel.truncate(p_assembly.f_written);
+			
+			p_assembly.f_channel.close();
+			f_manager.finishExtractedFile(p_assembly.f_part, p_assembly.f_output,
+							fileContents, f_runPosition);
+			
+			return true;
 		}
 		catch (IOException e)
 		{
-			Logger.log(LogLevel.k_error, "Failed to read file data.");
+			Logger.log(LogLevel.k_error, "Could not move extracted file to destination location: "
+							+ p_assembly.f_output.getAbsolutePath());
 			Logger.log(LogLevel.k_error, e, false);
 			
+			//a stripe which isn't the last one leaves the file unfinished, which is reported later
+			if (!p_assembly.f_striped || lastStripe)
+				discardAssembly(p_assembly);
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * Closes an assembly which failed and deletes its partial file. The file in the
+	 * extraction folder is left as it was.
+	 * @param p_assembly The assembly of the file, or null if it wasn't started
+	 */
+	private void abandonAssembly(FileAssembly p_assembly)
+	{
+		if (p_assembly == null)
+			return;
+		
+		if (p_assembly.f_striped)
+		{
 			try
 			{
-				outStream.close();
+				p_assembly.f_channel.close();
+			}
+			catch (IOException e){} //nothing to do
+			
+			//other stripes may still be writing to the partial file
+			Logger.log(LogLevel.k_error, "A stripe of this file could not be extracted, it is incomplete: " +
+							p_assembly.f_part.getAbsolutePath());
+			return;
+		}
+		
+		discardAssembly(p_assembly);
+	}
+	
+	/**
+	 * Closes an assembly and deletes its partial file
+	 * @param p_assembly The assembly
+	 */
+	private static void discardAssembly(FileAssembly p_assembly)
+	{
+		try
+		{
+			p_assembly.f_channel.close();
+		}
+		catch (IOException e){} //nothing to do
+		
+		deletePartFile(p_assembly.f_part);
+	}
+	
+	/**
+	 * Deletes a partial file, logging if it can't be deleted
+	 * @param p_part The partial file
+	 */
+	private static void deletePartFile(File p_part)
+	{
+		try 
+		{
+			Files.deleteIfExists(p_part.toPath());
+		}
+		catch (IOException e)
+		{
+			Logger.log(LogLevel.k_error, "The partially extracted file cannot be deleted: " +
+							p_part.getAbsolutePath());
+			Logger.log(LogLevel.k_error, e, false);
+		}
+	}
+
+	/**
+	 * Finds the archive file which was originally saved with the given name. Headers
+	 * are only read when the name alone isn't enough. In order, this checks:
+	 * archives which were already mapped, files with the original name in the current
+	 * archive's folder, the headers of the other files in that folder (in sequence order,
+	 * starting after the current archive), the header catalog of the enclosing folder,
+	 * and finally a search by name which may ask the user for another folder.
+	 * @param p_searchName The original archive name (see FileSystemUtil.getArchiveName())
+	 * @param p_curArchiveFile The archive file the chain is currently at
+	 * @param p_prompt If the final search (and the user) should be tried
+	 * @return The archive file, or null if it could not be found
+	 */
+	private File findArchiveFile(String p_searchName, File p_curArchiveFile, boolean p_prompt)
+	{
+		File cached = f_manager.getCachedFile(p_searchName);
+		if (cached != null)
+			return cached;
+		
+		File curFolder = p_curArchiveFile.getAbsoluteFile().getParentFile();
+		File[] siblings = curFolder.listFiles();
+		if (siblings != null)
+		{
+			//archives usually keep the name they were saved with
+			for (File sibling : siblings)
+			{
+				if (sibling.isFile() && getBaseName(sibling).equals(p_searchName))
+				{
+					Logger.log(LogLevel.k_debug, "Found archive file match: " + sibling.getName());
+					return sibling;
+				}
 			}
-			catch (IOException | NullPointerException e2){}
 			
-			try 
+			//otherwise they may have been renamed, so check the headers of the other
+			//files, starting with the ones which would come next in the sequence
+			for (File sibling : orderSiblings(siblings, p_curArchiveFile))
 			{
-				Files.delete(assembling.toPath());
+				if (f_manager.isMapped(sibling))
+					continue;
+				
+				String archiveName = HeaderCatalog.readArchiveName(getHeaderReader(), sibling);
+				f_manager.setMapped(sibling);
+				if (archiveName != null)
+				{
+					f_manager.cacheHeaderLocation(archiveName, sibling);
+					if (archiveName.equals(p_searchName))
+					{
+						Logger.log(LogLevel.k_debug, "Found renamed archive file: " + sibling.getName());
+						return sibling;
+					}
+				}
 			}
-			catch (IOException e2)
+		}
+		
+		//as a last resort, map everything in the enclosing folder
+		//(one extractor at a time, the others will find the result cached)
+		if (f_enclosingFolder != null && f_enclosingFolder.isDirectory())
+		{
+			synchronized (f_manager)
 			{
-				Logger.log(LogLevel.k_error, "The failed part file cannot be deleted: " + assembling.getAbsolutePath());
-				Logger.log(LogLevel.k_error, e2, false);
+				cached = f_manager.getCachedFile(p_searchName);
+				if (cached == null)
+				{
+					mapHeaders(f_enclosingFolder);
+					cached = f_manager.getCachedFile(p_searchName);
+				}
 			}
 			
+			if (cached != null)
+				return cached;
+		}
+		
+		if (!p_prompt)
 			return null;
+		
+		return f_manager.findArchiveFile(p_searchName, curFolder);
+	}
+	
+	/**
+	 * Orders the files in a folder for header searching. Files are sorted by the
+	 * sequence number at the end of their name, and the ones after the current
+	 * archive come first.
+	 * @param p_siblings The files in the folder
+	 * @param p_curArchiveFile The current archive file, which is left out
+	 * @return The ordered files
+	 */
+	private List<File> orderSiblings(File[] p_siblings, File p_curArchiveFile)
+	{
+		List<File> files = new ArrayList<File>(p_siblings.length);
+		for (File sibling : p_siblings)
+		{
+			if (sibling.isFile() && !HeaderCatalog.isCatalogFile(sibling)
+							&& !sibling.getAbsoluteFile().equals(p_curArchiveFile.getAbsoluteFile()))
+				files.add(sibling);
 		}
-		finally
+		
+		//files without a sequence number go last
+		files.sort((File a, File b) -> Long.compare(getSequenceNumber(a), getSequenceNumber(b)));
+		
+		long curSequence = getSequenceNumber(p_curArchiveFile);
+		List<File> ordered = new ArrayList<File>(files.size());
+		for (File file : files)
 		{
-			try
-			{
-				outStream.close();
-			} 
-			catch (IOException | NullPointerException e) {} //nothing to do
+			if (getSequenceNumber(file) > curSequence)
+				ordered.add(file);
+		}
+		for (File file : files)
+		{
+			if (getSequenceNumber(file) <= curSequence)
+				ordered.add(file);
+		}
+		
+		return ordered;
+	}
+	
+	/**
+	 * Gets the sequence number from the end of a file name, like the ones
+	 * given by FileSystemUtil.getArchiveName()
+	 * @param p_file The file
+	 * @return The sequence number, or Long.MAX_VALUE if the name doesn't end in one
+	 */
+	private static long getSequenceNumber(File p_file)
+	{
+		String name = getBaseName(p_file);
+		try
+		{
+			return Long.parseLong(name.substring(name.lastIndexOf('_') + 1));
 		}
+		catch (NumberFormatException e)
+		{
+			return Long.MAX_VALUE;
+		}
+	}
+	
+	/**
+	 * Gets the name of a file up to the first '.'
+	 * @param p_file The file
+	 * @return The base name
+	 */
+	private static String getBaseName(File p_file)
+	{
+		String name = p_file.getName();
+		if (name.contains("."))
+			name = name.substring(0, name.indexOf('.'));
+		
+		return name;
+	}
+	
+	/**
+	 * Gets the reader used for reading archive headers while searching for archives.
+	 * It is separate from the main reader, which may be in the middle of an archive.
+	 * @return The header reader
+	 */
+	private ArchiveReader getHeaderReader()
+	{
+		if (f_headerReader == null)
+			f_headerReader = AlgorithmRegistry.getArchiveReaderFactory(f_algo, f_key).createReader();
+		
+		return f_headerReader;
 	}
 
 	/**
 	 * Pulls in the data from the first file only. It is assumed that this
 	 * will be a fragment from a previous file.
 	 * @param p_archiveFile
-	 * @param p_outStream
+	 * @param p_assembly The assembly of the file the fragment belongs to
 	 * @return True if this was the last fragment of that file, false 
 	 * if there's more data in a later file.
 	 * @throws IOException If the archive file could not be read
 	 */
 	private boolean extractFragmentData(File p_archiveFile,
-					BufferedOutputStream p_outStream) throws IOException
+					FileAssembly p_assembly) throws IOException
 	{
 		parseArchiveContents(p_archiveFile);
 		
@@ -262,7 +828,8 @@ public class ArchiveExtractor {
 		{
 			try
 			{
-				long bytesRead = readNextFileData(fileContents, p_outStream);
+				long bytesRead = readNextFileData(fileContents, p_assembly.f_channel);
+				p_assembly.addFragment(bytesRead);
 				long totalRemainingFileBytes = fileContents.getRemainingData();
 				boolean finished = bytesRead >= totalRemainingFileBytes;
 				
@@ -292,7 +859,8 @@ public class ArchiveExtractor {
 	 * Maps the headers of all archives in the current file or folder. This allows 
 	 * for less searching around every time we need to find a specific archive. It is 
 	 * also allows archive files to be renamed without any hit to performance when 
-	 * searching for them.
+	 * searching for them. The headers in a folder are kept in a header catalog
+	 * saved in the folder, so only new or changed files are read again.
 	 * @param p_archiveFile The archive file or folder to map the header(s) of.
 	 */
 	public void mapHeaders(File p_archiveFile)
@@ -300,33 +868,11 @@ public class ArchiveExtractor {
 		Logger.log(LogLevel.k_info, "Indexing available file IDs...");
 		if (p_archiveFile.isDirectory())
 		{
-			//bfs through folders for archive files
-			Queue<File> folders = new LinkedList<File>();
-			folders.add(p_archiveFile);
+			HeaderCatalog catalog = new HeaderCatalog(p_archiveFile, f_algo, f_key);
+			catalog.update();
 			
-			while (folders.size() > 0)
-			{
-				File folder = folders.poll();
-				for (File sub : folder.listFiles())
-				{
-					if (sub.isDirectory())
-					{
-						folders.add(sub);
-					}
-					else
-					{
-						try
-						{
-							mapHeader(sub);
-						}
-						catch (Exception e) //anything could happen!
-						{
-							//the file could be any file, so it might not even be an archive file
-							Logger.log(LogLevel.k_warning, "Could not map file: " + sub.getName());
-						}
-					}
-				}
-			}
+			for (Map.Entry<String, File> location : catalog.getArchiveLocations().entrySet())
+				f_manager.cacheHeaderLocation(location.getKey(), location.getValue());
 		}
 		else
 		{
@@ -368,13 +914,35 @@ public class ArchiveExtractor {
 	 */
 	public boolean extractAllFromArchiveFile(File p_archiveFile, File p_extractionFolder) throws IOException
 	{
+		return extractAllFromArchiveFile(p_archiveFile, p_extractionFolder, null);
+	}
+
+	/**
+	 * Extracts the files from an archive file whose paths are selected by a filter.
+	 * The data of the other files is skipped over, and extraction chains are only
+	 * started for selected files.
+	 * @param p_archiveFile The archive file to extract contents from
+	 * @param p_extractionFolder The folder to move extracted files to
+	 * @param p_filter Selects files by their paths, or null to extract everything
+	 * @return If the extraction was successful for all selected files
+	 * @throws IOException If the file could not be parsed or read
+	 */
+	public boolean extractAllFromArchiveFile(File p_archiveFile, File p_extractionFolder,
+		ExtractionFilter p_filter) throws IOException
+	{
+		f_manager.resetCreatedFolders();
 		ArchiveContents archiveContents = parseArchiveContents(p_archiveFile);
 		
 		//keep trying to read files until one can't be read
 		FileContents fileContents = readNextFileHeader(true);
 		while (fileContents != null)
 		{
-			if (fileContents.getMetadata().getType().equals(FileType.k_file))
+			if (p_filter != null && !p_filter.matches(fileContents))
+			{
+				//not selected, just skip the data
+				skipNextFileData(fileContents);
+			}
+			else if (fileContents.getMetadata().getType().equals(FileType.k_file))
 			{
 				if (fileContents.getFragmentNumber() != Constants.FIRST_FRAGMENT_CODE)
 				{
@@ -393,44 +961,320 @@ public class ArchiveExtractor {
 					//assemble this file, if it has other fragments, follow the trail of archives
 					File assembled = assembleCurrentFileData(archiveContents, fileContents, p_extractionFolder);
 					
-					if (assembled != null)
+					if (assembled == null)
+					{
+						Logger.log(LogLevel.k_error, "Failed to extract file: " +
+										fileContents.getMetadata().getFile().getPath());
+					}
+				}	
+			}
+			else
+			{
+				f_manager.moveFolderToExtractionFolder(fileContents, p_extractionFolder);
+			}
+			
+			//read next header
+			fileContents = readNextFileHeader(true);
+		}
+		
+		//set this file explored since it's all been read
+		f_manager.setExplored(p_archiveFile);
+
+		return true;
+	}
+
+	/**
+	 * Extracts all files in all archives in the specified folder. The archives are
+	 * planned into runs of the same stream (see ExtractionPlan) so each archive is only
+	 * loaded once: a file which spans multiple archives is assembled as its run reaches
+	 * each fragment, instead of loading the following archives a second time to find
+	 * them. Runs are extracted in parallel, one per worker.
+	 * @param p_archiveFolder The folder containing archives
+	 * @param p_extractionFolder The folder to extract files from archives into
+	 * @return If all files were extracted successfully
+	 */
+	public boolean extractAllFromArchiveFolder(File p_archiveFolder, File p_extractionFolder)
+	{
+		return extractAllFromArchiveFolder(p_archiveFolder, p_extractionFolder, null);
+	}
+	
+	/**
+	 * Extracts the files in all archives in the specified folder whose paths are
+	 * selected by a filter. Headers are still read in every archive, but the data of
+	 * files which aren't selected is skipped over, and fragments of them in later
+	 * archives are skipped as well instead of being assembled.
+	 * @param p_archiveFolder The folder containing archives
+	 * @param p_extractionFolder The folder to extract files from archives into
+	 * @param p_filter Selects files by their paths, or null to extract everything
+	 * @return If all selected files were extracted successfully
+	 */
+	public boolean extractAllFromArchiveFolder(File p_archiveFolder, File p_extractionFolder,
+		ExtractionFilter p_filter)
+	{
+		//reset explored files since this is a new run
+		f_manager.resetExploredFiles();
+		f_manager.resetDecodeCounts();
+		f_manager.resetCreatedFolders();
+		
+		List<File> archives = listArchiveFiles(p_archiveFolder);
+		List<List<File>> runs = new ExtractionPlan(archives, p_archiveFolder, f_algo, f_key).getRuns();
+		
+		//every stream is read, so the stripes of striped files are assembled
+		boolean success;
+		f_manager.setAssemblingStripes(true);
+		try
+		{
+			success = extractRuns(runs, p_extractionFolder, p_filter);
+		}
+		finally
+		{
+			f_manager.setAssemblingStripes(false);
+		}
+		
+		for (File unfinished : f_manager.takeUnfinishedStripedFiles())
+		{
+			Logger.log(LogLevel.k_error, "Not every stripe of this file was found, it was not extracted: "
+							+ unfinished.getPath());
+			deletePartFile(getPartFile(unfinished));
+			success = false;
+		}
+		
+		Logger.log(LogLevel.k_debug, "Archives loaded: " + f_manager.getArchivesDecoded() +
+						", loaded more than once: " + f_manager.getRepeatedDecodes());
+		
+		return success;
+	}
+	
+	/**
+	 * Extracts runs of archives, in parallel if there are several
+	 * @param p_runs The runs of archives
+	 * @param p_extractionFolder The folder to extract files from archives into
+	 * @param p_filter Selects files by their paths, or null to extract everything
+	 * @return If all files were extracted successfully
+	 */
+	private boolean extractRuns(List<List<File>> p_runs, File p_extractionFolder, ExtractionFilter p_filter)
+	{
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), p_runs.size());
+		if (threads <= 1)
+		{
+			boolean success = true;
+			for (int i = 0; i < p_runs.size(); ++i)
+				success &= extractRun(p_runs.get(i), i, p_extractionFolder, p_filter);
+			
+			return success;
+		}
+		
+		//readers aren't thread safe, so each worker has its own extractor
+		ThreadLocal<ArchiveExtractor> extractors = ThreadLocal.withInitial(() -> clone());
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(p_runs.size());
+			for (int i = 0; i < p_runs.size(); ++i)
+			{
+				List<File> run = p_runs.get(i);
+				int position = i;
+				results.add(workers.submit(() ->
+					extractors.get().extractRun(run, position, p_extractionFolder, p_filter)));
+			}
+			
+			boolean success = true;
+			for (Future<Boolean> result : results)
+			{
+				try
+				{
+					success &= result.get();
+				}
+				catch (ExecutionException e)
+				{
+					Logger.log(LogLevel.k_debug, e, false);
+					success = false;
+				}
+			}
+			
+			return success;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			Logger.log(LogLevel.k_error, "Extraction was interrupted.");
+			return false;
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Extracts all files from a run of archives, in sequence order, loading each
+	 * archive once. When a file continues past the end of an archive, its assembly is
+	 * kept open and the next fragment is read from the start of the next archive in
+	 * the run. If that archive doesn't continue the file (a missing or misplaced archive),
+	 * the rest of the file is found by following the chain as usual. Failures are
+	 * logged instead of thrown. When runs hold files with the same path, the file from
+	 * the run furthest on in the plan is kept.
+	 * @param p_run The archive files, in sequence order
+	 * @param p_position The position of the run in the extraction plan
+	 * @param p_extractionFolder The folder to extract files from the archives into
+	 * @param p_filter Selects files by their paths, or null to extract everything
+	 * @return If the extraction was successful for all files
+	 */
+	private boolean extractRun(List<File> p_run, int p_position, File p_extractionFolder,
+		ExtractionFilter p_filter)
+	{
+		ArchivePrefetcher prefetcher = createPrefetcher();
+		f_runPosition = p_position;
+		try
+		{
+			return extractRun(p_run, p_extractionFolder, p_filter, prefetcher);
+		}
+		finally
+		{
+			f_runPosition = 0;
+			if (prefetcher != null)
+				prefetcher.close();
+		}
+	}
+	
+	/**
+	 * Extracts all files from a run of archives while the following archives in the
+	 * run are loaded in the background
+	 * @param p_run The archive files, in sequence order
+	 * @param p_extractionFolder The folder to extract files from the archives into
+	 * @param p_filter Selects files by their paths, or null to extract everything
+	 * @param p_prefetcher The prefetcher for the following archives, or null to load
+	 * each archive when it is reached
+	 * @return If the extraction was successful for all files
+	 */
+	private boolean extractRun(List<File> p_run, File p_extractionFolder, ExtractionFilter p_filter,
+		ArchivePrefetcher p_prefetcher)
+	{
+		boolean success = true;
+		FileAssembly assembly = null;
+		
+		for (int i = 0; i < p_run.size(); ++i)
+		{
+			File archiveFile = p_run.get(i);
+			
+			try
+			{
+				PrefetchedArchive prefetched = prefetchRun(p_prefetcher, p_run, i);
+				
+				//check if it was already explored first
+				if (f_manager.isExplored(archiveFile))
+				{
+					if (prefetched != null)
+						p_prefetcher.recycle(prefetched.getReader());
+					
+					continue;
+				}
+				
+				adopt(p_prefetcher, prefetched);
+				ArchiveContents archiveContents = parseArchiveContents(archiveFile);
+				FileContents fileContents = readNextFileHeader(true);
+				
+				if (assembly != null)
+				{
+					if (assembly.isContinuedBy(archiveContents, fileContents))
+					{
+						long bytesRead = readNextFileData(fileContents, assembly.f_channel);
+						assembly.addFragment(bytesRead);
+						assembly.advance(archiveFile);
+						
+						if (bytesRead < fileContents.getRemainingData())
+						{
+							//the fragment fills this whole archive, the file continues in the next one
+							f_manager.setExplored(archiveFile);
+							continue;
+						}
+						
+						success &= finishAssembly(assembly);
+						fileContents = readNextFileHeader(true);
+					}
+					else
+					{
+						//the next fragment isn't here, so it has to be searched for
+						success &= completeAssembly(assembly);
+					}
+					
+					assembly = null;
+				}
+				
+				//keep trying to read files until one can't be read
+				while (fileContents != null)
+				{
+					if (p_filter != null && !p_filter.matches(fileContents))
 					{
-						f_manager.moveFileToExtractionFolder(assembled, fileContents, p_extractionFolder);
+						//not selected, the data (or the rest of it) is skipped over
+						skipNextFileData(fileContents);
+					}
+					else if (fileContents.getMetadata().getType().equals(FileType.k_file))
+					{
+						if (fileContents.getFragmentNumber() != Constants.FIRST_FRAGMENT_CODE)
+						{
+							//the first fragment of this file wasn't in the previous archive of
+							//the run, it will be picked up if its first fragment is found
+							skipNextFileData(fileContents);
+						}
+						else
+						{
+							assembly = startAssembly(archiveContents, fileContents, p_extractionFolder);
+							long bytesRead = readNextFileData(fileContents, assembly.f_channel);
+							assembly.addFragment(bytesRead);
+							
+							//unless all the bytes were read, the file continues in the next archive
+							if (bytesRead == fileContents.getRemainingData())
+							{
+								success &= finishAssembly(assembly);
+								assembly = null;
+							}
+						}
 					}
 					else
 					{
-						Logger.log(LogLevel.k_error, "Failed to extract file: " +
-										fileContents.getMetadata().getFile().getPath());
+						f_manager.moveFolderToExtractionFolder(fileContents, p_extractionFolder);
 					}
-				}	
+					
+					//read next header
+					fileContents = readNextFileHeader(true);
+				}
+				
+				//set this file explored since it's all been read
+				f_manager.setExplored(archiveFile);
 			}
-			else
+			catch (Exception e)
 			{
-				f_manager.moveFolderToExtractionFolder(fileContents, p_extractionFolder);
+				Logger.log(LogLevel.k_error, "Failed to extract all files from " + archiveFile.getAbsolutePath());
+				Logger.log(LogLevel.k_debug, e, false);
+				success = false;
+				
+				if (assembly != null)
+				{
+					Logger.log(LogLevel.k_error, "Failed to extract file: " +
+									assembly.f_fileContents.getMetadata().getFile().getPath());
+					abandonAssembly(assembly);
+					assembly = null;
+				}
 			}
-			
-			//read next header
-			fileContents = readNextFileHeader(true);
 		}
 		
-		//set this file explored since it's all been read
-		f_manager.setExplored(p_archiveFile);
-
-		return true;
+		//the run ended before the last file did
+		if (assembly != null)
+			success &= completeAssembly(assembly);
+		
+		return success;
 	}
-
+	
 	/**
-	 * Extracts all files in all archives in the specified folder
+	 * Lists the archive files in a folder and its sub folders, in the order they
+	 * should be extracted
 	 * @param p_archiveFolder The folder containing archives
-	 * @param p_extractionFolder The folder to extract files from archives into
-	 * @return If all files were extracted successfully
+	 * @return The archive files
 	 */
-	public boolean extractAllFromArchiveFolder(File p_archiveFolder, File p_extractionFolder)
+	private List<File> listArchiveFiles(File p_archiveFolder)
 	{
-		boolean success = true;
-		
-		//reset explored files since this is a new run
-		f_manager.resetExploredFiles();
+		List<File> archives = new ArrayList<File>();
 		
 		//bfs through folders for archive files
 		Queue<File> folders = new LinkedList<File>();
@@ -441,34 +1285,9 @@ public class ArchiveExtractor {
 			File folder = folders.poll();
 			File[] contents = folder.listFiles();
 			
-			//sort based on sequence number
-			Arrays.sort(contents, (File a, File b) ->
-			{
-				try
-				{
-					String path1 = a.getName();
-					String path2 = b.getName();
-					
-					String[] parts = path1.split("_");
-					String last = parts[parts.length-1];
-					if (last.contains("."))
-						last = last.substring(0, last.indexOf('.'));
-					
-					int seq1 = Integer.parseInt(last);
-
-					parts = path2.split("_");
-					last = parts[parts.length-1];
-					if (last.contains("."))
-						last = last.substring(0, last.indexOf('.'));
-					
-					int seq2 = Integer.parseInt(last);
-					
-					return seq1 - seq2;
-				}
-				catch (Exception e) {}
-				
-				return Integer.MAX_VALUE;
-			});
+			//sort based on sequence number, names without one (such as the
+			//header catalog) go last
+			Arrays.sort(contents, (File a, File b) -> Long.compare(getSequenceNumber(a), getSequenceNumber(b)));
 			
 			for (File sub : contents)
 			{
@@ -476,27 +1295,14 @@ public class ArchiveExtractor {
 				{
 					folders.add(sub);
 				}
-				else
+				else if (!HeaderCatalog.isCatalogFile(sub))
 				{
-					//check if it was already explored first
-					if (!f_manager.isExplored(sub))
-					{
-						try
-						{
-							extractAllFromArchiveFile(sub, p_extractionFolder);
-						}
-						catch (Exception e)
-						{
-							Logger.log(LogLevel.k_error, "Failed to extract all files from " + sub.getAbsolutePath());
-							Logger.log(LogLevel.k_debug, e, false);
-							success = false;
-						}
-					}
+					archives.add(sub);
 				}
 			}
 		}
 		
-		return success;
+		return archives;
 	}
 	
 	/**
@@ -509,6 +1315,7 @@ public class ArchiveExtractor {
 	 */
 	public boolean extractFileByIndex(File p_archiveFile, File p_extractionFolder, int p_index) throws IOException
 	{
+		f_manager.resetCreatedFolders();
 		ArchiveContents archiveContents = parseArchiveContents(p_archiveFile);
 		
 		int curIndex = 0;
@@ -526,11 +1333,7 @@ public class ArchiveExtractor {
 					//assemble this file, if it has other fragments, follow the trail of archives
 					File assembled = assembleCurrentFileData(archiveContents, fileContents, p_extractionFolder);
 					
-					if (assembled != null)
-					{
-						f_manager.moveFileToExtractionFolder(assembled, fileContents, p_extractionFolder);
-					}
-					else
+					if (assembled == null)
 					{
 						Logger.log(LogLevel.k_error, "Failed to extract file: " +
 										fileContents.getMetadata().getFile().getPath());
@@ -559,6 +1362,273 @@ public class ArchiveExtractor {
 		return false;
 	}
 	
+	/**
+	 * Extracts the files within an archive which are selected by a filter, in one pass
+	 * through the archive. Entries which aren't selected are skipped over, and reading
+	 * stops once the filter can't select anything further on.
+	 * @param p_archiveFile The archive file
+	 * @param p_extractionFolder The extraction folder where files will be output to
+	 * @param p_filter The filter which selects the entries to extract
+	 * @return If all the selected entries were extracted successfully
+	 * @throws IOException If the archive could not be parsed or read
+	 */
+	public boolean extractFiles(File p_archiveFile, File p_extractionFolder, ExtractionFilter p_filter) throws IOException
+	{
+		f_manager.resetCreatedFolders();
+		
+		ArchiveContents archiveContents = parseArchiveContents(p_archiveFile);
+		boolean success = true;
+		
+		//keep trying to read files until one can't be read
+		int curIndex = 0;
+		FileContents fileContents = readNextFileHeader(true);
+		while (fileContents != null && !p_filter.isExhausted(curIndex))
+		{
+			if (!p_filter.matches(curIndex, fileContents))
+			{
+				//not selected, just skip the data
+				skipNextFileData(fileContents);
+			}
+			else if (fileContents.getMetadata().getType().equals(FileType.k_file))
+			{
+				//assemble this file, if it has other fragments, follow the trail of archives
+				if (assembleCurrentFileData(archiveContents, fileContents, p_extractionFolder) == null)
+				{
+					Logger.log(LogLevel.k_error, "Failed to extract file: " +
+									fileContents.getMetadata().getFile().getPath());
+					success = false;
+				}
+			}
+			else
+			{
+				f_manager.moveFolderToExtractionFolder(fileContents, p_extractionFolder);
+			}
+			
+			//read next header
+			fileContents = readNextFileHeader(true);
+			++curIndex;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * Extracts a range of bytes of a file. The file must start in the given archive, but
+	 * the range can be anywhere in it. Each later fragment records how much of the file
+	 * remains, which gives its offset in the file, and every archive after the first holds
+	 * the same amount of file data. So the archive holding the start of the range can be
+	 * worked out without loading the ones in front of it, and the data in front of the
+	 * range is skipped over rather than read. The range is written next to the file's
+	 * place in the extraction folder, named after the file and the range
+	 * (<name>.<start>-<end>), so a copy of the whole file there isn't replaced.
+	 * @param p_archiveFile The archive file holding the first fragment of the file
+	 * @param p_extractionFolder The extraction folder where the range will be output to
+	 * @param p_filter Selects the file, or null for the first file which starts in the archive
+	 * @param p_offset The offset of the range in the file. A negative offset counts back
+	 * from the end of the file.
+	 * @param p_length The length of the range, or a negative number for the rest of the file
+	 * @return If the whole range was extracted
+	 * @throws IOException If the archive could not be parsed or read, or no file starting
+	 * in it covers the range
+	 */
+	public boolean extractRange(File p_archiveFile, File p_extractionFolder, ExtractionFilter p_filter,
+		long p_offset, long p_length) throws IOException
+	{
+		f_manager.resetCreatedFolders();
+		
+		ArchiveContents archiveContents = parseArchiveContents(p_archiveFile);
+		long archiveHeaderLength = f_archivePosition;
+		
+		//find the file, skipping over anything else
+		int curIndex = 0;
+		long fileHeaderStart = f_archivePosition;
+		FileContents fileContents = readNextFileHeader(true);
+		while (fileContents != null && !isRangeSource(curIndex, fileContents, p_filter))
+		{
+			skipNextFileData(fileContents);
+			
+			fileHeaderStart = f_archivePosition;
+			fileContents = readNextFileHeader(true);
+			++curIndex;
+		}
+		
+		if (fileContents == null)
+			throw new ArchiveIOException("No file starting in this archive was selected: " + p_archiveFile.getName());
+		
+		long fileHeaderLength = f_archivePosition - fileHeaderStart;
+		
+		//work out where the range is
+		String path = fileContents.getMetadata().getFile().getPath();
+		long fileLength = fileContents.isStripe() ? fileContents.getFileLength() : fileContents.getRemainingData();
+		long start = p_offset < 0 ? Math.max(0, fileLength + p_offset) : p_offset;
+		if (start > fileLength || (start == fileLength && fileLength > 0))
+			throw new ArchiveIOException("The range starts after the end of the file (" + fileLength
+							+ " bytes): " + path);
+		
+		long end = p_length < 0 || p_length >= fileLength - start ? fileLength : start + p_length;
+		Logger.log(LogLevel.k_info, "Extracting bytes " + start + " to " + end + " of: " + path);
+		
+		//only one stripe of a striped file starts here, the range has to be within it
+		long stripeStart = fileContents.getStripeOffset();
+		long stripeEnd = stripeStart + fileContents.getRemainingData();
+		if (start < stripeStart || end > stripeEnd)
+			throw new ArchiveIOException("Only bytes " + stripeStart + " to " + stripeEnd
+							+ " of this file start in this archive: " + path);
+		
+		File file = new File(p_extractionFolder, path);
+		File output = new File(file.getParentFile(), file.getName() + "." + start + "-" + end);
+		f_manager.createFolder(output.getParentFile());
+		
+		//from here on, offsets are within the stripe
+		start -= stripeStart;
+		end -= stripeStart;
+		
+		File part = getPartFile(output);
+		FileAssembly range = new FileAssembly(archiveContents, fileContents, output,
+						part, openOutput(part.toPath()), p_archiveFile, false);
+		try
+		{
+			//the first fragment is at the start of the file
+			long firstFragmentEnd = readFragmentRange(0, start, end, range.f_channel);
+			long position = Math.max(start, firstFragmentEnd);
+			
+			//if the range goes on, this archive was read to its end. The following ones
+			//have the same space, less their archive header and the fragment's file header.
+			long perArchive = Math.max(1, f_archivePosition - archiveHeaderLength - fileHeaderLength);
+			
+			//the archive holding the position is somewhere in [low, high)
+			int low = 1;
+			int high = Integer.MAX_VALUE;
+			boolean missed = false;
+			while (position < end)
+			{
+				if (low >= high)
+					throw new ArchiveIOException("Could not find the fragment holding byte " + position
+									+ " of: " + path);
+				
+				//once the range is started, it goes on in the next archive
+				long estimate = position > start ? low : 1 + (position - firstFragmentEnd) / perArchive;
+				if (missed)
+					estimate = low + (high - low) / 2;
+				
+				int increment = (int) Math.max(low, Math.min(high - 1, estimate));
+				
+				f_manager.setEnclosingFolder(f_enclosingFolder);
+				String searchName = range.getArchiveName(increment);
+				File archiveFile = findArchiveFile(searchName, range.f_lastArchiveFile, false);
+				if (archiveFile == null && increment > low)
+				{
+					//an estimate past the last archive, archives may hold more than the first
+					high = increment;
+					missed = true;
+					continue;
+				}
+				
+				missed = false;
+				
+				//the user is only asked for an archive which must be there
+				if (archiveFile == null)
+					archiveFile = findArchiveFile(searchName, range.f_lastArchiveFile, true);
+				
+				if (archiveFile == null)
+				{
+					Logger.log(LogLevel.k_error, "Could not find referenced archive file: " + searchName);
+					discardAssembly(range);
+					return false;
+				}
+				
+				long fragmentStart = readRangeFragmentHeader(archiveFile, range, increment);
+				range.f_lastArchiveFile = archiveFile;
+				
+				if (fragmentStart > position)
+				{
+					//too far, the archives hold less than estimated
+					high = increment;
+					perArchive = Math.max(1, (fragmentStart - firstFragmentEnd) / Math.max(1, increment - 1));
+				}
+				else
+				{
+					long fragmentEnd = readFragmentRange(fragmentStart, position, end, range.f_channel);
+					position = Math.max(position, fragmentEnd);
+					
+					//the archive was read to its end unless the range is done
+					perArchive = Math.max(1, fragmentEnd - fragmentStart);
+					low = increment + 1;
+					high = Integer.MAX_VALUE;
+				}
+			}
+			
+			range.f_channel.close();
+			f_manager.replaceExtractedFile(part, output, f_runPosition);
+			Logger.log(LogLevel.k_debug, "Extracted range to: " + output.getAbsolutePath());
+			return true;
+		}
+		catch (IOException e)
+		{
+			discardAssembly(range);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Tells if a file can have a range extracted from it
+	 * @param p_index The index of the file in the archive
+	 * @param p_fileContents The file contents
+	 * @param p_filter The filter which selects the file, or null for any file
+	 * @return If the file is selected and it starts in this archive
+	 */
+	private static boolean isRangeSource(int p_index, FileContents p_fileContents, ExtractionFilter p_filter)
+	{
+		return p_fileContents.getMetadata().getType().equals(FileType.k_file)
+			&& p_fileContents.getFragmentNumber() == Constants.FIRST_FRAGMENT_CODE
+			&& (p_filter == null || p_filter.matches(p_index, p_fileContents));
+	}
+	
+	/**
+	 * Loads an archive which should hold a later fragment of a file a range is
+	 * being extracted from, and reads the fragment's file header
+	 * @param p_archiveFile The archive file
+	 * @param p_range The assembly of the range
+	 * @param p_increment The number of archives after the first fragment's archive
+	 * @return The offset in the file where the fragment starts
+	 * @throws IOException If the archive could not be read or doesn't start with the fragment
+	 */
+	private long readRangeFragmentHeader(File p_archiveFile, FileAssembly p_range, int p_increment)
+		throws IOException
+	{
+		ArchiveContents archiveContents = parseArchiveContents(p_archiveFile);
+		FileContents fileContents = readNextFileHeader(true);
+		
+		p_range.f_increment = p_increment;
+		if (!p_range.isContinuedBy(archiveContents, fileContents))
+			throw new ArchiveIOException("The first file in this archive was not the expected fragment: "
+							+ p_archiveFile.getAbsolutePath());
+		
+		return p_range.f_fileContents.getRemainingData() - fileContents.getRemainingData();
+	}
+	
+	/**
+	 * Reads the part of a range which is in the current fragment
+	 * @param p_fragmentStart The offset in the file where the fragment starts
+	 * @param p_start The offset in the file to read from, at or after the fragment start
+	 * @param p_end The offset in the file to read up to
+	 * @param p_output The channel to write the range to, at its current position
+	 * @return The offset in the file reached, which is the end of the fragment if that
+	 * came before the end of the range
+	 * @throws IOException If the range could not be written
+	 */
+	private long readFragmentRange(long p_fragmentStart, long p_start, long p_end,
+		FileChannel p_output) throws IOException
+	{
+		//the data in front of the range is never read
+		long skip = p_start - p_fragmentStart;
+		long skipped = skipData(skip);
+		if (skipped < skip)
+			return p_fragmentStart + skipped;
+		
+		return p_start + readData(p_end - p_start, p_output);
+	}
+	
 	/**
 	 * Parses an archive into an archive contents
 	 * @param p_archiveFile The archive file
@@ -597,6 +1667,15 @@ public class ArchiveExtractor {
 	private void loadArchive(File p_archiveFile) throws IOException
 	{
 		f_curArchiveFile = p_archiveFile;
+		f_archivePosition = 0;
+		
+		//the archive may have been loaded in the background already
+		boolean preloaded = p_archiveFile.equals(f_preloadedFile);
+		f_preloadedFile = null;
+		if (preloaded)
+			return;
+		
+		f_manager.recordDecode(p_archiveFile);
 		
 		try
 		{
@@ -618,7 +1697,9 @@ public class ArchiveExtractor {
 	 */
 	private boolean readFull(int p_length)
 	{
-		return f_archive.read(f_buffer, 0, p_length) == p_length;
+		int bytesRead = f_archive.read(f_buffer, 0, p_length);
+		f_archivePosition += Math.max(0, bytesRead);
+		return bytesRead == p_length;
 	}
 	
 	/**
@@ -628,7 +1709,20 @@ public class ArchiveExtractor {
 	 */
 	private boolean skipFull(long p_skip)
 	{
-		return f_archive.skip(p_skip) == p_skip;
+		return skipData(p_skip) == p_skip;
+	}
+	
+	/**
+	 * Skips up to the length of data requested
+	 * @param p_skip The number of bytes to skip
+	 * @return The number of bytes skipped, which is less than requested if the
+	 * end of the archive was reached
+	 */
+	private long skipData(long p_skip)
+	{
+		long skipped = f_archive.skip(p_skip);
+		f_archivePosition += skipped;
+		return skipped;
 	}
 	
 	/**
@@ -665,19 +1759,16 @@ public class ArchiveExtractor {
 				
 			f_archive.secureStream();
 
-			//archive version
+			//archive version, always read because it decides the file header layout
+			if (!readFull(Constants.ARCHIVE_VERSION_NUMBER_SIZE))
+				throw new ArchiveIOException("Could not read archive version number.");
+			
+			f_archiveVersion = ByteConversion.byteToInt(f_buffer[0]);
+			if (f_archiveVersion > Constants.ARCHIVE_VERSION_NUMBER)
+				throw new ArchiveIOException("Unsupported archive version: " + f_archiveVersion);
+			
 			if (p_parseData)
-			{
-				if (!readFull(Constants.ARCHIVE_VERSION_NUMBER_SIZE))
-					throw new ArchiveIOException("Could not read archive version number.");
-				
-				contents.setArchiveVersionNumber(ByteConversion.byteToInt(f_buffer[0]));
-			}
-			else
-			{
-				if (!skipFull(Constants.ARCHIVE_VERSION_NUMBER_SIZE))
-					throw new ArchiveIOException("Could not skip archive version number.");
-			}
+				contents.setArchiveVersionNumber(f_archiveVersion);
 
 			return contents;
 		}
@@ -804,6 +1895,18 @@ public class ArchiveExtractor {
 						return null;
 				}
 				
+				//since version 1, the length of the whole file and the offset of this stripe
+				if (f_archiveVersion >= 1)
+				{
+					if (!readFull(Constants.FILE_LENGTH_SIZE))
+						return null;
+					contents.setFileLength(ByteConversion.bytesToLong(f_buffer, 0));
+					
+					if (!readFull(Constants.STRIPE_OFFSET_SIZE))
+						return null;
+					contents.setStripeOffset(ByteConversion.bytesToLong(f_buffer, 0));
+				}
+				
 				//file length remaining
 				if (!readFull(Constants.FILE_LENGTH_REMAINING_SIZE))
 					return null;
@@ -844,23 +1947,43 @@ public class ArchiveExtractor {
 	/**
 	 * Reads the next file data in the archive
 	 * @param p_fileContents The file contents associated with the file data
-	 * @param p_output The output stream to write the file data to
+	 * @param p_output The channel to write the file data to, at its current position
 	 * @return The length of data read
-	 * @throws IOException If the archive file could not be read
+	 * @throws IOException If the archive file could not be read or the file data could not be written
 	 */
-	private long readNextFileData(FileContents p_fileContents, BufferedOutputStream p_output) throws IOException
+	private long readNextFileData(FileContents p_fileContents, FileChannel p_output) throws IOException
 	{
-		long fileLengthRemaining = p_fileContents.getRemainingData();
+		long totalBytesRead = readData(p_fileContents.getRemainingData(), p_output);
+		
+		Logger.log(LogLevel.k_info, "Extracting file data belonging to: " + 
+						p_fileContents.getMetadata().getFile().getName());
+		return totalBytesRead;
+	}
+	
+	/**
+	 * Reads up to the length of data requested from the archive
+	 * @param p_length The length of data to read
+	 * @param p_output The channel to write the data to, at its current position
+	 * @return The length of data read, which is less than requested if the end
+	 * of the archive was reached
+	 * @throws IOException If the data could not be written
+	 */
+	private long readData(long p_length, FileChannel p_output) throws IOException
+	{
+		long lengthRemaining = p_length;
 		long totalBytesRead = 0;
+		
+		//the buffer grows to fit the file data, up to the maximum read size
+		if (f_buffer.length < lengthRemaining && f_buffer.length < Constants.MAX_READ_BUFFER_SIZE)
+			f_buffer = new byte[(int) Math.min(Constants.MAX_READ_BUFFER_SIZE, lengthRemaining)];
 
-		while (fileLengthRemaining > 0)
+		while (lengthRemaining > 0)
 		{
 			//read from archive
-			int dataLength = (int) Math.min(f_buffer.length, fileLengthRemaining);
+			int dataLength = (int) Math.min(f_buffer.length, lengthRemaining);
 			int bytesRead = f_archive.read(f_buffer, 0, dataLength);
-			totalBytesRead += bytesRead;
 			
-			if (bytesRead == 0)
+			if (bytesRead <= 0)
 			{
 				//no more data can be read from the archive
 				//this is a normal, it happens when there is
@@ -868,16 +1991,186 @@ public class ArchiveExtractor {
 				break;
 			}
 			
-			fileLengthRemaining -= bytesRead;
+			totalBytesRead += bytesRead;
+			f_archivePosition += bytesRead;
+			lengthRemaining -= bytesRead;
 			
-			//write out to part file
-			p_output.write(f_buffer, 0, bytesRead);
+			//write out to the file
+			ByteBuffer data = ByteBuffer.wrap(f_buffer, 0, bytesRead);
+			while (data.hasRemaining())
+				p_output.write(data);
 		}
 		
-		p_output.flush();
-		
-		Logger.log(LogLevel.k_info, "Extracting file data belonging to: " + 
-						p_fileContents.getMetadata().getFile().getName());
 		return totalBytesRead;
 	}
+	
+	/**
+	 * Reads the file headers of the currently loaded archive one at a time, skipping
+	 * over the file data
+	 */
+	private class ContentsIterator implements Iterator<FileContents>
+	{
+		private FileContents f_next;
+		private boolean f_finished;
+		
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext()
+		{
+			if (f_next == null && !f_finished)
+				f_next = readNext();
+			
+			return f_next != null;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public FileContents next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+			
+			FileContents fileContents = f_next;
+			f_next = null;
+			return fileContents;
+		}
+		
+		/**
+		 * Reads the next file header and skips over its data
+		 * @return The file contents, or null if there are no more files
+		 */
+		private FileContents readNext()
+		{
+			try
+			{
+				FileContents fileContents = readNextFileHeader(true);
+				if (fileContents != null)
+				{
+					//skip over the file data
+					boolean allDataSkipped = skipNextFileData(fileContents);
+					fileContents.setFragment(!allDataSkipped);
+					return fileContents;
+				}
+			}
+			catch (ArchiveIOException e)
+			{
+				//this will happen whenever the next file cannot be read
+				//this is normal if we've reached the end of the archive
+				Logger.log(LogLevel.k_debug, "The next file header could not be read "
+								+ "(possibly because we're at the end of an archive): " + e.getMessage());
+			}
+			
+			f_finished = true;
+			return null;
+		}
+	}
+	
+	/**
+	 * A file which is being assembled from its fragments
+	 */
+	private static class FileAssembly
+	{
+		private ArchiveContents f_archiveContents;
+		private FileContents f_fileContents;
+		private File f_output;
+		private File f_part;
+		private boolean f_striped;
+		private FileChannel f_channel;
+		private File f_lastArchiveFile;
+		private int f_increment;
+		private long f_written;
+		private long f_largestFragment;
+		
+		/**
+		 * Constructs a file assembly
+		 * @param p_archiveContents The archive contents associated with the first fragment
+		 * @param p_fileContents The file contents associated with the first fragment
+		 * @param p_output The file in the extraction folder
+		 * @param p_part The partial file the data is written to
+		 * @param p_channel The channel to the partial file
+		 * @param p_archiveFile The archive file holding the first fragment
+		 * @param p_striped If this is a stripe sharing the partial file with the other stripes
+		 */
+		public FileAssembly(ArchiveContents p_archiveContents, FileContents p_fileContents,
+			File p_output, File p_part, FileChannel p_channel, File p_archiveFile, boolean p_striped)
+		{
+			f_archiveContents = p_archiveContents;
+			f_fileContents = p_fileContents;
+			f_output = p_output;
+			f_part = p_part;
+			f_striped = p_striped;
+			f_channel = p_channel;
+			f_lastArchiveFile = p_archiveFile;
+			f_increment = 1;
+		}
+		
+		/**
+		 * Gets the original name of an archive which holds a later fragment
+		 * @param p_increment The number of archives after the first fragment's archive
+		 * @return The archive name (see FileSystemUtil.getArchiveName())
+		 */
+		public String getArchiveName(int p_increment)
+		{
+			return FileSystemUtil.getArchiveName(f_archiveContents.getStreamUUID(),
+							f_archiveContents.getArchiveSequenceNumber() + p_increment);
+		}
+		
+		/**
+		 * Records the length of a fragment which was read
+		 * @param p_length The length of the fragment
+		 */
+		public void addFragment(long p_length)
+		{
+			f_written += p_length;
+			f_largestFragment = Math.max(f_largestFragment, p_length);
+		}
+		
+		/**
+		 * Estimates the number of archives which hold the rest of the file, assuming
+		 * each one holds as much as the largest fragment so far
+		 * @return The estimated number of archives
+		 */
+		public int getRemainingArchives()
+		{
+			long remaining = f_fileContents.getRemainingData() - f_written;
+			if (remaining <= 0)
+				return 0;
+			
+			long perArchive = Math.max(1, f_largestFragment);
+			return (int) Math.min(Integer.MAX_VALUE, (remaining + perArchive - 1) / perArchive);
+		}
+		
+		/**
+		 * Tells if the first file in an archive is the next fragment of this file
+		 * @param p_archiveContents The archive contents of the archive
+		 * @param p_fileContents The first file contents in the archive, or null
+		 * @return If the file contents is the next fragment
+		 */
+		public boolean isContinuedBy(ArchiveContents p_archiveContents, FileContents p_fileContents)
+		{
+			return p_fileContents != null
+				&& p_archiveContents.getStreamUUID() == f_archiveContents.getStreamUUID()
+				&& p_archiveContents.getArchiveSequenceNumber() ==
+					f_archiveContents.getArchiveSequenceNumber() + f_increment
+				&& p_fileContents.getMetadata().getType().equals(FileType.k_file)
+				&& p_fileContents.getFragmentNumber() == Constants.FIRST_FRAGMENT_CODE + f_increment
+				&& p_fileContents.getStripeOffset() == f_fileContents.getStripeOffset()
+				&& p_fileContents.getMetadata().getFile().getPath().equals(
+					f_fileContents.getMetadata().getFile().getPath());
+		}
+		
+		/**
+		 * Moves on to the next fragment after one was read
+		 * @param p_archiveFile The archive file the fragment was read from
+		 */
+		public void advance(File p_archiveFile)
+		{
+			f_lastArchiveFile = p_archiveFile;
+			++f_increment;
+		}
+	}
 }
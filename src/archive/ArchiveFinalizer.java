@@ -0,0 +1,185 @@
+package archive;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import logging.LogLevel;
+import logging.Logger;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Saves filled archives in the background, so a loader can start filling the next
+ * archive while the last one is encoded and written. Writers are given back to be
+ * filled again once they are saved. The number of archives saving at once is limited
+ * to the finalization depth, and no more than depth + 1 writers are ever created,
+ * because each one holds a whole archive in memory. A loader that gets ahead of the
+ * saves waits for a writer to be given back.
+ */
+public class ArchiveFinalizer
+{
+	private ArchiveWriterFactory<? extends ArchiveWriter> f_factory;
+	private ExecutorService f_savers;
+	private Queue<Future<?>> f_pending;
+	private BlockingQueue<ArchiveWriter> f_idleWriters;
+	private int f_depth;
+	private int f_created;
+	private long f_waitingTime;
+
+	/**
+	 * Constructs an archive finalizer
+	 * @param p_factory The factory for the writers which are filled
+	 * @param p_depth The maximum number of archives saving at once, zero to save
+	 * archives on the thread which filled them
+	 */
+	public ArchiveFinalizer(ArchiveWriterFactory<? extends ArchiveWriter> p_factory, int p_depth)
+	{
+		f_factory = p_factory;
+		f_depth = p_depth;
+		f_savers = p_depth > 0 ? Executors.newFixedThreadPool(p_depth, ArchiveFinalizer::createSaver) : null;
+		f_pending = new LinkedList<Future<?>>();
+		f_idleWriters = new LinkedBlockingQueue<ArchiveWriter>();
+		f_created = 0;
+		f_waitingTime = 0;
+	}
+
+	/**
+	 * Gets a writer to fill the next archive, creating one if not too many exist
+	 * yet, or else waiting for an archive to be saved
+	 * @return The writer, which is no longer in use by a save
+	 * @throws ArchiveIOException If the thread is interrupted while waiting
+	 */
+	public ArchiveWriter nextWriter() throws ArchiveIOException
+	{
+		ArchiveWriter writer = f_idleWriters.poll();
+		if (writer != null)
+			return writer;
+
+		if (f_created <= f_depth)
+		{
+			++f_created;
+			return f_factory.createWriter();
+		}
+
+		long waitStart = System.nanoTime();
+		try
+		{
+			return f_idleWriters.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ArchiveIOException("Interrupted while waiting for an archive to be saved.");
+		}
+		finally
+		{
+			f_waitingTime += System.nanoTime() - waitStart;
+		}
+	}
+
+	/**
+	 * Saves a filled archive in the background. The writer is given back to be
+	 * filled again once the save returns.
+	 * @param p_writer The writer holding the filled archive
+	 * @param p_save Saves the archive held by the writer
+	 */
+	public void save(ArchiveWriter p_writer, Runnable p_save)
+	{
+		if (f_savers == null)
+		{
+			runSave(p_writer, p_save);
+			return;
+		}
+
+		//forget the saves which are done, they were already logged if they failed
+		for (Iterator<Future<?>> it = f_pending.iterator(); it.hasNext();)
+		{
+			if (it.next().isDone())
+				it.remove();
+		}
+
+		f_pending.add(f_savers.submit(() -> runSave(p_writer, p_save)));
+	}
+
+	/**
+	 * Waits for every archive to be saved and stops the background saving
+	 */
+	public void close()
+	{
+		if (f_savers == null)
+			return;
+
+		for (Future<?> pending : f_pending)
+		{
+			try
+			{
+				pending.get();
+			}
+			catch (InterruptedException e)
+			{
+				Logger.log(LogLevel.k_error, "Interrupted while waiting for archives to be saved.");
+				Logger.log(LogLevel.k_debug, e, false);
+				Thread.currentThread().interrupt();
+				break;
+			}
+			catch (ExecutionException e)
+			{
+				//failures are logged by the save itself
+			}
+		}
+
+		f_pending.clear();
+		f_savers.shutdown();
+	}
+
+	/**
+	 * Gets the total time spent waiting for archives to be saved before the next
+	 * one could be filled
+	 * @return The waiting time in milliseconds
+	 */
+	public long getWaitingTime()
+	{
+		return f_waitingTime / 1000000;
+	}
+
+	/**
+	 * Creates a thread for saving archives. It is a daemon thread, so a loader which
+	 * is never closed (after an unexpected error) doesn't keep the program running.
+	 * @param p_saver The saving work of the thread
+	 * @return The thread
+	 */
+	private static Thread createSaver(Runnable p_saver)
+	{
+		Thread thread = new Thread(p_saver, "Archive finalizer");
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Saves an archive, then gives its writer back
+	 * @param p_writer The writer holding the filled archive
+	 * @param p_save Saves the archive held by the writer
+	 */
+	private void runSave(ArchiveWriter p_writer, Runnable p_save)
+	{
+		try
+		{
+			p_save.run();
+		}
+		catch (RuntimeException e)
+		{
+			Logger.log(LogLevel.k_error, "Failed to save archive: " + e.getMessage());
+			Logger.log(LogLevel.k_debug, e, false);
+		}
+		finally
+		{
+			f_idleWriters.add(p_writer);
+		}
+	}
+}
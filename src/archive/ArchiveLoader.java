@@ -1,6 +1,7 @@
 package archive;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
@@ -15,16 +16,25 @@ import report.Report;
 import util.ByteConversion;
 import util.Clock;
 import util.FileSystemUtil;
+import util.StandardUtil;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
  * The archive loader handles writing files. This handles writing
  * file data and metadata into archives using the high level protocol 
  * used by all archives.
+ *
+ * Since archive version 1, the header of a file records the length of the whole
+ * file and the offset its data starts at, so a large file can be split into stripes
+ * which are written by several loaders into their own archive streams.
+ *
+ * Filled archives are saved in the background by an archive finalizer, so the loader
+ * keeps filling a fresh writer while the last archive is encoded and written (see
+ * Settings.getFinalizationDepth()).
  */
 public class ArchiveLoader
 {
-	private static final byte ARCHIVE_VERSION_NUMBER = ByteConversion.intToByte(0);
+	private static final byte ARCHIVE_VERSION_NUMBER = ByteConversion.intToByte(Constants.ARCHIVE_VERSION_NUMBER);
 
 	private byte[] f_streamUUID;
 	private byte[] f_currentUUID;
@@ -36,8 +46,10 @@ public class ArchiveLoader
 	
 	private boolean f_fileWritten;
 	private boolean f_needsReset;
+	private long f_archiveAllocationStart;
 	
 	private FileOutputManager f_fileOutputManager;
+	private ArchiveFinalizer f_finalizer;
 
 	private ArchiveWriter f_currentArchive;
 
@@ -55,38 +67,86 @@ public class ArchiveLoader
 		f_sequenceNumber = 0;
 
 		f_fileOutputManager = p_manager;
-		f_currentArchive = p_factory.createWriter();
+		f_finalizer = new ArchiveFinalizer(p_factory, Settings.getFinalizationDepth());
+		f_currentArchive = null;
 
 		f_buffer = new byte[Constants.MAX_READ_BUFFER_SIZE];
 	}
 
 	/**
 	 * Shuts the loader down. It will save the current archive file if
-	 * files were written. This function should not be called unless all
-	 * write calls have returned.
+	 * files were written, and waits for every archive to be saved. This
+	 * function should not be called unless all write calls have returned.
 	 */
 	public void shutdown()
 	{
 		Logger.log(LogLevel.k_debug, "Archive loader shutting down.");
 
-		// fileWritten indicates a file is written, but there is as least some space left
-		// if there is more space than the size of the end code, the end code is
-		// written to indicate no more reading should be done (there is no next file)
-		if (f_fileWritten)
+		try
 		{
-			// if there's not enough space for the end code, the reader logic
-			// handles it the same as if it were written
-			if (writeFull(ByteConversion.longToBytes(Constants.END_CODE)))
-				Logger.log(LogLevel.k_debug, "End code written successfully.");
-			else
-				Logger.log(LogLevel.k_debug, "Failed to write end code.");
-
-			f_currentArchive.saveFile(f_fileOutputManager.getOutputFolder(), getSaveName());
+			// fileWritten indicates a file is written, but there is as least some space left
+			// if there is more space than the size of the end code, the end code is
+			// written to indicate no more reading should be done (there is no next file)
+			if (f_fileWritten)
+			{
+				// if there's not enough space for the end code, the reader logic
+				// handles it the same as if it were written
+				if (writeFull(ByteConversion.longToBytes(Constants.END_CODE)))
+					Logger.log(LogLevel.k_debug, "End code written successfully.");
+				else
+					Logger.log(LogLevel.k_debug, "Failed to write end code.");
+
+				saveArchive();
+			}
 		}
-		
+		finally
+		{
+			// archives already handed off are still saved
+			f_finalizer.close();
+		}
+
+		Logger.log(LogLevel.k_debug, "Archive loader waited " + f_finalizer.getWaitingTime()
+						+ " ms for archives to be saved.");
 		Logger.log(LogLevel.k_debug, "Archive loader is shut down.");
 	}
 
+	/**
+	 * Hands the current archive file to the finalizer to be saved, leaving the
+	 * loader without an archive until it is reset. The memory allocated for the
+	 * archive is recorded once it is saved, counting what this thread allocated
+	 * to fill it and what the finalizer allocated to save it.
+	 */
+	private void saveArchive()
+	{
+		ArchiveWriter archive = f_currentArchive;
+		File folder = f_fileOutputManager.getOutputFolder();
+		String name = getSaveName();
+		int sequenceNumber = f_sequenceNumber - 1;
+
+		long allocationEnd = StandardUtil.getThreadAllocatedBytes();
+		long filled = allocationEnd >= 0 && f_archiveAllocationStart >= 0 ?
+						allocationEnd - f_archiveAllocationStart : -1;
+
+		f_currentArchive = null;
+		f_fileWritten = false;
+		f_needsReset = true;
+
+		f_finalizer.save(archive, () ->
+		{
+			long saveStart = StandardUtil.getThreadAllocatedBytes();
+			archive.saveFile(folder, name);
+
+			long allocated = StandardUtil.getThreadAllocatedBytes();
+			if (filled >= 0 && allocated >= 0 && saveStart >= 0)
+			{
+				allocated += filled - saveStart;
+				JobStatus.addArchiveAllocation(allocated);
+				Logger.log(LogLevel.k_debug, "Bytes allocated for archive " + sequenceNumber
+								+ ": " + allocated);
+			}
+		});
+	}
+
 	/**
 	 * Writes the full contents of the array to the archive
 	 * @param p_bytes The array to write
@@ -115,6 +175,10 @@ public class ArchiveLoader
 	 */
 	private void resetToNextArchive() throws ArchiveIOException
 	{
+		if (f_currentArchive == null)
+			f_currentArchive = f_finalizer.nextWriter();
+
+		f_archiveAllocationStart = StandardUtil.getThreadAllocatedBytes();
 		f_currentArchive.newArchive();
 
 		// no file was written in this archive yet
@@ -187,15 +251,35 @@ public class ArchiveLoader
 		
 
 		//configure based on file type
+		long fileLength;
 		long fileLengthRemaining;
 		DataInputStream reader;
 		if (p_fileMetadata.getType().equals(FileType.k_file))//k_file
 		{
-			fileLengthRemaining = p_fileMetadata.getFile().length();
-			reader = new DataInputStream(new FileInputStream(p_fileMetadata.getFile()));
+			FileInputStream input = new FileInputStream(p_fileMetadata.getFile());
+			if (p_fileMetadata.isStripe())
+			{
+				//stripes of a file all record the length it was scheduled with,
+				//but only write what is still there
+				fileLength = p_fileMetadata.getSize();
+				fileLengthRemaining = Math.max(0, Math.min(p_fileMetadata.getStripeLength(),
+								input.getChannel().size() - p_fileMetadata.getStripeOffset()));
+				input.getChannel().position(p_fileMetadata.getStripeOffset());
+				
+				Logger.log(LogLevel.k_debug, "Writing bytes " + p_fileMetadata.getStripeOffset() + " to "
+								+ (p_fileMetadata.getStripeOffset() + fileLengthRemaining) + " of: "
+								+ p_fileMetadata.getFile().getPath());
+			}
+			else
+			{
+				fileLength = p_fileMetadata.getFile().length();
+				fileLengthRemaining = fileLength;
+			}
+			reader = new DataInputStream(input);
 		}
 		else //k_folder
 		{
+			fileLength = 0;
 			fileLengthRemaining = 0;
 			reader = null;
 		}
@@ -213,16 +297,16 @@ public class ArchiveLoader
 		do
 		{
 			// write file header
-			if (!writeFileHeader(p_fileMetadata, fragmentNumber, fileLengthRemaining))
+			if (!writeFileHeader(p_fileMetadata, fragmentNumber, fileLength, fileLengthRemaining))
 			{
 				// there wasn't enough space, reset
-				f_currentArchive.saveFile(f_fileOutputManager.getOutputFolder(), getSaveName());
+				saveArchive();
 				resetToNextArchive();
 
 				// writeFileHeaderSize(fileHeaderSize);
 
 				// try again
-				if (!writeFileHeader(p_fileMetadata, fragmentNumber, fileLengthRemaining))
+				if (!writeFileHeader(p_fileMetadata, fragmentNumber, fileLength, fileLengthRemaining))
 				{
 					// second failure indicates archive is too small
 					throw new ArchiveIOException(
@@ -261,19 +345,21 @@ public class ArchiveLoader
 		if (Settings.trackFileStatus())
 			JobStatus.setCreationJobFileStatus(p_fileMetadata.getFile(), CreationJobFileState.FINISHED);
 
-		// update progress
-		JobStatus.incrementInputFilesProcessed(1);
+		// update progress, a striped file is counted once
+		if (p_fileMetadata.getStripeOffset() == 0)
+			JobStatus.incrementInputFilesProcessed(1);
 	}
 
 	/**
 	 * Writes a file header to the archive, which is the file's metadata
 	 * @param p_fileMetadata The metadata for the file about to be written
 	 * @param p_fragmentNumber The fragment number of the file
+	 * @param p_fileLength The length of the whole file
 	 * @param p_fileLengthRemaining The length of file data that still needs to be written.
 	 * @return If writing the file header was successful
 	 */
 	private boolean writeFileHeader(Metadata p_fileMetadata, long p_fragmentNumber,
-					long p_fileLengthRemaining)
+					long p_fileLength, long p_fileLengthRemaining)
 	{
 		// fragment number
 		if (!writeFull(ByteConversion.longToBytes(p_fragmentNumber)))
@@ -306,6 +392,14 @@ public class ArchiveLoader
 			if (!writeFull(ByteConversion.shortToBytes(p_fileMetadata.getPermissions())))
 				return false;
 	
+			// length of the whole file
+			if (!writeFull(ByteConversion.longToBytes(p_fileLength)))
+				return false;
+	
+			// offset in the file where this stripe starts
+			if (!writeFull(ByteConversion.longToBytes(p_fileMetadata.getStripeOffset())))
+				return false;
+	
 			// length of data that still needs to be written
 			if (!writeFull(ByteConversion.longToBytes(p_fileLengthRemaining)))
 				return false;
@@ -335,9 +429,10 @@ public class ArchiveLoader
 
 			if (f_dataOffset == f_buffer.length)
 			{
-				// the full thing was written, get more
+				// the full thing was written, get more (but not past the end of a stripe)
 				f_dataOffset = 0;
-				f_dataLength = p_reader.read(f_buffer, f_dataOffset, f_buffer.length);
+				f_dataLength = p_reader.read(f_buffer, f_dataOffset,
+								(int) Math.min(f_buffer.length, p_fileLengthRemaining));
 			}
 			else
 			{
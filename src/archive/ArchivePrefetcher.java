@@ -0,0 +1,197 @@
+package archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Loads archive files in the background, ahead of the archive an extractor is reading,
+ * so the following archives are already decoded when the extractor gets to them.
+ * Archives come out in the order they were requested. The number of archives loading
+ * or waiting at once is limited to the prefetch depth, because each one holds a
+ * decoded archive in memory.
+ */
+public class ArchivePrefetcher
+{
+	private ArchiveReaderFactory<? extends ArchiveReader> f_factory;
+	private ExtractionManager f_manager;
+	private ExecutorService f_loaders;
+	private Queue<Future<PrefetchedArchive>> f_pending;
+	private Queue<ArchiveReader> f_idleReaders;
+	private int f_depth;
+	private int f_submitted;
+
+	/**
+	 * Constructs an archive prefetcher
+	 * @param p_factory The factory for the readers which load the archives
+	 * @param p_manager The extraction manager of the extraction job
+	 * @param p_depth The maximum number of archives loading or waiting at once
+	 */
+	public ArchivePrefetcher(ArchiveReaderFactory<? extends ArchiveReader> p_factory,
+					ExtractionManager p_manager, int p_depth)
+	{
+		f_factory = p_factory;
+		f_manager = p_manager;
+		f_depth = p_depth;
+		f_loaders = Executors.newFixedThreadPool(p_depth);
+		f_pending = new LinkedList<Future<PrefetchedArchive>>();
+		f_idleReaders = new ConcurrentLinkedQueue<ArchiveReader>();
+	}
+
+	/**
+	 * Tells if as many archives as allowed are loading or waiting
+	 * @return If no more archives should be requested until one is taken
+	 */
+	public boolean isFull()
+	{
+		return f_pending.size() >= f_depth;
+	}
+
+	/**
+	 * Gets the number of archives requested so far
+	 * @return The number of archives requested
+	 */
+	public int getSubmittedCount()
+	{
+		return f_submitted;
+	}
+
+	/**
+	 * Starts loading an archive file in the background
+	 * @param p_archiveFile The archive file
+	 */
+	public void prefetch(File p_archiveFile)
+	{
+		prefetch(() -> p_archiveFile);
+	}
+
+	/**
+	 * Starts finding and loading an archive file in the background
+	 * @param p_resolver Finds the archive file, or gives null if it could not be found
+	 */
+	public void prefetch(Callable<File> p_resolver)
+	{
+		f_pending.add(f_loaders.submit(() -> load(p_resolver)));
+		++f_submitted;
+	}
+
+	/**
+	 * Gets the oldest requested archive, waiting for it to finish loading
+	 * @return The loaded archive, or null if no archives are waiting. The archive file
+	 * of the result is null if it could not be found.
+	 * @throws IOException If the archive file could not be loaded
+	 */
+	public PrefetchedArchive next() throws IOException
+	{
+		Future<PrefetchedArchive> pending = f_pending.poll();
+		if (pending == null)
+			return null;
+
+		try
+		{
+			return pending.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ArchiveIOException("Interrupted while loading an archive.");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+
+			throw new ArchiveIOException("Failed to load archive: " + e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Gives a reader back to be used for loading another archive
+	 * @param p_reader The reader, which is no longer in use
+	 */
+	public void recycle(ArchiveReader p_reader)
+	{
+		if (p_reader != null)
+			f_idleReaders.add(p_reader);
+	}
+
+	/**
+	 * Cancels the archives which haven't been taken and stops the background loading
+	 */
+	public void close()
+	{
+		for (Future<PrefetchedArchive> pending : f_pending)
+			pending.cancel(true);
+
+		f_pending.clear();
+		f_loaders.shutdownNow();
+	}
+
+	/**
+	 * Finds and loads an archive file
+	 * @param p_resolver Finds the archive file
+	 * @return The loaded archive
+	 * @throws Exception If the archive file could not be found or loaded
+	 */
+	private PrefetchedArchive load(Callable<File> p_resolver) throws Exception
+	{
+		File archiveFile = p_resolver.call();
+		if (archiveFile == null)
+			return new PrefetchedArchive(null, null);
+
+		ArchiveReader reader = f_idleReaders.poll();
+		if (reader == null)
+			reader = f_factory.createReader();
+
+		reader.loadFile(archiveFile);
+		f_manager.recordDecode(archiveFile);
+
+		return new PrefetchedArchive(archiveFile, reader);
+	}
+
+	/**
+	 * An archive file which was loaded in the background
+	 */
+	public static class PrefetchedArchive
+	{
+		private File f_archiveFile;
+		private ArchiveReader f_reader;
+
+		/**
+		 * Constructs a prefetched archive
+		 * @param p_archiveFile The archive file, or null if it could not be found
+		 * @param p_reader The reader the archive file is loaded in
+		 */
+		public PrefetchedArchive(File p_archiveFile, ArchiveReader p_reader)
+		{
+			f_archiveFile = p_archiveFile;
+			f_reader = p_reader;
+		}
+
+		/**
+		 * Gets the archive file
+		 * @return The archive file, or null if it could not be found
+		 */
+		public File getArchiveFile()
+		{
+			return f_archiveFile;
+		}
+
+		/**
+		 * Gets the reader the archive file is loaded in
+		 * @return The reader, positioned at the start of the archive
+		 */
+		public ArchiveReader getReader()
+		{
+			return f_reader;
+		}
+	}
+}
@@ -1,36 +1,52 @@
 package archive;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import algorithms.Algorithm;
 import algorithms.AlgorithmRegistry;
+import config.Constants;
 import config.Settings;
 import data.IndexWorker;
-import data.Metadata;
 import data.ArchiveFile;
 import data.ArchiveWorker;
+import data.WorkScheduler;
 import key.Key;
 import logging.LogLevel;
 import logging.Logger;
+import report.JobStatus;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
  * Handles the high level process of loading input files and writing them to archives.
+ * The index worker gives the metadata of the input files to a scheduler and the
+ * archive workers take from it, so the index worker waits when the archive workers fall
+ * behind and the archive workers wait until there is something to write. The scheduler
+ * balances the bytes each archive worker writes (see WorkScheduler). Once everything
+ * is indexed the scheduler is closed, and the job is finished when every worker has
+ * returned.
  */
 public class CreationJob implements Runnable
 {
-	private boolean f_shuttingDown = false;
-	private boolean f_active = true;
-	private boolean f_finished = false;
+	private volatile boolean f_shuttingDown = false;
+	private volatile boolean f_active = true;
+	private volatile boolean f_finished = false;
+	private CountDownLatch f_finishedLatch;
 	private int f_maxWaitingFiles;
-	private BlockingQueue<Metadata> f_queue;
+	private WorkScheduler f_scheduler;
 	private IndexWorker f_indexWorker;
 	private List<ArchiveWorker> f_archiveWorkers;
-	private Thread[] f_workerThreads;
+	private ExecutorService f_executor;
+	private Future<?> f_indexFuture;
+	private List<Future<?>> f_archiveFutures;
 	private int f_archiveWorkerCount;
 	private List<ArchiveFile> f_inputFiles;
 	private FileOutputManager f_manager;
@@ -41,25 +57,22 @@ public class CreationJob implements Runnable
 	 * @param p_inputFiles The list of input files and folders
 	 * @param p_algorithm The algorithm to use
 	 * @param p_key The key to use
-	 * @param p_archiveWorkerCount The number of archive workers to use. 
+	 * @param p_archiveWorkerCount The number of archive workers to use.
 	 * Each will run on its own thread
 	 */
-	public CreationJob(List<ArchiveFile> p_inputFiles, Algorithm p_algorithm, 
+	public CreationJob(List<ArchiveFile> p_inputFiles, Algorithm p_algorithm,
 		Key p_key, int p_archiveWorkerCount)
 	{
 		f_inputFiles = p_inputFiles;
 		f_archiveWorkerCount = p_archiveWorkerCount;
 		f_factory = AlgorithmRegistry.getArchiveWriterFactory(p_algorithm, p_key);
-		
-		// default for now
-		f_maxWaitingFiles = 500;
 
-		f_queue = new LinkedBlockingQueue<Metadata>();
+		f_maxWaitingFiles = Constants.MAX_FILE_QUEUE_SIZE;
+
+		f_finishedLatch = new CountDownLatch(1);
 		f_archiveWorkers = new LinkedList<ArchiveWorker>();
-		f_workerThreads = new Thread[1 + p_archiveWorkerCount]; //+1 for index worker
+		f_archiveFutures = new ArrayList<Future<?>>();
 		f_manager = new FileOutputManager(Settings.getOutputFolder());
-
-		addArchiveWorkers();
 	}
 
 	/**
@@ -71,7 +84,7 @@ public class CreationJob implements Runnable
 		for (int i = 0; i < f_archiveWorkerCount; ++i)
 		{
 			Logger.log(LogLevel.k_debug, "Adding new Archive Worker");
-			f_archiveWorkers.add(new ArchiveWorker(f_queue, f_factory, f_manager));
+			f_archiveWorkers.add(new ArchiveWorker(f_scheduler, i, f_factory, f_manager));
 		}
 	}
 
@@ -84,42 +97,75 @@ public class CreationJob implements Runnable
 		return f_finished;
 	}
 
+	/**
+	 * Waits until the job is finished running, or until the time runs out
+	 * @param p_millis The maximum time to wait in milliseconds
+	 * @return If the job is finished running
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	public boolean awaitFinished(long p_millis) throws InterruptedException
+	{
+		return f_finishedLatch.await(p_millis, TimeUnit.MILLISECONDS);
+	}
+
 	/**
 	 * Starts the archive creation job. (Starts filling archives with
 	 * input files.)
 	 */
-	public void start()
+	public synchronized void start()
 	{
 		Logger.log(LogLevel.k_debug, "Backup job starting...");
-		
+
+		//the number of waiting files can only be set before the job starts
+		f_scheduler = new WorkScheduler(f_archiveWorkerCount, f_maxWaitingFiles);
+		addArchiveWorkers();
+
 		//setup index worker
-		f_indexWorker = new IndexWorker(f_queue, f_inputFiles);
+		f_indexWorker = new IndexWorker(f_scheduler, f_inputFiles);
 
-		//start archive workers first
-		for (int i = 0; i < f_archiveWorkers.size(); ++i)
-		{
-			Thread thread = new Thread(f_archiveWorkers.get(i));
-			f_workerThreads[i] = thread;
-			thread.start();
-			try
-			{
-				Thread.sleep(100);
-			}
-			catch (InterruptedException e){}
-		}
+		//+1 for index worker
+		f_executor = Executors.newFixedThreadPool(1 + f_archiveWorkerCount);
+
+		for (ArchiveWorker worker : f_archiveWorkers)
+			f_archiveFutures.add(f_executor.submit(worker));
+
+		f_indexFuture = f_executor.submit(f_indexWorker);
+
+		//no new tasks, the threads end once the workers return
+		f_executor.shutdown();
 
-		//start index worker
-		Thread thread = new Thread(f_indexWorker);
-		f_workerThreads[f_archiveWorkers.size()] = thread;
-		thread.start();
+		//the job may have been stopped before it could start
+		if (f_shuttingDown)
+			stopWorkers();
 	}
 
 	/**
 	 * Shuts the creation job down. Used for stopping a job before it is finished.
 	 */
-	public void shutdown()
+	public synchronized void shutdown()
 	{
 		f_shuttingDown = true;
+
+		if (f_indexWorker != null)
+			stopWorkers();
+	}
+
+	/**
+	 * Stops the workers of a job which is being shut down. The archive workers
+	 * still save the archives they have started.
+	 */
+	private void stopWorkers()
+	{
+		f_indexWorker.shutdown();
+
+		//the index worker may be waiting for room in the scheduler
+		f_indexFuture.cancel(true);
+
+		for (ArchiveWorker worker : f_archiveWorkers)
+			worker.shutdown();
+
+		//wake up any archive workers waiting for the scheduler
+		f_scheduler.clear();
 	}
 
 	/* (non-Javadoc)
@@ -130,64 +176,87 @@ public class CreationJob implements Runnable
 	{
 		start();
 
-		while (!f_shuttingDown)
+		long startTime = System.nanoTime();
+
+		try
 		{
+			awaitWorker(f_indexFuture);
 
-			f_shuttingDown = allWorkersInactive() && f_queue.size() == 0;
+			//everything is scheduled, so each archive worker can stop once
+			//nothing is left for it
+			f_scheduler.close();
 
-			try
-			{
-				Thread.sleep(1000);
-			}
-			catch (InterruptedException e){}
+			for (Future<?> future : f_archiveFutures)
+				awaitWorker(future);
 		}
-
-		//shutting down...
-		
-		f_indexWorker.shutdown();
-
-		for (ArchiveWorker pw : f_archiveWorkers)
+		catch (InterruptedException e)
 		{
-			pw.shutdown();
+			Logger.log(LogLevel.k_error, "Creation job was interrupted.");
+			Logger.log(LogLevel.k_debug, e, false);
+			shutdown();
 		}
 
-		for (Thread thread : f_workerThreads)
-		{
-			try
-			{
-				thread.join();
-			}
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
-		}
-		
+		logWorkerStatistics(System.nanoTime() - startTime);
+
+		f_active = false;
 		f_finished = true;
-		
+		f_finishedLatch.countDown();
+
 		Logger.log(LogLevel.k_debug, "Creation job is shutdown.");
 	}
 
 	/**
-	 * Tells if both the index worker and all archive workers are inactive.
-	 * @return If everything is inactive
+	 * Waits for a worker to return, logging anything it failed with
+	 * @param p_future The future of the worker
+	 * @throws InterruptedException If the thread is interrupted while waiting
 	 */
-	private boolean allWorkersInactive()
+	private void awaitWorker(Future<?> p_future) throws InterruptedException
 	{
-		return !f_indexWorker.isActive() && archiveWorkersInactive();
+		try
+		{
+			p_future.get();
+		}
+		catch (CancellationException e)
+		{
+			//the index worker is cancelled when the job is shut down
+		}
+		catch (ExecutionException e)
+		{
+			Logger.log(LogLevel.k_error, "A creation job worker failed: " + e.getCause().getMessage());
+			Logger.log(LogLevel.k_debug, e, false);
+		}
 	}
 
 	/**
-	 * Tells if all archive workers are inactive
-	 * @return If all archive workers are inactive
+	 * Logs how long each worker spent waiting instead of working, how the
+	 * files were spread over the archive workers and how much memory was
+	 * allocated per archive
+	 * @param p_elapsed The time the job ran for in nanoseconds
 	 */
-	private boolean archiveWorkersInactive()
+	private void logWorkerStatistics(long p_elapsed)
 	{
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(p_elapsed);
+
+		Logger.log(LogLevel.k_debug, "Creation job ran for " + elapsed + " ms, index worker waited "
+						+ f_indexWorker.getWaitingTime() + " ms for room in the scheduler.");
+
 		for (ArchiveWorker worker : f_archiveWorkers)
-			if (worker.isActive())
-				return false;
+		{
+			int i = worker.getIndex();
+			Logger.log(LogLevel.k_debug, "Archive worker " + i + " took "
+							+ f_scheduler.getFilesTaken(i) + " files ("
+							+ f_scheduler.getBytesTaken(i) + " bytes, "
+							+ f_scheduler.getFilesStolen(i) + " stolen, at most "
+							+ f_scheduler.getMaxQueueDepth(i) + " waiting) and waited "
+							+ worker.getIdleTime() + " ms for scheduled metadata.");
+		}
 
-		return true;
+		long allocation = JobStatus.getAverageArchiveAllocation();
+		if (allocation >= 0)
+		{
+			Logger.log(LogLevel.k_debug, "Archives allocated " + allocation + " bytes on average to be"
+							+ " filled and saved (not counting work done on the common pool).");
+		}
 	}
 
 	/**
@@ -202,13 +271,14 @@ public class CreationJob implements Runnable
 
 	/**
 	 * Sets the maximum queue size for files waiting to be loaded into archives.
+	 * This has no effect once the job is started.
 	 * @param p_maxWaitingFiles The maximum number of waiting files
 	 */
 	public void setMaxWaitingFiles(int p_maxWaitingFiles)
 	{
 		f_maxWaitingFiles = p_maxWaitingFiles;
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -217,14 +287,26 @@ public class CreationJob implements Runnable
 	{
 		return "CreationJob [shuttingDown=" + f_shuttingDown + ", active=" + f_active
 			+ ", finished=" + f_finished + ", maxWaitingFiles="
-			+ f_maxWaitingFiles + ", queue=" + f_queue + ", indexWorker="
+			+ f_maxWaitingFiles + ", scheduler=" + f_scheduler + ", indexWorker="
 			+ f_indexWorker + ", archiveWorkers=" + f_archiveWorkers
-			+ ", workerThreads=" + Arrays.toString(f_workerThreads)
 			+ ", archiveWorkerCount=" + f_archiveWorkerCount + ", inputFiles="
 			+ f_inputFiles + ", manager=" + f_manager + ", factory=" + f_factory
-			+ "queue.size()=" + f_queue.size()
-			+ "indexWorker.isActive()=" + f_indexWorker.isActive()
+			+ "scheduler.getWaitingCount()=" + (f_scheduler == null ? 0 : f_scheduler.getWaitingCount())
+			+ "indexWorker.isActive()=" + (f_indexWorker != null && f_indexWorker.isActive())
 			+ "archiveWorkersActive()=" + !archiveWorkersInactive()
 			+ "]";
 	}
+
+	/**
+	 * Tells if all archive workers are inactive
+	 * @return If all archive workers are inactive
+	 */
+	private boolean archiveWorkersInactive()
+	{
+		for (ArchiveWorker worker : f_archiveWorkers)
+			if (worker.isActive())
+				return false;
+
+		return true;
+	}
 }
@@ -0,0 +1,179 @@
+package archive;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Selects which entries of an archive to extract. Entries can be selected by their
+ * index (position in the archive), by their exact path, or by patterns matched
+ * against their path (see FileSystem.getPathMatcher()). An entry is selected if any
+ * of these select it and no exclude pattern matches it. A filter with nothing but
+ * exclude patterns selects everything they don't match.
+ */
+public class ExtractionFilter
+{
+	private Set<Integer> f_indices;
+	private int f_maxIndex;
+	private Set<String> f_paths;
+	private List<PathMatcher> f_patterns;
+	private List<PathMatcher> f_excludes;
+
+	/**
+	 * Constructs an extraction filter which doesn't select anything yet
+	 */
+	public ExtractionFilter()
+	{
+		f_indices = new HashSet<Integer>();
+		f_maxIndex = -1;
+		f_paths = new HashSet<String>();
+		f_patterns = new ArrayList<PathMatcher>();
+		f_excludes = new ArrayList<PathMatcher>();
+	}
+
+	/**
+	 * Selects the entry at an index
+	 * @param p_index The index of the entry in the archive
+	 */
+	public void addIndex(int p_index)
+	{
+		f_indices.add(p_index);
+		f_maxIndex = Math.max(f_maxIndex, p_index);
+	}
+
+	/**
+	 * Selects the entries with a path
+	 * @param p_path The path of the entries, as it is listed in the archive
+	 */
+	public void addPath(String p_path)
+	{
+		f_paths.add(p_path);
+	}
+
+	/**
+	 * Selects the entries with a path matching a pattern
+	 * @param p_pattern A glob pattern, for example "docs/**.txt", or a pattern
+	 * with the syntax given as a prefix, for example "regex:docs/.*\\.txt"
+	 * @throws IllegalArgumentException If the pattern is invalid
+	 */
+	public void addPattern(String p_pattern)
+	{
+		f_patterns.add(createMatcher(p_pattern));
+	}
+
+	/**
+	 * Leaves out the entries with a path matching a pattern, even if they are
+	 * otherwise selected
+	 * @param p_pattern A glob pattern, or a pattern with the syntax given as a
+	 * prefix (see addPattern())
+	 * @throws IllegalArgumentException If the pattern is invalid
+	 */
+	public void addExclude(String p_pattern)
+	{
+		f_excludes.add(createMatcher(p_pattern));
+	}
+
+	/**
+	 * Tells if an entry is selected
+	 * @param p_index The index of the entry in the archive
+	 * @param p_fileContents The file contents of the entry
+	 * @return If the entry should be extracted
+	 */
+	public boolean matches(int p_index, FileContents p_fileContents)
+	{
+		String path = p_fileContents.getMetadata().getFile().getPath();
+		
+		return (f_indices.contains(p_index) || isIncluded(path)) && !isExcluded(path);
+	}
+
+	/**
+	 * Tells if an entry is selected by its path alone, for entries which don't have
+	 * a meaningful index (such as when extracting a folder of archives)
+	 * @param p_fileContents The file contents of the entry
+	 * @return If the entry should be extracted
+	 */
+	public boolean matches(FileContents p_fileContents)
+	{
+		String path = p_fileContents.getMetadata().getFile().getPath();
+		
+		return isIncluded(path) && !isExcluded(path);
+	}
+
+	/**
+	 * Tells if no entry at or after an index can be selected, so the rest of
+	 * the archive doesn't need to be read
+	 * @param p_index The index of the next entry in the archive
+	 * @return If the entries from the index on can be skipped
+	 */
+	public boolean isExhausted(int p_index)
+	{
+		return p_index > f_maxIndex && f_paths.isEmpty() && f_patterns.isEmpty() && f_excludes.isEmpty();
+	}
+
+	/**
+	 * Tells if a path is selected by a path or an include pattern
+	 * @param p_path The path of an entry
+	 * @return If the path is selected
+	 */
+	private boolean isIncluded(String p_path)
+	{
+		//only excluding means everything else is included
+		if (f_indices.isEmpty() && f_paths.isEmpty() && f_patterns.isEmpty())
+			return !f_excludes.isEmpty();
+		
+		if (f_paths.contains(p_path))
+			return true;
+
+		if (!f_patterns.isEmpty())
+		{
+			Path path = Paths.get(p_path);
+			for (PathMatcher pattern : f_patterns)
+			{
+				if (pattern.matches(path))
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tells if a path is left out by an exclude pattern
+	 * @param p_path The path of an entry
+	 * @return If the path is excluded
+	 */
+	private boolean isExcluded(String p_path)
+	{
+		if (f_excludes.isEmpty())
+			return false;
+		
+		Path path = Paths.get(p_path);
+		for (PathMatcher exclude : f_excludes)
+		{
+			if (exclude.matches(path))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Creates a path matcher for a pattern, which is a glob unless it starts with
+	 * a syntax such as "glob:" or "regex:"
+	 * @param p_pattern The pattern
+	 * @return The path matcher
+	 */
+	private static PathMatcher createMatcher(String p_pattern)
+	{
+		if (p_pattern.startsWith("glob:") || p_pattern.startsWith("regex:"))
+			return FileSystems.getDefault().getPathMatcher(p_pattern);
+		
+		return FileSystems.getDefault().getPathMatcher("glob:" + p_pattern);
+	}
+}
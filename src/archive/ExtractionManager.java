@@ -2,14 +2,20 @@ package archive;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import logging.LogLevel;
 import logging.Logger;
@@ -20,21 +26,33 @@ import util.FileSystemUtil;
  * @author Thomas Elgin (https://github.com/telgin)
  * Manages the extraction of files and where copy them to when they
  * are fully extracted. Also caches archive uuids and explored files for
- * more efficient extracting.
+ * more efficient extracting. One manager is shared by all the extractors
+ * working on an extraction job, so it is thread safe.
  */
 public class ExtractionManager
 {
 	private Map<String, File> f_cachedFileNames;
 	private Set<File> f_exploredFiles;
-	private File f_enclosingFolder;
+	private Set<File> f_mappedFiles;
+	private Map<File, AtomicInteger> f_decodeCounts;
+	private Set<File> f_createdFolders;
+	private Map<File, AtomicLong> f_stripedFiles;
+	private Map<File, Integer> f_extractedRuns;
+	private volatile boolean f_assemblingStripes;
+	private volatile File f_enclosingFolder;
 	
 	/**
 	 * Constructs an extraction manager
 	 */
 	public ExtractionManager()
 	{
-		f_cachedFileNames = new HashMap<String, File>();
-		f_exploredFiles = new HashSet<File>();
+		f_cachedFileNames = new ConcurrentHashMap<String, File>();
+		f_exploredFiles = ConcurrentHashMap.newKeySet();
+		f_mappedFiles = ConcurrentHashMap.newKeySet();
+		f_decodeCounts = new ConcurrentHashMap<File, AtomicInteger>();
+		f_createdFolders = ConcurrentHashMap.newKeySet();
+		f_stripedFiles = new ConcurrentHashMap<File, AtomicLong>();
+		f_extractedRuns = new HashMap<File, Integer>();
 	}
 	
 	/**
@@ -75,6 +93,27 @@ public class ExtractionManager
 	public void cacheHeaderLocation(String p_fileName, File p_archiveFile)
 	{
 		f_cachedFileNames.put(p_fileName, p_archiveFile);
+		f_mappedFiles.add(p_archiveFile);
+	}
+	
+	/**
+	 * Set an archive file as mapped, meaning its header was read (whether or not
+	 * it turned out to be an archive)
+	 * @param p_archiveFile The archive file
+	 */
+	public void setMapped(File p_archiveFile)
+	{
+		f_mappedFiles.add(p_archiveFile);
+	}
+	
+	/**
+	 * Tells if the header of the given archive file was already read
+	 * @param p_archiveFile The archive file
+	 * @return If the archive file was previously mapped
+	 */
+	public boolean isMapped(File p_archiveFile)
+	{
+		return f_mappedFiles.contains(p_archiveFile);
 	}
 	
 	/**
@@ -96,7 +135,7 @@ public class ExtractionManager
 	 * @param p_curArchiveFolder The folder containing the current archive file
 	 * @return The archive file we're looking for, or null if it could not be found
 	 */
-	public File findArchiveFile(String p_archiveSearchName, File p_curArchiveFolder)
+	public synchronized File findArchiveFile(String p_archiveSearchName, File p_curArchiveFolder)
 	{
 		//first see if it was cached already
 		if (f_cachedFileNames.containsKey(p_archiveSearchName))
@@ -163,34 +202,159 @@ public class ExtractionManager
 	}
 
 	/**
-	 * Moves a file from its current location to the correct place in the extraction folder.
-	 * @param p_assembled The assembled file to be moved
-	 * @param p_fileContents The contents of the file being moved
-	 * @param p_extractionFolder The top level extraction folder
+	 * Makes sure a folder exists. Folders which were made (or found) already are
+	 * remembered until the cache is reset, so extracting many files into the same
+	 * folders doesn't check the file system for every file.
+	 * @param p_folder The folder
 	 */
-	public void moveFileToExtractionFolder(File p_assembled, FileContents p_fileContents,
-					File p_extractionFolder)
+	public void createFolder(File p_folder)
 	{
-		File created = new File(p_extractionFolder, p_fileContents.getMetadata().getFile().getPath());
-		
-		File parent = created.getParentFile();
-		if (!parent.exists())
-			parent.mkdirs();
+		if (p_folder == null || f_createdFolders.contains(p_folder))
+			return;
 		
-		try
+		if (p_folder.mkdirs() || p_folder.isDirectory())
 		{
-			Files.move(p_assembled.toPath(), created.toPath(), StandardCopyOption.REPLACE_EXISTING);
-			Logger.log(LogLevel.k_debug, "Assembled file moved to: "
-							+ created.getAbsolutePath());
+			//the parent folders exist now too
+			for (File folder = p_folder; folder != null && f_createdFolders.add(folder);
+							folder = folder.getParentFile());
 		}
-		catch (IOException e)
+	}
+	
+	/**
+	 * Moves a finished file into its place in the extraction folder and applies
+	 * its original metadata
+	 * @param p_part The partial file holding all the file's data
+	 * @param p_extracted The file in the extraction folder
+	 * @param p_fileContents The file contents which contains the original metadata for this file
+	 * @param p_run The position of the run of archives the file was extracted from
+	 * @throws IOException If the partial file could not be moved
+	 */
+	public void finishExtractedFile(File p_part, File p_extracted, FileContents p_fileContents,
+		int p_run) throws IOException
+	{
+		synchronized (f_extractedRuns)
 		{
-			Logger.log(LogLevel.k_error, "Could not move extracted file to destination location: "
-							+ created.getAbsolutePath());
-			Logger.log(LogLevel.k_error, e, false);
+			if (replaceExtractedFile(p_part, p_extracted, p_run))
+			{
+				FileSystemUtil.applyMetadata(p_extracted, p_fileContents.getMetadata());
+				Logger.log(LogLevel.k_debug, "Extracted file: " + p_extracted.getAbsolutePath());
+			}
+		}
+	}
+	
+	/**
+	 * Moves a finished partial file over its file in the extraction folder. Runs of
+	 * archives extracted at the same time can hold files with the same path. Whichever
+	 * run finishes first, the file from the last run is kept, the same as when the
+	 * runs are extracted one after another.
+	 * @param p_part The partial file
+	 * @param p_extracted The file in the extraction folder
+	 * @param p_run The position of the run of archives the file was extracted from
+	 * @return True if the file was replaced, false if the file from a later run is kept
+	 * and the partial file was deleted
+	 * @throws IOException If the partial file could not be moved
+	 */
+	public boolean replaceExtractedFile(File p_part, File p_extracted, int p_run) throws IOException
+	{
+		File key = p_extracted.getAbsoluteFile();
+		synchronized (f_extractedRuns)
+		{
+			Integer extractedRun = f_extractedRuns.get(key);
+			if (extractedRun != null && extractedRun > p_run)
+			{
+				Logger.log(LogLevel.k_debug, "A later archive has the same file, it is kept: "
+								+ p_extracted.getAbsolutePath());
+				Files.deleteIfExists(p_part.toPath());
+				return false;
+			}
+			
+			try
+			{
+				try
+				{
+					Files.move(p_part.toPath(), p_extracted.toPath(), StandardCopyOption.REPLACE_EXISTING,
+									StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException e)
+				{
+					Files.move(p_part.toPath(), p_extracted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			catch (AccessDeniedException e)
+			{
+				//a read only file from an earlier extraction is replaced, not written over
+				Files.delete(p_extracted.toPath());
+				Files.move(p_part.toPath(), p_extracted.toPath());
+			}
+			
+			f_extractedRuns.put(key, p_run);
+			return true;
 		}
 	}
 
+	/**
+	 * Records that a stripe of a striped file is about to be written
+	 * @param p_extracted The file in the extraction folder
+	 * @return True for the first stripe of the file, which should replace any file
+	 * already there
+	 */
+	public boolean startStripedFile(File p_extracted)
+	{
+		return f_stripedFiles.putIfAbsent(p_extracted.getAbsoluteFile(), new AtomicLong()) == null;
+	}
+	
+	/**
+	 * Records that a stripe of a striped file was written
+	 * @param p_extracted The file in the extraction folder
+	 * @param p_fileLength The length of the whole file
+	 * @param p_written The number of bytes of the stripe which were written
+	 * @return If every byte of the file is written now
+	 */
+	public boolean finishStripe(File p_extracted, long p_fileLength, long p_written)
+	{
+		AtomicLong written = f_stripedFiles.computeIfAbsent(p_extracted.getAbsoluteFile(),
+						k -> new AtomicLong());
+		
+		if (written.addAndGet(p_written) < p_fileLength)
+			return false;
+		
+		f_stripedFiles.remove(p_extracted.getAbsoluteFile());
+		return true;
+	}
+	
+	/**
+	 * Gets the striped files which were started but never had every byte written,
+	 * and forgets them
+	 * @return The files in the extraction folder
+	 */
+	public List<File> takeUnfinishedStripedFiles()
+	{
+		List<File> unfinished = new ArrayList<File>(f_stripedFiles.keySet());
+		f_stripedFiles.keySet().removeAll(unfinished);
+		
+		return unfinished;
+	}
+	
+	/**
+	 * Tells if the stripes of a striped file are assembled into the whole file. This
+	 * is only done when every archive stream in a folder is read, otherwise the other
+	 * stripes of the file are never reached.
+	 * @return If stripes are assembled into the whole file
+	 */
+	public boolean isAssemblingStripes()
+	{
+		return f_assemblingStripes;
+	}
+	
+	/**
+	 * Sets if the stripes of a striped file are assembled into the whole file
+	 * @param p_assemblingStripes If every archive stream is being read
+	 */
+	public void setAssemblingStripes(boolean p_assemblingStripes)
+	{
+		f_assemblingStripes = p_assemblingStripes;
+	}
+
 	/**
 	 * Copies a file to its correct place in the extraction folder
 	 * @param p_source The file to copy
@@ -201,9 +365,7 @@ public class ExtractionManager
 	{
 		File created = new File(p_extractionFolder, p_fileContents.getMetadata().getFile().getPath());
 		
-		File parent = created.getParentFile();
-		if (!parent.exists())
-			parent.mkdirs();
+		createFolder(created.getParentFile());
 		
 		try
 		{
@@ -211,12 +373,8 @@ public class ExtractionManager
 			Logger.log(LogLevel.k_debug, "Assembled file moved to: "
 							+ created.getAbsolutePath());
 			
-			//set permissions of file
-			FileSystemUtil.setNumericFilePermissions(created, p_fileContents.getMetadata().getPermissions());
-			
-			//set file dates
-			FileSystemUtil.setFileDates(created, p_fileContents.getMetadata().getDateCreated(),
-							p_fileContents.getMetadata().getDateModified());
+			//set file dates and permissions
+			FileSystemUtil.applyMetadata(created, p_fileContents.getMetadata());
 		}
 		catch (IOException e)
 		{
@@ -235,7 +393,7 @@ public class ExtractionManager
 	{
 		File created = new File(p_extractionFolder, p_fileContents.getMetadata().getFile().getPath());
 		
-		created.mkdirs();
+		createFolder(created);
 	}
 
 	/**
@@ -243,6 +401,74 @@ public class ExtractionManager
 	 */
 	public void resetExploredFiles()
 	{
-		f_exploredFiles = new HashSet<File>();
+		f_exploredFiles.clear();
+	}
+	
+	/**
+	 * Resets the cache of folders which are known to exist, the striped
+	 * files which are being written and the runs files were extracted from
+	 */
+	public void resetCreatedFolders()
+	{
+		f_createdFolders.clear();
+		f_stripedFiles.clear();
+		
+		synchronized (f_extractedRuns)
+		{
+			f_extractedRuns.clear();
+		}
+	}
+	
+	/**
+	 * Records that an archive file was loaded for reading. Loading means decoding
+	 * the whole archive, so each archive should ideally only be loaded once per job.
+	 * @param p_archiveFile The archive file
+	 */
+	public void recordDecode(File p_archiveFile)
+	{
+		f_decodeCounts.computeIfAbsent(p_archiveFile.getAbsoluteFile(),
+						k -> new AtomicInteger()).incrementAndGet();
+	}
+	
+	/**
+	 * Gets the number of times an archive file was loaded since the counts were reset
+	 * @param p_archiveFile The archive file
+	 * @return The number of times it was loaded
+	 */
+	public int getDecodeCount(File p_archiveFile)
+	{
+		AtomicInteger count = f_decodeCounts.get(p_archiveFile.getAbsoluteFile());
+		return count == null ? 0 : count.get();
+	}
+	
+	/**
+	 * Gets the number of different archive files loaded since the counts were reset
+	 * @return The number of archive files
+	 */
+	public int getArchivesDecoded()
+	{
+		return f_decodeCounts.size();
+	}
+	
+	/**
+	 * Gets the number of times archive files were loaded again after their first
+	 * load since the counts were reset
+	 * @return The number of repeated loads
+	 */
+	public int getRepeatedDecodes()
+	{
+		int repeated = 0;
+		for (AtomicInteger count : f_decodeCounts.values())
+			repeated += count.get() - 1;
+		
+		return repeated;
+	}
+	
+	/**
+	 * Resets the counts of archive file loads
+	 */
+	public void resetDecodeCounts()
+	{
+		f_decodeCounts.clear();
 	}
 }
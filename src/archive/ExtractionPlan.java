@@ -0,0 +1,145 @@
+package archive;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import algorithms.Algorithm;
+import key.Key;
+import logging.LogLevel;
+import logging.Logger;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Plans the extraction of a set of archive files so each one only needs to be
+ * loaded once. The archives are grouped into runs which belong to the same stream
+ * (the archives made by one embedding job), ordered by sequence number. A file
+ * which spans several archives always continues at the start of the next archive
+ * in its stream, so a run can be extracted front to back with the fragments of
+ * each file routed straight to it. Separate runs can be extracted in parallel.
+ *
+ * Archives are placed by the name they were saved with. Only if some archives
+ * were renamed is the folder's header catalog used to find their original names.
+ */
+public class ExtractionPlan
+{
+	private List<List<File>> f_runs;
+
+	/**
+	 * Plans the extraction of a list of archive files
+	 * @param p_archives The archive files
+	 * @param p_archiveFolder The folder containing the archive files
+	 * @param p_algo The algorithm the archives are read with
+	 * @param p_key The key the archives are read with
+	 */
+	public ExtractionPlan(List<File> p_archives, File p_archiveFolder, Algorithm p_algo, Key p_key)
+	{
+		// streams are ordered by their uuid, which is the time they were started, so
+		// a file saved again in a later stream is extracted after the earlier copy
+		Map<Long, TreeMap<Long, File>> streams = new TreeMap<Long, TreeMap<Long, File>>();
+		List<File> unplaced = new ArrayList<File>();
+		List<File> renamed = new ArrayList<File>();
+
+		for (File archive : p_archives)
+		{
+			long[] name = parseArchiveName(archive.getName());
+			if (name == null)
+				renamed.add(archive);
+			else if (!place(streams, name, archive))
+				unplaced.add(archive);
+		}
+
+		if (!renamed.isEmpty())
+		{
+			// the original names of the renamed archives are in their headers
+			HeaderCatalog catalog = new HeaderCatalog(p_archiveFolder, p_algo, p_key);
+			catalog.update();
+
+			Map<File, String> originalNames = new HashMap<File, String>();
+			for (Map.Entry<String, File> location : catalog.getArchiveLocations().entrySet())
+				originalNames.put(location.getValue().getAbsoluteFile(), location.getKey());
+
+			for (File archive : renamed)
+			{
+				String originalName = originalNames.get(archive.getAbsoluteFile());
+				long[] name = originalName == null ? null : parseArchiveName(originalName);
+				if (name == null || !place(streams, name, archive))
+					unplaced.add(archive);
+			}
+		}
+
+		f_runs = new ArrayList<List<File>>();
+		for (TreeMap<Long, File> stream : streams.values())
+			f_runs.add(new ArrayList<File>(stream.values()));
+
+		// anything else is tried on its own, as it may not be an archive at all
+		for (File archive : unplaced)
+		{
+			List<File> run = new ArrayList<File>(1);
+			run.add(archive);
+			f_runs.add(run);
+		}
+
+		Logger.log(LogLevel.k_debug, "Extraction plan: " + p_archives.size() + " files in "
+						+ f_runs.size() + " runs.");
+	}
+
+	/**
+	 * Gets the runs of archives to extract. Each run is in sequence order, and the
+	 * runs are in the order their streams were started.
+	 * @return The runs
+	 */
+	public List<List<File>> getRuns()
+	{
+		return f_runs;
+	}
+
+	/**
+	 * Places an archive in its stream
+	 * @param p_streams The streams, by stream uuid
+	 * @param p_name The stream uuid and sequence number of the archive
+	 * @param p_archive The archive file
+	 * @return False if another archive already has the same place (a copy)
+	 */
+	private static boolean place(Map<Long, TreeMap<Long, File>> p_streams, long[] p_name, File p_archive)
+	{
+		TreeMap<Long, File> stream = p_streams.get(p_name[0]);
+		if (stream == null)
+		{
+			stream = new TreeMap<Long, File>();
+			p_streams.put(p_name[0], stream);
+		}
+
+		return stream.putIfAbsent(p_name[1], p_archive) == null;
+	}
+
+	/**
+	 * Parses an archive name like the ones given by FileSystemUtil.getArchiveName(),
+	 * ignoring any extension
+	 * @param p_name The name
+	 * @return The stream uuid and sequence number, or null if the name isn't an archive name
+	 */
+	private static long[] parseArchiveName(String p_name)
+	{
+		String name = p_name;
+		if (name.contains("."))
+			name = name.substring(0, name.indexOf('.'));
+
+		int split = name.indexOf('_');
+		if (split < 0)
+			return null;
+
+		try
+		{
+			return new long[] {Long.parseLong(name.substring(0, split)),
+							Long.parseLong(name.substring(split + 1))};
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package archive;
 
+import config.Constants;
 import data.Metadata;
 
 /**
@@ -11,6 +12,8 @@ public class FileContents
 	private long f_fragmentNumber;
 	private boolean f_isFragment = false;
 	private long f_remainingData;
+	private long f_fileLength = -1;
+	private long f_stripeOffset = 0;
 	private Metadata f_metadata;
 
 	/* (non-Javadoc)
@@ -64,6 +67,51 @@ public class FileContents
 		f_remainingData = p_remainingData;
 	}
 
+	/**
+	 * @return the length of the whole file, or -1 if the archive doesn't record it
+	 * (archives before version 1)
+	 */
+	public long getFileLength()
+	{
+		return f_fileLength;
+	}
+
+	/**
+	 * @param p_fileLength the fileLength to set
+	 */
+	public void setFileLength(long p_fileLength)
+	{
+		f_fileLength = p_fileLength;
+	}
+
+	/**
+	 * @return the offset in the file where the data of this stripe starts
+	 */
+	public long getStripeOffset()
+	{
+		return f_stripeOffset;
+	}
+
+	/**
+	 * @param p_stripeOffset the stripeOffset to set
+	 */
+	public void setStripeOffset(long p_stripeOffset)
+	{
+		f_stripeOffset = p_stripeOffset;
+	}
+
+	/**
+	 * Tells if the first fragment of a file holds only a stripe of it, meaning the
+	 * rest of the file was written to other archive streams
+	 * @return If this is the first fragment of a stripe of a striped file. Later
+	 * fragments always hold less than the whole file, so they aren't counted.
+	 */
+	public boolean isStripe()
+	{
+		return f_fragmentNumber == Constants.FIRST_FRAGMENT_CODE
+			&& (f_stripeOffset > 0 || (f_fileLength >= 0 && f_remainingData < f_fileLength));
+	}
+
 	/**
 	 * @return the metadata
 	 */
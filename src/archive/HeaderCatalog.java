@@ -0,0 +1,420 @@
+package archive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import algorithms.Algorithm;
+import algorithms.AlgorithmRegistry;
+import algorithms.Parameter;
+import config.Constants;
+import key.Key;
+import logging.LogLevel;
+import logging.Logger;
+import util.FileSystemUtil;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * A record of the archive headers in a folder, which is saved in the folder so the
+ * headers don't have to be read again every time the folder is used. Each archive file
+ * is recorded with its name (stream uuid and sequence number), its path, size, and
+ * modified time. When the catalog is updated, only the files which are new or have
+ * changed are read, and they are read in parallel.
+ */
+public class HeaderCatalog
+{
+	private static final String FORMAT_LINE = "imagine header catalog 1";
+	private static final String NOT_AN_ARCHIVE = "-";
+	private static final int MIN_FILES_PER_TASK = 16;
+
+	// parameters which only change how archives are written, not how headers are read
+	private static final List<String> WRITER_PARAMETERS = Arrays.asList(
+					algorithms.image.Definition.COMPRESSION_LEVEL_PARAM,
+					algorithms.image.Definition.FILTER_STRATEGY_PARAM,
+					algorithms.imageoverlay.Definition.IMAGE_FOLDER_PARAM,
+					algorithms.imageoverlay.Definition.IMAGE_CONSUMPTION_MODE_PARAM);
+
+	private File f_folder;
+	private File f_catalogFile;
+	private Algorithm f_algo;
+	private Key f_key;
+	private Map<String, Entry> f_entries;
+	private boolean f_changed;
+
+	/**
+	 * Constructs a header catalog for a folder of archives, loading the saved catalog
+	 * if there is one. A saved catalog made with a different algorithm configuration
+	 * is ignored, since the headers would have been read differently.
+	 * @param p_folder The folder of archives
+	 * @param p_algo The algorithm the archives are read with
+	 * @param p_key The key the archives are read with
+	 */
+	public HeaderCatalog(File p_folder, Algorithm p_algo, Key p_key)
+	{
+		f_folder = p_folder.getAbsoluteFile();
+		f_catalogFile = new File(f_folder, Constants.HEADER_CATALOG_NAME);
+		f_algo = p_algo;
+		f_key = p_key;
+		f_entries = new HashMap<String, Entry>();
+		f_changed = false;
+
+		load();
+	}
+
+	/**
+	 * Tells if a file is a saved header catalog, which should not be read as an archive
+	 * @param p_file The file
+	 * @return If the file is a header catalog
+	 */
+	public static boolean isCatalogFile(File p_file)
+	{
+		return p_file.getName().startsWith(Constants.HEADER_CATALOG_NAME);
+	}
+
+	/**
+	 * Reads the original name of an archive from its header. Only the archive uuid
+	 * is read, so this doesn't depend on the key.
+	 * @param p_reader The archive reader to read with
+	 * @param p_file The file to read
+	 * @return The original archive name (see FileSystemUtil.getArchiveName()), or null
+	 * if the file could not be read as an archive
+	 */
+	public static String readArchiveName(ArchiveReader p_reader, File p_file)
+	{
+		try
+		{
+			p_reader.loadFile(p_file);
+
+			byte[] uuid = new byte[Constants.ARCHIVE_UUID_SIZE];
+			if (p_reader.read(uuid, 0, uuid.length) == uuid.length)
+				return FileSystemUtil.getArchiveName(uuid);
+		}
+		catch (Exception e) //anything could happen!
+		{
+			//the file could be any file, so it might not even be an archive file
+			Logger.log(LogLevel.k_warning, "Could not map file: " + p_file.getName());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Brings the catalog up to date with the folder. Files which are new or whose size
+	 * or modified time changed are read, and files which no longer exist are dropped.
+	 * The catalog is saved if anything changed.
+	 */
+	public void update()
+	{
+		Map<String, Entry> current = new HashMap<String, Entry>();
+		List<File> stale = new ArrayList<File>();
+
+		//bfs through folders for archive files
+		Queue<File> folders = new LinkedList<File>();
+		folders.add(f_folder);
+
+		while (folders.size() > 0)
+		{
+			File folder = folders.poll();
+			File[] contents = folder.listFiles();
+			if (contents == null)
+				continue;
+
+			for (File sub : contents)
+			{
+				if (sub.isDirectory())
+				{
+					folders.add(sub);
+				}
+				else if (!isCatalogFile(sub))
+				{
+					String path = getRelativePath(sub);
+					Entry entry = f_entries.get(path);
+					if (entry != null && entry.f_size == sub.length()
+									&& entry.f_modified == sub.lastModified())
+						current.put(path, entry);
+					else
+						stale.add(sub);
+				}
+			}
+		}
+
+		if (current.size() != f_entries.size() || !stale.isEmpty())
+			f_changed = true;
+
+		Logger.log(LogLevel.k_debug, "Header catalog for " + f_folder.getName() + ": "
+						+ current.size() + " files unchanged, " + stale.size() + " to read.");
+
+		for (Entry entry : readHeaders(stale))
+			current.put(entry.f_path, entry);
+
+		f_entries = current;
+
+		if (f_changed)
+			save();
+	}
+
+	/**
+	 * Gets the location of each archive in the catalog
+	 * @return A map of the original archive names (see FileSystemUtil.getArchiveName())
+	 * to the archive files
+	 */
+	public Map<String, File> getArchiveLocations()
+	{
+		Map<String, File> locations = new HashMap<String, File>();
+		for (Entry entry : f_entries.values())
+		{
+			if (!entry.f_archiveName.equals(NOT_AN_ARCHIVE))
+				locations.put(entry.f_archiveName, new File(f_folder, entry.f_path));
+		}
+
+		return locations;
+	}
+
+	/**
+	 * Reads the headers of a list of files, splitting the work between cores. Each
+	 * task has its own archive reader.
+	 * @param p_files The files to read
+	 * @return The catalog entries for the files
+	 */
+	private List<Entry> readHeaders(List<File> p_files)
+	{
+		List<Entry> entries = new ArrayList<Entry>(p_files.size());
+		if (p_files.isEmpty())
+			return entries;
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		int tasks = Math.max(1, Math.min(cores, p_files.size() / MIN_FILES_PER_TASK));
+		if (tasks == 1)
+		{
+			entries.addAll(readHeaders(p_files, 0, p_files.size()));
+			return entries;
+		}
+
+		List<Future<List<Entry>>> futures = new ArrayList<Future<List<Entry>>>(tasks);
+		int perTask = (p_files.size() + tasks - 1) / tasks;
+		for (int start = 0; start < p_files.size(); start += perTask)
+		{
+			final int taskStart = start;
+			final int taskEnd = Math.min(start + perTask, p_files.size());
+			futures.add(ForkJoinPool.commonPool().submit(
+							() -> readHeaders(p_files, taskStart, taskEnd)));
+		}
+
+		for (Future<List<Entry>> future : futures)
+		{
+			try
+			{
+				entries.addAll(future.get());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				Logger.log(LogLevel.k_debug, e, false);
+			}
+			catch (ExecutionException e)
+			{
+				Logger.log(LogLevel.k_debug, e, false);
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Reads the headers of part of a list of files
+	 * @param p_files The files
+	 * @param p_start The index of the first file to read
+	 * @param p_end The index after the last file to read
+	 * @return The catalog entries for the files
+	 */
+	private List<Entry> readHeaders(List<File> p_files, int p_start, int p_end)
+	{
+		ArchiveReader reader = AlgorithmRegistry.getArchiveReaderFactory(f_algo, f_key).createReader();
+
+		List<Entry> entries = new ArrayList<Entry>(p_end - p_start);
+		for (int i = p_start; i < p_end; ++i)
+		{
+			File file = p_files.get(i);
+
+			// the size and time are taken before reading, so a file which
+			// changes while it is read will be read again next time
+			long size = file.length();
+			long modified = file.lastModified();
+
+			String archiveName = readArchiveName(reader, file);
+			if (archiveName == null)
+				archiveName = NOT_AN_ARCHIVE;
+
+			entries.add(new Entry(getRelativePath(file), archiveName, size, modified));
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Loads the saved catalog, if there is one which matches the algorithm
+	 */
+	private void load()
+	{
+		try (BufferedReader reader = Files.newBufferedReader(f_catalogFile.toPath(), Constants.CHARSET))
+		{
+			if (!FORMAT_LINE.equals(reader.readLine())
+							|| !getAlgorithmSignature().equals(reader.readLine()))
+			{
+				Logger.log(LogLevel.k_debug, "Ignoring header catalog made with another configuration: "
+								+ f_catalogFile.getAbsolutePath());
+				return;
+			}
+
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] parts = line.split("\t", 4);
+				if (parts.length == 4)
+				{
+					f_entries.put(parts[3], new Entry(parts[3], parts[0],
+									Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+				}
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			// nothing saved yet
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			Logger.log(LogLevel.k_debug, e, false);
+			Logger.log(LogLevel.k_warning, "The header catalog could not be read and will be rebuilt: "
+							+ f_catalogFile.getAbsolutePath());
+			f_entries.clear();
+		}
+	}
+
+	/**
+	 * Saves the catalog. It is written to a temporary file first, so a catalog is
+	 * never left half written. The catalog is only a cache, so failing to save it
+	 * is not an error.
+	 */
+	private void save()
+	{
+		List<Entry> entries = new ArrayList<Entry>(f_entries.values());
+		Collections.sort(entries, Comparator.comparing((Entry e) -> e.f_path));
+
+		File temp = null;
+		try
+		{
+			// the temporary name is unique in case another extraction is saving too
+			temp = Files.createTempFile(f_folder.toPath(), Constants.HEADER_CATALOG_NAME, ".tmp").toFile();
+			try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), Constants.CHARSET))
+			{
+				writer.write(FORMAT_LINE);
+				writer.newLine();
+				writer.write(getAlgorithmSignature());
+				writer.newLine();
+
+				for (Entry entry : entries)
+				{
+					writer.write(entry.f_archiveName + "\t" + entry.f_size + "\t"
+									+ entry.f_modified + "\t" + entry.f_path);
+					writer.newLine();
+				}
+			}
+
+			try
+			{
+				Files.move(temp.toPath(), f_catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+								StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), f_catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			f_changed = false;
+			Logger.log(LogLevel.k_debug, "Saved header catalog: " + f_catalogFile.getAbsolutePath());
+		}
+		catch (IOException e)
+		{
+			Logger.log(LogLevel.k_debug, e, false);
+			Logger.log(LogLevel.k_debug, "Could not save header catalog: " + f_catalogFile.getAbsolutePath());
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	/**
+	 * Gets a string describing everything about the algorithm which could change how
+	 * headers are read. Parameters only the writer uses are left out, so presets which
+	 * differ only in how archives are written share a catalog.
+	 * @return The algorithm signature
+	 */
+	private String getAlgorithmSignature()
+	{
+		List<Parameter> parameters = f_algo.getParameters();
+		Collections.sort(parameters, Comparator.comparing(Parameter::getName));
+
+		StringBuilder signature = new StringBuilder(f_algo.getName() + " " + f_algo.getVersion());
+		for (Parameter param : parameters)
+		{
+			if (param.isEnabled() && !WRITER_PARAMETERS.contains(param.getName()))
+				signature.append(" " + param.getName() + "=" + param.getValue());
+		}
+
+		// the signature is one line of the catalog
+		return signature.toString().replace('\n', ' ').replace('\r', ' ');
+	}
+
+	/**
+	 * Gets the path of a file relative to the catalog folder, with '/' separators
+	 * @param p_file The file
+	 * @return The relative path
+	 */
+	private String getRelativePath(File p_file)
+	{
+		return f_folder.toPath().relativize(p_file.getAbsoluteFile().toPath()).toString()
+						.replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * One file in the catalog
+	 */
+	private static class Entry
+	{
+		private String f_path;
+		private String f_archiveName;
+		private long f_size;
+		private long f_modified;
+
+		/**
+		 * Constructs a catalog entry
+		 * @param p_path The path of the file relative to the catalog folder
+		 * @param p_archiveName The original name of the archive, or NOT_AN_ARCHIVE
+		 * @param p_size The size of the file
+		 * @param p_modified The modified time of the file
+		 */
+		public Entry(String p_path, String p_archiveName, long p_size, long p_modified)
+		{
+			f_path = p_path;
+			f_archiveName = p_archiveName;
+			f_size = p_size;
+			f_modified = p_modified;
+		}
+	}
+}
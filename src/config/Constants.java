@@ -28,8 +28,9 @@ public abstract class Constants
 
 	// file names
 	public static final File CONFIG_FILE = new File(FileSystemUtil.getJarHome(), "config.xml");
-	public static final String ASSEMBLY_FOLDER_NAME = "." +
-		APPLICATION_NAME_SHORT.toLowerCase() + "_assembly";
+	public static final String HEADER_CATALOG_NAME = "." +
+		APPLICATION_NAME_SHORT.toLowerCase() + "_catalog";
+	public static final String PART_FILE_EXTENSION = ".part";
 	
 	// misc system configuration
 	public static final int DEFAULT_THREAD_COUNT = 1;
@@ -41,10 +42,17 @@ public abstract class Constants
 	public static final LogLevel DEFAULT_MESSAGE_LEVEL = LogLevel.k_info;
 	public static final LogLevel DEFAULT_EXCEPTION_LEVEL = LogLevel.k_info;
 	public static final int MAX_FILE_QUEUE_SIZE = 2000;
+	public static final int INDEX_THREADS_PER_DEVICE = 4;
 	public static final File LOG_FOLDER = new File(FileSystemUtil.getJarHome(), "logs");
 	
 	// io system configuration
 	public static final int MAX_READ_BUFFER_SIZE = 50000000;
+	public static final int DEFAULT_PREFETCH_DEPTH = 2;
+	public static final int MAX_PREFETCH_DEPTH = 8;
+	public static final int DEFAULT_FINALIZATION_DEPTH = 1;
+	public static final int MAX_FINALIZATION_DEPTH = 4;
+	public static final long MIN_STRIPE_SIZE = 64 * 1024 * 1024;
+	public static final int ARCHIVE_VERSION_NUMBER = 1;
 	public static final long END_CODE = Long.MAX_VALUE;
 	public static final long END_CODE_SIZE = 8;
 	public static final String INDEX_FOLDER_NAME =
@@ -66,6 +74,8 @@ public abstract class Constants
 	public static final int DATE_CREATED_SIZE = 8;
 	public static final int DATE_MODIFIED_SIZE = 8;
 	public static final int PERMISSIONS_SIZE = 2;
+	public static final int FILE_LENGTH_SIZE = 8;
+	public static final int STRIPE_OFFSET_SIZE = 8;
 	public static final int FILE_PERMISSIONS_SIZE = 1;
 	public static final int FILE_LENGTH_REMAINING_SIZE = 8;
 	public static final int FILE_TYPE_SIZE = 1;
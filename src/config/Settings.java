@@ -4,7 +4,7 @@ import java.io.File;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
- * This class contains settings for creation jobs
+ * This class contains settings for creation and extraction jobs
  */
 public class Settings
 {
@@ -12,6 +12,8 @@ public class Settings
 	private static boolean s_usesStructuredOutput;
 	private static boolean s_trackFileStatus;
 	private static boolean s_generateReport;
+	private static int s_prefetchDepth = Constants.DEFAULT_PREFETCH_DEPTH;
+	private static int s_finalizationDepth = Constants.DEFAULT_FINALIZATION_DEPTH;
 	
 	/**
 	 * Resets the settings to the default values
@@ -22,6 +24,8 @@ public class Settings
 		s_usesStructuredOutput = false;
 		s_trackFileStatus = false;
 		s_generateReport = false;
+		s_prefetchDepth = Constants.DEFAULT_PREFETCH_DEPTH;
+		s_finalizationDepth = Constants.DEFAULT_FINALIZATION_DEPTH;
 	}
 	
 	/**
@@ -98,4 +102,46 @@ public class Settings
 		s_generateReport = p_generateReport;
 	}
 
+	/**
+	 * Gets the number of archives which are loaded in the background ahead of
+	 * the one being extracted
+	 * @return The prefetch depth, zero if archives are only loaded when they are reached
+	 */
+	public static int getPrefetchDepth()
+	{
+		return s_prefetchDepth;
+	}
+
+	/**
+	 * Sets the number of archives which are loaded in the background ahead of the
+	 * one being extracted. Each of these holds a decoded archive in memory, so the
+	 * depth is limited to Constants.MAX_PREFETCH_DEPTH.
+	 * @param p_depth The prefetch depth, zero to only load archives when they are reached
+	 */
+	public static void setPrefetchDepth(int p_depth)
+	{
+		s_prefetchDepth = Math.max(0, Math.min(Constants.MAX_PREFETCH_DEPTH, p_depth));
+	}
+
+	/**
+	 * Gets the number of filled archives each archive worker saves in the background
+	 * while it fills the next one
+	 * @return The finalization depth, zero if archives are saved before the next is filled
+	 */
+	public static int getFinalizationDepth()
+	{
+		return s_finalizationDepth;
+	}
+
+	/**
+	 * Sets the number of filled archives each archive worker saves in the background
+	 * while it fills the next one. Each of these holds a whole archive in memory, so the
+	 * depth is limited to Constants.MAX_FINALIZATION_DEPTH.
+	 * @param p_depth The finalization depth, zero to save archives before the next is filled
+	 */
+	public static void setFinalizationDepth(int p_depth)
+	{
+		s_finalizationDepth = Math.max(0, Math.min(Constants.MAX_FINALIZATION_DEPTH, p_depth));
+	}
+
 }
@@ -1,7 +1,6 @@
 package data;
 
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
 
 import archive.ArchiveWriter;
 import archive.ArchiveWriterFactory;
@@ -14,26 +13,32 @@ import logging.Logger;
 import report.JobStatus;
 
 /**
- * Dequeues from the given queue and loads files to the ArchiveLoader might not
- * need this class
+ * Takes files from the given scheduler and loads files to the ArchiveLoader might not
+ * need this class. The worker waits on the scheduler until it is closed and
+ * nothing is left for it.
  */
 public class ArchiveWorker implements Runnable
 {
-	private boolean f_stopping = false;
-	private BlockingQueue<Metadata> f_queue;
+	private volatile boolean f_stopping = false;
+	private volatile boolean f_writing = false;
+	private WorkScheduler f_scheduler;
+	private int f_index;
 	private ArchiveLoader f_loader;
+	private volatile long f_idleTime = 0;
 
 	/**
 	 * Constructs an archive worker
-	 * @param p_queue The queue to get file metadata from
+	 * @param p_scheduler The scheduler to get file metadata from
+	 * @param p_index The index of this worker in the scheduler
 	 * @param p_factory The writer factory which can create archive writers
 	 * @param p_manager The file output manager which tells where files should
 	 * be written to.
 	 */
-	public ArchiveWorker(BlockingQueue<Metadata> p_queue, 
+	public ArchiveWorker(WorkScheduler p_scheduler, int p_index,
 		ArchiveWriterFactory<? extends ArchiveWriter> p_factory, FileOutputManager p_manager)
 	{
-		this.f_queue = p_queue;
+		f_scheduler = p_scheduler;
+		f_index = p_index;
 		f_loader = new ArchiveLoader(p_factory, p_manager);
 	}
 
@@ -43,7 +48,25 @@ public class ArchiveWorker implements Runnable
 	 */
 	public boolean isActive()
 	{
-		return !f_queue.isEmpty() && !f_stopping;
+		return f_writing && !f_stopping;
+	}
+
+	/**
+	 * Gets the index of this worker in the scheduler
+	 * @return The index
+	 */
+	public int getIndex()
+	{
+		return f_index;
+	}
+
+	/**
+	 * Gets the total time this archive worker spent waiting for scheduled metadata
+	 * @return The idle time in milliseconds
+	 */
+	public long getIdleTime()
+	{
+		return f_idleTime / 1000000;
 	}
 
 	/* (non-Javadoc)
@@ -52,55 +75,71 @@ public class ArchiveWorker implements Runnable
 	@Override
 	public void run()
 	{
-		int count = 0;
+		Logger.log(LogLevel.k_debug, "Archive worker waiting for queued metadata...");
+
+		try
+		{
+			work();
+		}
+		finally
+		{
+			//the last archive is saved even if the worker failed
+			f_loader.shutdown();
+		}
+		
+		Logger.log(LogLevel.k_debug, "Archive worker is shutdown.");
+	}
+	
+	/**
+	 * Writes the metadata taken from the scheduler until the worker is stopped or
+	 * there is nothing left to write
+	 */
+	private void work()
+	{
 		while (!f_stopping)
 		{
-			if (count % 20 == 0)
-				Logger.log(LogLevel.k_debug,
-					"Archive worker waiting for queued metadata...");
-
-			while (!f_queue.isEmpty() && !f_stopping)
+			Metadata taken;
+			long waitStart = System.nanoTime();
+			try
+			{
+				taken = f_scheduler.take(f_index);
+			}
+			catch (InterruptedException e)
+			{
+				Logger.log(LogLevel.k_error,
+					"Archive worker failed to load a file from the scheduler.");
+				Logger.log(LogLevel.k_debug, e, false);
+				break;
+			}
+			finally
 			{
-				Metadata taken;
-				try
-				{
-					taken = f_queue.take();
-					
-					try
-					{
-						f_loader.writeFile(taken);
-					}
-					catch (IOException e)
-					{
-						//update status to show failure
-						if (Settings.trackFileStatus())
-							JobStatus.setCreationJobFileStatus(taken.getFile(), CreationJobFileState.ERRORED);
-						
-						Logger.log(LogLevel.k_error,
-							"A file could not be written: " + taken.getFile().getName());
-						Logger.log(LogLevel.k_error, e.getMessage());
-						Logger.log(LogLevel.k_debug, e, false);
-					}
-				}
-				catch (InterruptedException e)
-				{
-					Logger.log(LogLevel.k_error,
-						"Archive worker failed to load a file from the queue.");
-					Logger.log(LogLevel.k_error, e.getMessage());
-					Logger.log(LogLevel.k_debug, e, false);
-				}
+				f_idleTime += System.nanoTime() - waitStart;
 			}
+
+			if (taken == null || f_stopping)
+				break;
+
+			f_writing = true;
 			try
 			{
-				Thread.sleep(100);
+				f_loader.writeFile(taken);
+			}
+			catch (IOException e)
+			{
+				//update status to show failure
+				if (Settings.trackFileStatus())
+					JobStatus.setCreationJobFileStatus(taken.getFile(), CreationJobFileState.ERRORED);
+				
+				Logger.log(LogLevel.k_error,
+					"A file could not be written: " + taken.getFile().getName());
+				Logger.log(LogLevel.k_error, e.getMessage());
+				Logger.log(LogLevel.k_debug, e, false);
+			}
+			finally
+			{
+				f_writing = false;
 			}
-			catch (InterruptedException e){}
-			
-			++count;
 		}
-		f_loader.shutdown();
-		
-		Logger.log(LogLevel.k_debug, "Archive worker is shutdown.");
 	}
 
 	/**
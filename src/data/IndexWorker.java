@@ -1,8 +1,20 @@
 package data;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import config.Constants;
 import logging.LogLevel;
@@ -12,26 +24,35 @@ import util.FileSystemUtil;
 /**
  * @author Thomas Elgin (https://github.com/telgin)
  * Moves through every input file or folder recursively and loads
- * its metadata so it can be added to queue for writing.
+ * its metadata so it can be given to the scheduler for writing. The scheduler only
+ * holds so many files, so the index worker waits for room when the archive workers
+ * fall behind.
+ *
+ * Folders are crawled in parallel on a fork join pool, with each sub folder
+ * as its own task. Input files on different devices are crawled by separate
+ * pools, so a slow device doesn't hold up the others. Files are queued in
+ * whichever order they are found.
  */
 public class IndexWorker implements Runnable
 {
-	private BlockingQueue<Metadata> f_queue;
-	private boolean f_shuttingDown;
-	private boolean f_active;
+	private WorkScheduler f_scheduler;
+	private volatile boolean f_shuttingDown;
+	private volatile boolean f_active;
 	private List<ArchiveFile> f_inputFiles;
+	private AtomicLong f_waitingTime;
 
 	/**
 	 * Constructs an index worker
-	 * @param p_queue The queue to load input file metadata into
+	 * @param p_scheduler The scheduler to give input file metadata to
 	 * @param p_inputFiles The list of input files and folders to be added to archives.
 	 */
-	public IndexWorker(BlockingQueue<Metadata> p_queue, List<ArchiveFile> p_inputFiles)
+	public IndexWorker(WorkScheduler p_scheduler, List<ArchiveFile> p_inputFiles)
 	{
-		f_queue = p_queue;
+		f_scheduler = p_scheduler;
 		f_inputFiles = p_inputFiles;
 		f_shuttingDown = false;
 		f_active = true;
+		f_waitingTime = new AtomicLong();
 	}
 
 	/**
@@ -50,74 +71,115 @@ public class IndexWorker implements Runnable
 	{
 		f_active = true;
 
-		Logger.log(LogLevel.k_debug, "Index worker running, " + 
+		Logger.log(LogLevel.k_debug, "Index worker running, " +
 			f_inputFiles.size() + " initial files/folders");
 
-		// index all top level folders
-		for (ArchiveFile inputFile : f_inputFiles)
+		Map<FileStore, List<ArchiveFile>> devices = groupByDevice(f_inputFiles);
+		List<ForkJoinPool> pools = new ArrayList<ForkJoinPool>();
+		List<ForkJoinTask<?>> crawls = new ArrayList<ForkJoinTask<?>>();
+
+		try
+		{
+			// index all top level folders, one pool per device
+			for (List<ArchiveFile> inputFiles : devices.values())
+			{
+				ForkJoinPool pool = new ForkJoinPool(Constants.INDEX_THREADS_PER_DEVICE);
+				pools.add(pool);
+
+				for (ArchiveFile inputFile : inputFiles)
+				{
+					try
+					{
+						BasicFileAttributes attributes = FileSystemUtil.readAttributes(inputFile.toPath());
+						crawls.add(pool.submit(new CrawlTask(inputFile, attributes)));
+					}
+					catch (IOException e)
+					{
+						Logger.log(LogLevel.k_error, "Cannot read input file: " + inputFile.getPath());
+						Logger.log(LogLevel.k_debug, e, false);
+					}
+				}
+			}
+
+			for (ForkJoinTask<?> crawl : crawls)
+			{
+				try
+				{
+					crawl.get();
+				}
+				catch (ExecutionException e)
+				{
+					Logger.log(LogLevel.k_error, "Failed to index input files: " + e.getCause().getMessage());
+					Logger.log(LogLevel.k_debug, e, false);
+				}
+			}
+		}
+		catch (InterruptedException e)
 		{
-			if (!f_shuttingDown)
-				crawl(inputFile);
+			Logger.log(LogLevel.k_debug, "Index worker interrupted while crawling.");
+			f_shuttingDown = true;
+		}
+		finally
+		{
+			for (ForkJoinPool pool : pools)
+				pool.shutdownNow();
 		}
 
 		f_active = false;
-		
+
 		Logger.log(LogLevel.k_debug, "Index worker is shutdown.");
 	}
 
 	/**
-	 * Crawls through a file or folder, adding every file and empty folder
-	 * found to the queue. Recursive.
-	 * @param p_currentFile The file to crawl through. If it is a file or an empty folder,
-	 * it will simply be added to the queue, if it is a folder, it will be recursed through.
+	 * Groups input files by the device they are on, keeping their order
+	 * @param p_inputFiles The input files
+	 * @return The input files of each device
 	 */
-	private void crawl(ArchiveFile p_currentFile)
+	private static Map<FileStore, List<ArchiveFile>> groupByDevice(List<ArchiveFile> p_inputFiles)
 	{
-		//wait if the queue is too full
-		while (!f_shuttingDown && f_queue.size() >= Constants.MAX_FILE_QUEUE_SIZE)
+		Map<FileStore, List<ArchiveFile>> devices = new LinkedHashMap<FileStore, List<ArchiveFile>>();
+		for (ArchiveFile inputFile : p_inputFiles)
 		{
+			FileStore device = null;
 			try
 			{
-				Thread.sleep(500);
+				device = Files.getFileStore(inputFile.toPath());
 			}
-			catch (InterruptedException e){}
-		}
-		
-		if (!f_shuttingDown)
-		{
-			if (p_currentFile.isDirectory())
+			catch (IOException e)
 			{
-				if (p_currentFile.listFiles().length == 0)
-				{
-					//add this folder
-					Metadata folderMetadata = new Metadata();
-					folderMetadata.setPermissions(FileSystemUtil.getNumericFilePermissions(p_currentFile));
-					folderMetadata.setFile(p_currentFile);
-					folderMetadata.setType(FileType.k_folder);
-					
-					Logger.log(LogLevel.k_debug, "Queueing metadata for folder: " + folderMetadata.getFile().getAbsolutePath());
-					f_queue.add(folderMetadata);
-				}
-				else
-				{
-					//recurse through the folder contents
-					for (File child : p_currentFile.listFiles())
-					{
-						crawl(new ArchiveFile(p_currentFile, child));
-					}
-				}
+				//unknown devices share a pool, the file is reported when it is crawled
 			}
-			else
+
+			List<ArchiveFile> files = devices.get(device);
+			if (files == null)
 			{
-				//create metadata from the file element
-				Metadata fileMetadata = FileSystemUtil.loadMetadataFromFile(p_currentFile);
-					
-				//new file, so add to queue
-				Logger.log(LogLevel.k_debug, "Queueing metadata for file: " + 
-					fileMetadata.getFile().getAbsolutePath());
-				f_queue.add(fileMetadata);
+				files = new ArrayList<ArchiveFile>();
+				devices.put(device, files);
 			}
+			files.add(inputFile);
 		}
+
+		return devices;
+	}
+
+	/**
+	 * Gives metadata to the scheduler, waiting for room if the scheduler is full.
+	 * If the worker is interrupted while waiting, it shuts down.
+	 * @param p_metadata The metadata to add
+	 */
+	private void enqueue(Metadata p_metadata)
+	{
+		long waitStart = System.nanoTime();
+		try
+		{
+			f_scheduler.put(p_metadata);
+		}
+		catch (InterruptedException e)
+		{
+			Logger.log(LogLevel.k_debug, "Index worker interrupted while waiting for room in the scheduler.");
+			f_shuttingDown = true;
+		}
+		f_waitingTime.addAndGet(System.nanoTime() - waitStart);
 	}
 
 	/**
@@ -129,4 +191,117 @@ public class IndexWorker implements Runnable
 	{
 		return f_active;
 	}
+
+	/**
+	 * Gets the total time this index worker spent waiting for room in the scheduler
+	 * @return The waiting time in milliseconds
+	 */
+	public long getWaitingTime()
+	{
+		return f_waitingTime.get() / 1000000;
+	}
+
+	/**
+	 * Crawls through a file or folder, adding every file and empty folder
+	 * found to the queue. Files in a folder are queued as they are listed, and
+	 * each sub folder is crawled by a task of its own.
+	 */
+	private class CrawlTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 4107264730552813406L;
+		private ArchiveFile f_file;
+		private BasicFileAttributes f_attributes;
+
+		/**
+		 * Constructs a crawl task
+		 * @param p_file The file to crawl through. If it is a file or an empty folder,
+		 * it will simply be added to the queue, if it is a folder, it will be recursed through.
+		 * @param p_attributes The attributes already read for the file
+		 */
+		public CrawlTask(ArchiveFile p_file, BasicFileAttributes p_attributes)
+		{
+			f_file = p_file;
+			f_attributes = p_attributes;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute()
+		{
+			if (f_shuttingDown)
+				return;
+
+			if (!f_attributes.isDirectory())
+			{
+				queueFile(f_file, f_attributes);
+				return;
+			}
+
+			List<CrawlTask> folders = new ArrayList<CrawlTask>();
+			boolean empty = true;
+
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(f_file.toPath()))
+			{
+				for (Path child : children)
+				{
+					if (f_shuttingDown)
+						return;
+
+					empty = false;
+					ArchiveFile childFile = new ArchiveFile(f_file, child.toFile());
+					try
+					{
+						BasicFileAttributes attributes = FileSystemUtil.readAttributes(child);
+						if (attributes.isDirectory())
+							folders.add(new CrawlTask(childFile, attributes));
+						else
+							queueFile(childFile, attributes);
+					}
+					catch (IOException e)
+					{
+						Logger.log(LogLevel.k_error, "Cannot read attributes for: " + childFile.getPath());
+						Logger.log(LogLevel.k_debug, e, false);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				Logger.log(LogLevel.k_error, "Cannot list folder: " + f_file.getPath());
+				Logger.log(LogLevel.k_debug, e, false);
+				return;
+			}
+
+			if (empty)
+			{
+				//add this folder
+				Metadata folderMetadata = FileSystemUtil.loadMetadataFromAttributes(f_file, f_attributes);
+
+				Logger.log(LogLevel.k_debug, "Queueing metadata for folder: " + folderMetadata.getFile().getAbsolutePath());
+				enqueue(folderMetadata);
+			}
+			else
+			{
+				//recurse through the sub folders
+				invokeAll(folders);
+			}
+		}
+
+		/**
+		 * Adds the metadata of a file to the queue
+		 * @param p_file The file
+		 * @param p_attributes The attributes of the file
+		 */
+		private void queueFile(ArchiveFile p_file, BasicFileAttributes p_attributes)
+		{
+			//create metadata from the file element
+			Metadata fileMetadata = FileSystemUtil.loadMetadataFromAttributes(p_file, p_attributes);
+
+			//new file, so add to queue
+			Logger.log(LogLevel.k_debug, "Queueing metadata for file: " +
+				fileMetadata.getFile().getAbsolutePath());
+			enqueue(fileMetadata);
+		}
+	}
 }
@@ -14,6 +14,9 @@ public class Metadata
 	private FileType f_type;
 	private long f_fragmentCount;
 	private byte[] f_archiveUUID;
+	private long f_size;
+	private long f_stripeOffset;
+	private long f_stripeLength;
 
 	/**
 	 * Creates a blank metadata object
@@ -24,6 +27,31 @@ public class Metadata
 		f_dateModified = -1;
 		f_permissions = -1;
 		f_fragmentCount = -1;
+		f_size = -1;
+		f_stripeOffset = 0;
+		f_stripeLength = -1;
+	}
+
+	/**
+	 * Creates a copy of this metadata which describes one stripe of the file, a
+	 * range of bytes which is written to archives separately from the rest
+	 * @param p_offset The offset of the stripe in the file
+	 * @param p_length The length of the stripe
+	 * @return The metadata of the stripe
+	 */
+	public Metadata createStripe(long p_offset, long p_length)
+	{
+		Metadata stripe = new Metadata();
+		stripe.f_file = f_file;
+		stripe.f_dateCreated = f_dateCreated;
+		stripe.f_dateModified = f_dateModified;
+		stripe.f_permissions = f_permissions;
+		stripe.f_type = f_type;
+		stripe.f_size = f_size;
+		stripe.f_stripeOffset = p_offset;
+		stripe.f_stripeLength = p_length;
+		
+		return stripe;
 	}
 
 	/* (non-Javadoc)
@@ -151,4 +179,47 @@ public class Metadata
 	{
 		this.f_type = p_type;
 	}
+
+	/**
+	 * Gets the size of the file when it was indexed. This is only used for
+	 * scheduling and isn't written to archives.
+	 * @return the size in bytes, or -1 if it isn't known
+	 */
+	public long getSize()
+	{
+		return f_size;
+	}
+
+	/**
+	 * @param p_size the size to set
+	 */
+	public void setSize(long p_size)
+	{
+		this.f_size = p_size;
+	}
+
+	/**
+	 * Tells if this metadata describes one stripe of a file rather than the whole file
+	 * @return If this is a stripe
+	 */
+	public boolean isStripe()
+	{
+		return f_stripeLength >= 0;
+	}
+
+	/**
+	 * @return the offset of the stripe in the file, 0 if this isn't a stripe
+	 */
+	public long getStripeOffset()
+	{
+		return f_stripeOffset;
+	}
+
+	/**
+	 * @return the length of the stripe, or -1 if this isn't a stripe
+	 */
+	public long getStripeLength()
+	{
+		return f_stripeLength;
+	}
 }
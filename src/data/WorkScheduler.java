@@ -0,0 +1,360 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import config.Constants;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Hands out the files found by the index worker to the archive workers, balancing
+ * the bytes each worker has to write rather than the number of files. Each file is
+ * given to the worker with the fewest bytes waiting, and each worker writes its
+ * largest waiting file first. A worker with nothing left steals the largest file
+ * waiting for the busiest worker, so one large file doesn't leave the others idle
+ * at the end of a job. Files are only ordered within the files waiting at once,
+ * which is limited by the capacity.
+ *
+ * With more than one worker, a file large enough to be split into stripes of at
+ * least Constants.MIN_STRIPE_SIZE is given out as up to one stripe per worker, so
+ * several workers can write it into their own archive streams at once.
+ */
+public class WorkScheduler
+{
+	private static final Comparator<Metadata> s_largestFirst =
+					(a, b) -> Long.compare(getSize(b), getSize(a));
+
+	private ReentrantLock f_lock;
+	private Condition f_notFull;
+	private Condition f_notEmpty;
+	private List<PriorityQueue<Metadata>> f_queues;
+	private long[] f_waitingBytes;
+	private long[] f_currentBytes;
+	private long[] f_bytesTaken;
+	private int[] f_filesTaken;
+	private int[] f_filesStolen;
+	private int[] f_maxQueueDepth;
+	private int f_capacity;
+	private int f_waiting;
+	private boolean f_closed;
+
+	/**
+	 * Constructs a work scheduler
+	 * @param p_workerCount The number of archive workers
+	 * @param p_capacity The maximum number of files waiting at once
+	 */
+	public WorkScheduler(int p_workerCount, int p_capacity)
+	{
+		f_lock = new ReentrantLock();
+		f_notFull = f_lock.newCondition();
+		f_notEmpty = f_lock.newCondition();
+		f_queues = new ArrayList<PriorityQueue<Metadata>>(p_workerCount);
+		for (int i = 0; i < p_workerCount; ++i)
+			f_queues.add(new PriorityQueue<Metadata>(s_largestFirst));
+
+		f_waitingBytes = new long[p_workerCount];
+		f_currentBytes = new long[p_workerCount];
+		f_bytesTaken = new long[p_workerCount];
+		f_filesTaken = new int[p_workerCount];
+		f_filesStolen = new int[p_workerCount];
+		f_maxQueueDepth = new int[p_workerCount];
+		f_capacity = p_capacity;
+		f_waiting = 0;
+		f_closed = false;
+	}
+
+	/**
+	 * Adds a file for the least loaded worker, or its stripes for several workers,
+	 * waiting for room if as many files as the capacity allows are waiting
+	 * @param p_metadata The metadata of the file
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	public void put(Metadata p_metadata) throws InterruptedException
+	{
+		long size = getSize(p_metadata);
+		int stripes = (int) Math.min(f_queues.size(), size / Constants.MIN_STRIPE_SIZE);
+		if (stripes < 2 || !p_metadata.getType().equals(FileType.k_file))
+		{
+			schedule(p_metadata);
+			return;
+		}
+		
+		long stripeLength = (size + stripes - 1) / stripes;
+		for (long offset = 0; offset < size; offset += stripeLength)
+			schedule(p_metadata.createStripe(offset, Math.min(stripeLength, size - offset)));
+	}
+
+	/**
+	 * Adds a file or a stripe for the least loaded worker, waiting for room if as
+	 * many files as the capacity allows are waiting
+	 * @param p_metadata The metadata of the file or stripe
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	private void schedule(Metadata p_metadata) throws InterruptedException
+	{
+		f_lock.lockInterruptibly();
+		try
+		{
+			while (f_waiting >= f_capacity && !f_closed)
+				f_notFull.await();
+
+			//files added after the scheduler is closed are dropped
+			if (f_closed)
+				return;
+
+			int worker = 0;
+			for (int i = 1; i < f_queues.size(); ++i)
+			{
+				if (getLoad(i) < getLoad(worker))
+					worker = i;
+			}
+
+			PriorityQueue<Metadata> queue = f_queues.get(worker);
+			queue.add(p_metadata);
+			f_waitingBytes[worker] += getSize(p_metadata);
+			f_maxQueueDepth[worker] = Math.max(f_maxQueueDepth[worker], queue.size());
+			++f_waiting;
+
+			f_notEmpty.signalAll();
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next file for a worker, which is the largest file waiting for it,
+	 * or else the largest file waiting for the busiest worker. Taking a file means
+	 * the previous file the worker took is done.
+	 * @param p_worker The index of the worker
+	 * @return The metadata of the file, or null if the scheduler is closed and
+	 * no files are left
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	public Metadata take(int p_worker) throws InterruptedException
+	{
+		f_lock.lockInterruptibly();
+		try
+		{
+			f_currentBytes[p_worker] = 0;
+
+			while (true)
+			{
+				int source = p_worker;
+				if (f_queues.get(p_worker).isEmpty())
+				{
+					source = -1;
+					for (int i = 0; i < f_queues.size(); ++i)
+					{
+						if (!f_queues.get(i).isEmpty() &&
+										(source < 0 || f_waitingBytes[i] > f_waitingBytes[source]))
+							source = i;
+					}
+				}
+
+				if (source >= 0)
+				{
+					Metadata taken = f_queues.get(source).poll();
+					long size = getSize(taken);
+					f_waitingBytes[source] -= size;
+					f_currentBytes[p_worker] = size;
+					f_bytesTaken[p_worker] += size;
+					++f_filesTaken[p_worker];
+					if (source != p_worker)
+						++f_filesStolen[p_worker];
+					--f_waiting;
+
+					f_notFull.signal();
+					return taken;
+				}
+
+				if (f_closed)
+					return null;
+
+				f_notEmpty.await();
+			}
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the scheduler once every file is added. Workers get null from take()
+	 * once the files left are taken.
+	 */
+	public void close()
+	{
+		f_lock.lock();
+		try
+		{
+			f_closed = true;
+			f_notEmpty.signalAll();
+			f_notFull.signalAll();
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops every waiting file and closes the scheduler. This is used to stop a job.
+	 */
+	public void clear()
+	{
+		f_lock.lock();
+		try
+		{
+			for (int i = 0; i < f_queues.size(); ++i)
+			{
+				f_queues.get(i).clear();
+				f_waitingBytes[i] = 0;
+			}
+			f_waiting = 0;
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+
+		close();
+	}
+
+	/**
+	 * Gets the number of files waiting for all workers
+	 * @return The number of waiting files
+	 */
+	public int getWaitingCount()
+	{
+		f_lock.lock();
+		try
+		{
+			return f_waiting;
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of files waiting for a worker
+	 * @param p_worker The index of the worker
+	 * @return The number of waiting files
+	 */
+	public int getQueueDepth(int p_worker)
+	{
+		f_lock.lock();
+		try
+		{
+			return f_queues.get(p_worker).size();
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the most files that were waiting for a worker at once
+	 * @param p_worker The index of the worker
+	 * @return The maximum queue depth
+	 */
+	public int getMaxQueueDepth(int p_worker)
+	{
+		f_lock.lock();
+		try
+		{
+			return f_maxQueueDepth[p_worker];
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the total size of the files a worker has taken
+	 * @param p_worker The index of the worker
+	 * @return The number of bytes taken
+	 */
+	public long getBytesTaken(int p_worker)
+	{
+		f_lock.lock();
+		try
+		{
+			return f_bytesTaken[p_worker];
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of files a worker has taken
+	 * @param p_worker The index of the worker
+	 * @return The number of files taken
+	 */
+	public int getFilesTaken(int p_worker)
+	{
+		f_lock.lock();
+		try
+		{
+			return f_filesTaken[p_worker];
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of files a worker has taken from another worker's queue
+	 * @param p_worker The index of the worker
+	 * @return The number of files stolen
+	 */
+	public int getFilesStolen(int p_worker)
+	{
+		f_lock.lock();
+		try
+		{
+			return f_filesStolen[p_worker];
+		}
+		finally
+		{
+			f_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the bytes a worker has waiting plus the size of the file it is writing.
+	 * The lock must be held.
+	 * @param p_worker The index of the worker
+	 * @return The load of the worker in bytes
+	 */
+	private long getLoad(int p_worker)
+	{
+		return f_waitingBytes[p_worker] + f_currentBytes[p_worker];
+	}
+
+	/**
+	 * Gets the size of a file for scheduling, where folders and unknown sizes count as empty
+	 * @param p_metadata The metadata of the file
+	 * @return The size in bytes
+	 */
+	private static long getSize(Metadata p_metadata)
+	{
+		if (p_metadata.isStripe())
+			return p_metadata.getStripeLength();
+		
+		return Math.max(0, p_metadata.getSize());
+	}
+}
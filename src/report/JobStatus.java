@@ -1,19 +1,22 @@
 package report;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import archive.CreationJobFileState;
 
 /**
  * @author Thomas Elgin (https://github.com/telgin)
- * Allows archive creation jobs to report on their status
+ * Allows archive creation jobs to report on their status. Every archive worker
+ * of a job reports here, so the status is thread safe.
  */
 public abstract class JobStatus
 {
 	private static int s_archivesCreated;
 	private static int s_inputFilesProcessed;
+	private static int s_archivesMeasured;
+	private static long s_archiveBytesAllocated;
 	private static Map<File, FileStatus> s_fileStatuses;
 
 	/**
@@ -23,8 +26,10 @@ public abstract class JobStatus
 	{
 		s_archivesCreated = 0;
 		s_inputFilesProcessed = 0;
+		s_archivesMeasured = 0;
+		s_archiveBytesAllocated = 0;
 		
-		s_fileStatuses = new HashMap<File, FileStatus>();
+		s_fileStatuses = new ConcurrentHashMap<File, FileStatus>();
 	}
 	
 	/**
@@ -50,7 +55,7 @@ public abstract class JobStatus
 	/**
 	 * @return the archivesCreated
 	 */
-	public static int getArchivesCreated()
+	public static synchronized int getArchivesCreated()
 	{
 		return s_archivesCreated;
 	}
@@ -58,7 +63,7 @@ public abstract class JobStatus
 	/**
 	 * @param s_archivesCreated the archivesCreated to set
 	 */
-	public static void incrementArchivesCreated(int p_increment)
+	public static synchronized void incrementArchivesCreated(int p_increment)
 	{
 		s_archivesCreated += p_increment;
 	}
@@ -66,7 +71,7 @@ public abstract class JobStatus
 	/**
 	 * @return the inputFilesProcessed
 	 */
-	public static int getInputFilesProcessed()
+	public static synchronized int getInputFilesProcessed()
 	{
 		return s_inputFilesProcessed;
 	}
@@ -74,11 +79,38 @@ public abstract class JobStatus
 	/**
 	 * @param s_inputFilesProcessed the inputFilesProcessed to set
 	 */
-	public static void incrementInputFilesProcessed(int p_increment)
+	public static synchronized void incrementInputFilesProcessed(int p_increment)
 	{
 		s_inputFilesProcessed += p_increment;
 	}
 	
+	/**
+	 * Records the number of bytes allocated while an archive was filled and saved
+	 * @param p_bytes The number of bytes allocated
+	 */
+	public static synchronized void addArchiveAllocation(long p_bytes)
+	{
+		++s_archivesMeasured;
+		s_archiveBytesAllocated += p_bytes;
+	}
+
+	/**
+	 * Gets the average number of bytes allocated per archive. Once the buffers
+	 * used by the archive writers are warmed up, this should stay small compared
+	 * to the size of an archive. Only the thread which filled an archive and the
+	 * thread which saved it are measured. Work they hand to the common fork join
+	 * pool, such as the segments compressed by the png encoder and the chunks
+	 * encoded by the text codec, allocates on the pool's threads and isn't counted.
+	 * @return The average bytes allocated per archive, or -1 if no archive was measured
+	 */
+	public static synchronized long getAverageArchiveAllocation()
+	{
+		if (s_archivesMeasured == 0)
+			return -1;
+
+		return s_archiveBytesAllocated / s_archivesMeasured;
+	}
+
 	/**
 	 * Sets the number of bytes remaining for a file that is being written
 	 * @param p_file The file being written
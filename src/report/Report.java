@@ -31,7 +31,7 @@ public abstract class Report
 	 * Adds a creation record to the report
 	 * @param p_fileMetadata The metadata for a file which was added to an archive
 	 */
-	public static void saveCreationRecord(Metadata p_fileMetadata)
+	public static synchronized void saveCreationRecord(Metadata p_fileMetadata)
 	{
 		String filePath = p_fileMetadata.getFile().getPath();
 		String f1uuid = FileSystemUtil.getArchiveName(p_fileMetadata.getArchiveUUID());
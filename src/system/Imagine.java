@@ -155,6 +155,42 @@ public class Imagine
 			if (p_args.contains("-r"))
 				result.setResultFile(new File(p_args.get(p_args.indexOf("-r")+1)));
 			
+			//byte range of a file
+			if (p_args.contains("-f"))
+				result.setRangeFile(p_args.get(p_args.indexOf("-f")+1));
+			
+			if (p_args.contains("-s"))
+				result.setRangeStart(Long.parseLong(p_args.get(p_args.indexOf("-s")+1)));
+			
+			if (p_args.contains("-l"))
+				result.setRangeLength(Long.parseLong(p_args.get(p_args.indexOf("-l")+1)));
+			
+			//archives loaded ahead during extraction
+			if (p_args.contains("--prefetch"))
+				result.setPrefetchDepth(Integer.parseInt(p_args.get(p_args.indexOf("--prefetch")+1)));
+			
+			//archives saved in the background during embedding
+			if (p_args.contains("--finalize"))
+				result.setFinalizationDepth(Integer.parseInt(p_args.get(p_args.indexOf("--finalize")+1)));
+			
+			//paths to extract
+			while (p_args.contains("--include"))
+			{
+				int flagIndex = p_args.indexOf("--include");
+				result.addInclude(p_args.get(flagIndex+1));
+				p_args.remove(flagIndex+1);
+				p_args.remove(flagIndex);
+			}
+			
+			//paths not to extract
+			while (p_args.contains("--exclude"))
+			{
+				int flagIndex = p_args.indexOf("--exclude");
+				result.addExclude(p_args.get(flagIndex+1));
+				p_args.remove(flagIndex+1);
+				p_args.remove(flagIndex);
+			}
+			
 			//parameter
 			while (p_args.contains("-P"))
 			{
@@ -0,0 +1,142 @@
+package testing;
+
+import java.util.Arrays;
+
+import util.algorithms.HashRandom;
+import util.algorithms.UniqueRandomRange;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Profiles the keystream and random ordering used by the archive algorithms.
+ * Each per call method is timed against its bulk counterpart, and the bulk
+ * output is checked against the per call output, since archives can only be
+ * read if the sequence never changes.
+ */
+public class HashRandomBenchmark
+{
+	private static final int AVERAGE_IMAGE_SIZE = 6022800;
+	private static final int IMAGES = 4;
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * Profiling entry point
+	 * @param p_args Not used
+	 */
+	public static void main(String p_args[])
+	{
+		profileBytes();
+		profileInts();
+		profileRange();
+	}
+
+	/**
+	 * Times nextByte() against nextBytes()
+	 */
+	private static void profileBytes()
+	{
+		int total = AVERAGE_IMAGE_SIZE * IMAGES;
+		byte[] single = new byte[total];
+		byte[] bulk = new byte[total];
+
+		CodeTimer ct = new CodeTimer();
+		ct.start();
+		HashRandom random = new HashRandom("seed");
+		for (int i = 0; i < total; ++i)
+			single[i] = random.nextByte();
+		ct.end();
+		report("nextByte()", total, ct);
+
+		ct.start();
+		random = new HashRandom("seed");
+		for (int i = 0; i < total; i += CHUNK_SIZE)
+			random.nextBytes(bulk, i, Math.min(CHUNK_SIZE, total - i));
+		ct.end();
+		report("nextBytes()", total, ct);
+
+		check("nextBytes()", Arrays.equals(single, bulk));
+	}
+
+	/**
+	 * Times nextInt() against nextInts()
+	 */
+	private static void profileInts()
+	{
+		int total = AVERAGE_IMAGE_SIZE * IMAGES / 4;
+		int[] single = new int[total];
+		int[] bulk = new int[total];
+
+		CodeTimer ct = new CodeTimer();
+		ct.start();
+		HashRandom random = new HashRandom("seed");
+		for (int i = 0; i < total; ++i)
+			single[i] = random.nextInt(AVERAGE_IMAGE_SIZE);
+		ct.end();
+		report("nextInt()", total, ct);
+
+		ct.start();
+		random = new HashRandom("seed");
+		for (int i = 0; i < total; i += CHUNK_SIZE)
+			random.nextInts(bulk, i, Math.min(CHUNK_SIZE, total - i), AVERAGE_IMAGE_SIZE);
+		ct.end();
+		report("nextInts()", total, ct);
+
+		check("nextInts()", Arrays.equals(single, bulk));
+	}
+
+	/**
+	 * Times drawing a whole image worth of write positions with next() against
+	 * the bulk next()
+	 */
+	private static void profileRange()
+	{
+		int[] single = new int[AVERAGE_IMAGE_SIZE];
+		int[] bulk = new int[AVERAGE_IMAGE_SIZE];
+
+		try
+		{
+			CodeTimer ct = new CodeTimer();
+			ct.start();
+			UniqueRandomRange range = new UniqueRandomRange(new HashRandom("seed"), AVERAGE_IMAGE_SIZE);
+			for (int i = 0; i < AVERAGE_IMAGE_SIZE; ++i)
+				single[i] = range.next();
+			ct.end();
+			report("UniqueRandomRange.next()", AVERAGE_IMAGE_SIZE, ct);
+
+			ct.start();
+			range = new UniqueRandomRange(new HashRandom("seed"), AVERAGE_IMAGE_SIZE);
+			for (int i = 0; i < AVERAGE_IMAGE_SIZE; i += CHUNK_SIZE)
+				range.next(bulk, i, CHUNK_SIZE);
+			ct.end();
+			report("UniqueRandomRange.next(int[])", AVERAGE_IMAGE_SIZE, ct);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+
+		check("UniqueRandomRange.next(int[])", Arrays.equals(single, bulk));
+	}
+
+	/**
+	 * Prints the timing of one run
+	 * @param p_name The name of what was timed
+	 * @param p_count The number of values generated
+	 * @param p_timer The timer
+	 */
+	private static void report(String p_name, int p_count, CodeTimer p_timer)
+	{
+		System.out.println(p_name + ": " + p_count + " values in " + p_timer.getElapsedTime()
+			+ " milliseconds.");
+	}
+
+	/**
+	 * Prints whether a bulk method matched its per call method
+	 * @param p_name The bulk method name
+	 * @param p_same If the outputs matched
+	 */
+	private static void check(String p_name, boolean p_same)
+	{
+		System.out.println(p_name + (p_same ? " matches the per call sequence."
+			: " DOES NOT match the per call sequence!"));
+	}
+}
@@ -2,10 +2,14 @@ package testing;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
+import config.Constants;
 import util.FileSystemUtil;
 
 /**
@@ -27,6 +31,7 @@ public class TestFileTrees
 		s_trees.put("bigfile", getBigFileTree());
 		s_trees.put("bigtree", getBigTree());
 		s_trees.put("inputimages", getInputImages());
+		s_trees.put("stripedfile", getStripedFileTree());
 	}
 
 	/**
@@ -183,6 +188,32 @@ public class TestFileTrees
 		return tree;
 	}
 
+	/**
+	 * Creates the striped file tree, a generated file big enough to be split into
+	 * a stripe for each of three archive workers
+	 * @return The striped file tree
+	 */
+	private static FileTree getStripedFileTree()
+	{
+		FileTree tree = new FileTree()
+		{
+			@Override
+			public File getRoot(File parent)
+			{
+				return new File(parent, "stripedFile");
+			}
+
+			@Override
+			public void create(File parent)
+			{
+				addRandomFile(new File(getRoot(parent), "striped.bin"),
+								3 * Constants.MIN_STRIPE_SIZE + 12345);
+			}
+		};
+
+		return tree;
+	}
+
 	/**
 	 * Resets the tree in the given parent folder
 	 * @param p_parent The parent folder
@@ -245,4 +276,30 @@ public class TestFileTrees
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Writes a file of random bytes, always the same bytes for the same length
+	 * @param p_file The file to write
+	 * @param p_length The length of the file in bytes
+	 */
+	private static void addRandomFile(File p_file, long p_length)
+	{
+		Random random = new Random(p_length);
+		byte[] buffer = new byte[1024 * 1024];
+		try (OutputStream output = new FileOutputStream(p_file))
+		{
+			long remaining = p_length;
+			while (remaining > 0)
+			{
+				int length = (int) Math.min(buffer.length, remaining);
+				random.nextBytes(buffer);
+				output.write(buffer, 0, length);
+				remaining -= length;
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
 }
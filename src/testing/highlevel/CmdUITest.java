@@ -1,5 +1,6 @@
 package testing.highlevel;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -8,16 +9,27 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
 import org.junit.Test;
 
+import algorithms.Algorithm;
+import api.ConfigurationAPI;
+import api.ConversionAPI;
 import archive.CreationJob;
+import config.Settings;
+import data.ArchiveFile;
+import key.DefaultKey;
+import key.Key;
 import system.Imagine;
 import system.SystemManager;
 import testing.Comparisons;
 import testing.TestFileTrees;
+import ui.ArgParseResult;
+import ui.UIContext;
+import ui.cmd.CmdUI;
 import util.FileSystemUtil;
 import util.StandardUtil;
 
@@ -45,6 +57,7 @@ public class CmdUITest
 	private static final String SMALL_TREE = "smallTree";
 	private static final String BIG_FILE = "bigFile";
 	private static final String BIG_TREE = "bigTree";
+	private static final String STRIPED_FILE = "stripedFile";
 	
 	private static final String DEFAULT_IMAGE_PRESET = "image_default";
 	private static final String IMAGE_OVERALY_25_PRESET = "image_overlay_light";
@@ -637,6 +650,227 @@ public class CmdUITest
 	
 	@Test
 	public void text_2_bt() { text_2(BIG_TREE); }
+	
+	/**
+	 * Byte range of a file
+	 */
+	public void text_4(String p_testFileName) throws IOException
+	{
+		//setup
+		File inputFolder = setup(p_testFileName);
+		
+		//embed
+		String[] embed = new String[]{"--embed",
+						"-i", inputFolder.getPath(),
+						"-a", DEFAULT_TEXT_PRESET,
+						"-o", OUTPUT_FOLDER.getPath()};
+		Imagine.run(embed);
+		
+		//the file starts in the first archive
+		File firstArchive = null;
+		for (File archive : OUTPUT_FOLDER.listFiles())
+		{
+			if (archive.getName().contains("_0."))
+				firstArchive = archive;
+		}
+		
+		//extract the second to last 50000 bytes
+		String[] extract = new String[]{"--extract",
+						"-i", firstArchive.getPath(),
+						"-a", DEFAULT_TEXT_PRESET, 
+						"-o", EXTRACTION_FOLDER.getPath(),
+						"-s", "-100000",
+						"-l", "50000"};
+		Imagine.run(extract);
+		
+		//the range is named after the original and the range (<name>.<start>-<end>)
+		File extracted = Files.walk(EXTRACTION_FOLDER.toPath())
+						.filter(Files::isRegularFile).findFirst().get().toFile();
+		String originalName = extracted.getName().substring(0, extracted.getName().lastIndexOf('.'));
+		File original = Files.walk(inputFolder.toPath())
+						.filter(path -> path.getFileName().toString().equals(originalName))
+						.findFirst().get().toFile();
+		
+		long start = original.length() - 100000;
+		long end = original.length() - 50000;
+		assertEquals(originalName + "." + start + "-" + end, extracted.getName());
+		
+		//compare with the same bytes of the original
+		byte[] originalBytes = Files.readAllBytes(original.toPath());
+		assertArrayEquals(Arrays.copyOfRange(originalBytes, (int) start, (int) end),
+						Files.readAllBytes(extracted.toPath()));
+	}
+	
+	@Test
+	public void text_4_bf() throws IOException { text_4(BIG_FILE); }
+	
+	/**
+	 * Include and exclude patterns
+	 */
+	public void text_5(String p_testFileName) throws IOException
+	{
+		//setup
+		File inputFolder = setup(p_testFileName);
+		
+		//embed
+		String[] embed = new String[]{"--embed",
+						"-i", inputFolder.getPath(),
+						"-a", DEFAULT_TEXT_PRESET,
+						"-o", OUTPUT_FOLDER.getPath()};
+		Imagine.run(embed);
+		
+		//extract only text files, leaving out the ones named t1*
+		String[] extract = new String[]{"--extract",
+						"-i", OUTPUT_FOLDER.getPath(),
+						"-a", DEFAULT_TEXT_PRESET, 
+						"-o", EXTRACTION_FOLDER.getPath(),
+						"--include", "**.txt",
+						"--exclude", "**/t1*"};
+		Imagine.run(extract);
+		
+		//compare the extracted files with the ones which should have been selected
+		long expected = Files.walk(inputFolder.toPath())
+						.filter(path -> Files.isRegularFile(path))
+						.map(path -> path.getFileName().toString())
+						.filter(name -> name.endsWith(".txt") && !name.startsWith("t1"))
+						.count();
+		
+		long extracted = Files.walk(EXTRACTION_FOLDER.toPath())
+						.filter(path -> Files.isRegularFile(path))
+						.map(path -> path.getFileName().toString())
+						.peek(name -> assertTrue(name.endsWith(".txt") && !name.startsWith("t1")))
+						.count();
+		
+		assertEquals(expected, extracted);
+	}
+	
+	@Test
+	public void text_5_st() throws IOException { text_5(SMALL_TREE); }
+	
+	/**
+	 * File striped across several archive workers
+	 */
+	public void text_6(String p_testFileName) throws Exception
+	{
+		//setup
+		File inputFolder = setup(p_testFileName);
+		UIContext.setUI(new CmdUI(new ArgParseResult()));
+		Settings.setOutputFolder(OUTPUT_FOLDER);
+		
+		//embed with three workers, which only the api allows
+		Algorithm algo = ConfigurationAPI.getAlgorithmPreset(DEFAULT_TEXT_PRESET);
+		Key key = new DefaultKey();
+		CreationJob job = ConversionAPI.createArchives(
+						Arrays.asList(new ArchiveFile(inputFolder.getPath())), algo, key, 3);
+		s_jobs.add(job);
+		while (!job.awaitFinished(1000));
+		
+		//each worker writes its own stream of archives
+		ArrayList<File> firstArchives = new ArrayList<File>();
+		for (File archive : OUTPUT_FOLDER.listFiles())
+		{
+			if (archive.getName().contains("_0."))
+				firstArchives.add(archive);
+		}
+		assertTrue(firstArchives.size() > 1);
+		
+		//extracting the folder assembles the stripes into the whole file
+		String[] extract = new String[]{"--extract",
+						"-i", OUTPUT_FOLDER.getPath(),
+						"-a", DEFAULT_TEXT_PRESET, 
+						"-o", EXTRACTION_FOLDER.getPath()};
+		Imagine.run(extract);
+		Comparisons.compareExtractedFileStructure(inputFolder, EXTRACTION_FOLDER, false);
+		
+		//a single entry only holds its stripe, which is extracted as a range
+		File original = Files.walk(inputFolder.toPath())
+						.filter(Files::isRegularFile).findFirst().get().toFile();
+		byte[] originalBytes = Files.readAllBytes(original.toPath());
+		String prefix = original.getName() + ".";
+		
+		for (File archive : firstArchives)
+		{
+			clearFolder(EXTRACTION_FOLDER);
+			ConversionAPI.extractFile(algo, key, archive, EXTRACTION_FOLDER, 0);
+			
+			File extracted = Files.walk(EXTRACTION_FOLDER.toPath())
+							.filter(Files::isRegularFile).findFirst().get().toFile();
+			assertTrue(extracted.getName().startsWith(prefix));
+			
+			String[] range = extracted.getName().substring(prefix.length()).split("-");
+			assertArrayEquals(Arrays.copyOfRange(originalBytes, Integer.parseInt(range[0]),
+							Integer.parseInt(range[1])), Files.readAllBytes(extracted.toPath()));
+		}
+	}
+	
+	@Test
+	public void text_6_sf() throws Exception { text_6(STRIPED_FILE); }
+	
+	/**
+	 * Prefetch depth
+	 */
+	public void text_7(String p_testFileName, String p_prefetchDepth)
+	{
+		//setup
+		File inputFolder = setup(p_testFileName);
+		
+		//embed
+		String[] embed = new String[]{"--embed",
+						"-i", inputFolder.getPath(),
+						"-a", DEFAULT_TEXT_PRESET,
+						"-o", OUTPUT_FOLDER.getPath()};
+		Imagine.run(embed);
+		
+		//extract
+		String[] extract = new String[]{"--extract",
+						"-i", OUTPUT_FOLDER.getPath(),
+						"-a", DEFAULT_TEXT_PRESET, 
+						"-o", EXTRACTION_FOLDER.getPath(),
+						"--prefetch", p_prefetchDepth};
+		Imagine.run(extract);
+		
+		//compare
+		Comparisons.compareExtractedFileStructure(inputFolder, EXTRACTION_FOLDER, false);
+	}
+	
+	@Test
+	public void text_7_bt_none() { text_7(BIG_TREE, "0"); }
+	
+	@Test
+	public void text_7_bt_max() { text_7(BIG_TREE, "8"); }
+	
+	/**
+	 * Finalization depth
+	 */
+	public void text_8(String p_testFileName, String p_finalizationDepth)
+	{
+		//setup
+		File inputFolder = setup(p_testFileName);
+		
+		//embed
+		String[] embed = new String[]{"--embed",
+						"-i", inputFolder.getPath(),
+						"-a", DEFAULT_TEXT_PRESET,
+						"-o", OUTPUT_FOLDER.getPath(),
+						"--finalize", p_finalizationDepth};
+		Imagine.run(embed);
+		
+		//extract
+		String[] extract = new String[]{"--extract",
+						"-i", OUTPUT_FOLDER.getPath(),
+						"-a", DEFAULT_TEXT_PRESET, 
+						"-o", EXTRACTION_FOLDER.getPath()};
+		Imagine.run(extract);
+		
+		//compare
+		Comparisons.compareExtractedFileStructure(inputFolder, EXTRACTION_FOLDER, false);
+	}
+	
+	@Test
+	public void text_8_bt_none() { text_8(BIG_TREE, "0"); }
+	
+	@Test
+	public void text_8_bt_max() { text_8(BIG_TREE, "4"); }
 		
 
 	//----------------------------------------
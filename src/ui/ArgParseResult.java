@@ -20,6 +20,13 @@ public class ArgParseResult
 	private File f_outputFolder;
 	private File f_keyFile;
 	private File f_resultFile;
+	private String f_rangeFile;
+	private Long f_rangeStart;
+	private Long f_rangeLength;
+	private Integer f_prefetchDepth;
+	private Integer f_finalizationDepth;
+	private List<String> f_includes;
+	private List<String> f_excludes;
 	private boolean f_usingPassword;
 	private boolean f_guiMode;
 	private CmdAction f_action;
@@ -35,6 +42,13 @@ public class ArgParseResult
 		f_outputFolder = null;
 		f_keyFile = null;
 		f_resultFile = null;
+		f_rangeFile = null;
+		f_rangeStart = null;
+		f_rangeLength = null;
+		f_prefetchDepth = null;
+		f_finalizationDepth = null;
+		f_includes = new ArrayList<String>();
+		f_excludes = new ArrayList<String>();
 		f_usingPassword = false;
 		f_guiMode = false;
 		f_action = null;
@@ -88,6 +102,70 @@ public class ArgParseResult
 		return f_resultFile;
 	}
 
+	/**
+	 * @return the rangeFile
+	 */
+	public String getRangeFile()
+	{
+		return f_rangeFile;
+	}
+
+	/**
+	 * @return the rangeStart
+	 */
+	public Long getRangeStart()
+	{
+		return f_rangeStart;
+	}
+
+	/**
+	 * @return the rangeLength
+	 */
+	public Long getRangeLength()
+	{
+		return f_rangeLength;
+	}
+
+	/**
+	 * @return If a byte range was requested
+	 */
+	public boolean isRangeRequested()
+	{
+		return f_rangeStart != null || f_rangeLength != null;
+	}
+
+	/**
+	 * @return the prefetchDepth, or null if it wasn't specified
+	 */
+	public Integer getPrefetchDepth()
+	{
+		return f_prefetchDepth;
+	}
+
+	/**
+	 * @return the finalizationDepth, or null if it wasn't specified
+	 */
+	public Integer getFinalizationDepth()
+	{
+		return f_finalizationDepth;
+	}
+
+	/**
+	 * @return the include patterns
+	 */
+	public List<String> getIncludes()
+	{
+		return f_includes;
+	}
+
+	/**
+	 * @return the exclude patterns
+	 */
+	public List<String> getExcludes()
+	{
+		return f_excludes;
+	}
+
 	/**
 	 * @return the usingPassword
 	 */
@@ -144,6 +222,46 @@ public class ArgParseResult
 		f_resultFile = p_resultFile;
 	}
 
+	/**
+	 * @param p_rangeFile the rangeFile to set
+	 */
+	public void setRangeFile(String p_rangeFile)
+	{
+		f_rangeFile = p_rangeFile;
+	}
+
+	/**
+	 * @param p_rangeStart the rangeStart to set
+	 */
+	public void setRangeStart(Long p_rangeStart)
+	{
+		f_rangeStart = p_rangeStart;
+	}
+
+	/**
+	 * @param p_rangeLength the rangeLength to set
+	 */
+	public void setRangeLength(Long p_rangeLength)
+	{
+		f_rangeLength = p_rangeLength;
+	}
+
+	/**
+	 * @param p_prefetchDepth the prefetchDepth to set
+	 */
+	public void setPrefetchDepth(Integer p_prefetchDepth)
+	{
+		f_prefetchDepth = p_prefetchDepth;
+	}
+
+	/**
+	 * @param p_finalizationDepth the finalizationDepth to set
+	 */
+	public void setFinalizationDepth(Integer p_finalizationDepth)
+	{
+		f_finalizationDepth = p_finalizationDepth;
+	}
+
 	/**
 	 * @param p_usingPassword the usingPassword to set
 	 */
@@ -178,6 +296,24 @@ public class ArgParseResult
 		f_inputFiles.add(file);
 	}
 	
+	/**
+	 * Adds a pattern for the paths of files to extract
+	 * @param p_pattern The glob (or "regex:" prefixed) pattern
+	 */
+	public void addInclude(String p_pattern)
+	{
+		f_includes.add(p_pattern);
+	}
+	
+	/**
+	 * Adds a pattern for the paths of files not to extract
+	 * @param p_pattern The glob (or "regex:" prefixed) pattern
+	 */
+	public void addExclude(String p_pattern)
+	{
+		f_excludes.add(p_pattern);
+	}
+	
 	/**
 	 * Adds a parsed parameter [name,value] pair to the list of pairs.
 	 * @param nameValuePair The string pair in the form String[]{name, value}
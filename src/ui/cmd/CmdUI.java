@@ -11,6 +11,7 @@ import api.ConversionAPI;
 import api.UsageException;
 import archive.ArchiveContents;
 import archive.CreationJob;
+import archive.ExtractionFilter;
 import archive.FileContents;
 import config.Constants;
 import config.Settings;
@@ -122,8 +123,9 @@ public class CmdUI extends UI
 		
 		p("Command Syntax:");
 		p("imagine --open -a <algorithm> -i <file> [-o <folder>] [-k [keyfile]]");
-		p("imagine --embed -a <algorithm> -i <file/folder> [-o <folder>] [-k [keyfile]]");
-		p("imagine --extract -a <algorithm> -i <file/folder> [-o <folder>] [-k [keyfile]]\n");
+		p("imagine --embed -a <algorithm> -i <file/folder> [-o <folder>] [-k [keyfile]] [--finalize <depth>]");
+		p("imagine --extract -a <algorithm> -i <file/folder> [-o <folder>] [-k [keyfile]] [--include <pattern>] [--exclude <pattern>] [--prefetch <depth>]");
+		p("imagine --extract -a <algorithm> -i <file> -s <offset> [-l <length>] [-f <path>] [-o <folder>] [-k [keyfile]]\n");
 		
 		p("--open");
 		p("    open an archive and selectively extract its contents");
@@ -150,6 +152,23 @@ public class CmdUI extends UI
 		p("    override algorithm parameter (quotes optional)");
 		p("-r <file>");
 		p("    create a report file of which archive each file was added to");
+		p("-s <offset>");
+		p("    extract only the bytes of a file from this offset (negative counts from the end)");
+		p("    into <name>.<start>-<end>");
+		p("-l <length>");
+		p("    extract only this many bytes of a file (default: to the end)");
+		p("-f <path>");
+		p("    the file in the archive to extract a byte range of (default: the first file)");
+		p("--include <pattern>");
+		p("    extract only files with paths matching a glob (or \"regex:...\") (multiple flags supported)");
+		p("--exclude <pattern>");
+		p("    don't extract files with paths matching a glob (or \"regex:...\") (multiple flags supported)");
+		p("--prefetch <depth>");
+		p("    number of archives loaded in the background while extracting a folder (default: "
+						+ Constants.DEFAULT_PREFETCH_DEPTH + ", at most " + Constants.MAX_PREFETCH_DEPTH + ")");
+		p("--finalize <depth>");
+		p("    number of filled archives each worker saves in the background while embedding (default: "
+						+ Constants.DEFAULT_FINALIZATION_DEPTH + ", at most " + Constants.MAX_FINALIZATION_DEPTH + ")");
 	}
 
 	/**
@@ -192,6 +211,7 @@ public class CmdUI extends UI
 			{
 				String folder =      "(folder)        ";
 				String file =        "(file)          ";
+				String stripe =      "(stripe)        ";
 				String path = fileContents.getMetadata().getFile().getPath();
 				
 				if (fileContents.getFragmentNumber() > 1)
@@ -202,7 +222,7 @@ public class CmdUI extends UI
 					contentsMenu.addOption(fragment + path);
 				}
 				else if (fileContents.getMetadata().getType().equals(FileType.k_file))
-					contentsMenu.addOption(file + path);
+					contentsMenu.addOption((fileContents.isStripe() ? stripe : file) + path);
 				else
 					contentsMenu.addOption(folder + path);
 			}
@@ -283,6 +303,9 @@ public class CmdUI extends UI
 			
 			Settings.setOutputFolder(f_args.getOutputFolder());
 			
+			if (f_args.getFinalizationDepth() != null)
+				Settings.setFinalizationDepth(f_args.getFinalizationDepth());
+			
 			//make report if requested
 			if (f_args.getResultFile() != null)
 			{
@@ -306,7 +329,7 @@ public class CmdUI extends UI
 					previousStat = currentStat;
 				}
 				
-				Thread.sleep(1000);
+				job.awaitFinished(1000);
 			}
 			
 			//write report
@@ -340,7 +363,14 @@ public class CmdUI extends UI
 			if (f_args.getOutputFolder() == null)
 				f_args.setOutputFolder(new File("."));
 			
-			ConversionAPI.extractAll(algo, key, f_args.getInputFiles().get(0), f_args.getOutputFolder());
+			if (f_args.getPrefetchDepth() != null)
+				Settings.setPrefetchDepth(f_args.getPrefetchDepth());
+			
+			if (f_args.isRangeRequested())
+				extractRange(algo, key);
+			else
+				ConversionAPI.extractAll(algo, key, f_args.getInputFiles().get(0), f_args.getOutputFolder(),
+								getPathFilter());
 		}
 		catch (UsageException | IOException e)
 		{
@@ -354,6 +384,60 @@ public class CmdUI extends UI
 		}
 	}
 
+	/**
+	 * Creates a filter from the include and exclude patterns in the arguments
+	 * @return The filter, or null if there are no patterns
+	 * @throws UsageException If a pattern is invalid
+	 */
+	private ExtractionFilter getPathFilter() throws UsageException
+	{
+		if (f_args.getIncludes().isEmpty() && f_args.getExcludes().isEmpty())
+			return null;
+		
+		ExtractionFilter filter = new ExtractionFilter();
+		try
+		{
+			for (String pattern : f_args.getIncludes())
+				filter.addPattern(pattern);
+			
+			for (String pattern : f_args.getExcludes())
+				filter.addExclude(pattern);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new UsageException("Invalid path pattern: " + e.getMessage());
+		}
+		
+		return filter;
+	}
+	
+	/**
+	 * Extracts a byte range of a file which starts in the input archive file
+	 * @param p_algo The algorithm to use
+	 * @param p_key The key to use
+	 * @throws IOException If the archive cannot be read or the range cannot be written
+	 * @throws UsageException If the archive file cannot be found
+	 */
+	private void extractRange(Algorithm p_algo, Key p_key) throws IOException, UsageException
+	{
+		//the first file in the archive unless one was named
+		ExtractionFilter filter = null;
+		if (f_args.getRangeFile() != null)
+		{
+			filter = new ExtractionFilter();
+			filter.addPath(f_args.getRangeFile());
+		}
+		
+		long start = f_args.getRangeStart() == null ? 0 : f_args.getRangeStart();
+		long length = f_args.getRangeLength() == null ? -1 : f_args.getRangeLength();
+		
+		if (!ConversionAPI.extractRange(p_algo, p_key, f_args.getInputFiles().get(0),
+						f_args.getOutputFolder(), filter, start, length))
+		{
+			Logger.log(LogLevel.k_error, "The byte range could not be fully extracted.");
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see ui.UI#promptParameterValue(algorithms.Parameter)
 	 */
@@ -1,8 +1,12 @@
 package ui.graphical;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import algorithms.Parameter;
 import system.SystemManager;
@@ -17,6 +21,7 @@ import ui.graphical.top.TopView;
 public class GUI extends UI
 {
 	private List<String> f_errors;
+	private Set<Thread> f_ignoredThreads;
 	private TopView f_topView;
 	private ArgParseResult f_args;
 	
@@ -27,7 +32,10 @@ public class GUI extends UI
 	public GUI(ArgParseResult p_args)
 	{
 		f_args = p_args;
-		f_errors = new LinkedList<String>();
+		//errors are reported from background tasks as well as the fx thread
+		f_errors = Collections.synchronizedList(new LinkedList<String>());
+		f_ignoredThreads = Collections.newSetFromMap(
+						Collections.synchronizedMap(new WeakHashMap<Thread, Boolean>()));
 	}
 
 	/* (non-Javadoc)
@@ -88,16 +96,30 @@ public class GUI extends UI
 	@Override
 	public void reportError(String p_message)
 	{
-		f_errors.add(p_message);
+		if (!f_ignoredThreads.contains(Thread.currentThread()))
+			f_errors.add(p_message);
+	}
+	
+	/**
+	 * Stops collecting the errors reported by a thread, such as the thread of a
+	 * background task which was cancelled
+	 * @param p_thread The thread
+	 */
+	public void ignoreErrors(Thread p_thread)
+	{
+		f_ignoredThreads.add(p_thread);
 	}
 	
 	/**
 	 * Gets the list of error messages
-	 * @return The list of error messages
+	 * @return A copy of the list of error messages
 	 */
 	public List<String> getErrors()
 	{
-		return f_errors;
+		synchronized (f_errors)
+		{
+			return new ArrayList<String>(f_errors);
+		}
 	}
 	
 	/**
@@ -2,13 +2,18 @@ package ui.graphical.archiveviewer;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import algorithms.Algorithm;
 import api.ConfigurationAPI;
 import api.ConversionAPI;
 import api.UsageException;
-import archive.ArchiveContents;
+import archive.ExtractionFilter;
+import archive.FileContents;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import key.FileKey;
 import key.Key;
 import key.PasswordKey;
@@ -30,7 +35,13 @@ public class OpenArchiveController
 	//state fields
 	private List<String> f_presetNames;
 	private Algorithm f_selectedAlgorithm = null;
-	private boolean f_nonInitialFragment;
+	private volatile boolean f_nonInitialFragment;
+	private Task<Integer> f_opening;
+	private Thread f_openingThread;
+	
+	//constants
+	private static final int s_rowBatchSize = 500;
+	private static final long s_rowUpdateInterval = 100;
 		
 	/**
 	 * Constructs an open archive controller for a given view
@@ -61,29 +72,131 @@ public class OpenArchiveController
 	}
 	
 	/**
-	 * Tries to open the specified archive and displays its contents in the table
+	 * Tries to open the specified archive and displays its contents in the table. The
+	 * archive is read in the background and the table fills in as files are found.
 	 */
 	void openArchive()
 	{
-		try
+		cancelOpening();
+		
+		f_view.setOpenButtonEnabled(false);
+		f_view.setAlgorithmSelectionEnabled(false);
+		f_view.clearTable();
+		f_nonInitialFragment = false;
+		
+		Algorithm algorithm = f_selectedAlgorithm;
+		Key key = getKey();
+		String inputFilePath = f_view.getInputFilePath();
+		
+		Task<Integer> opening = new Task<Integer>()
 		{
-			f_view.setOpenButtonEnabled(false);
-			f_view.setAlgorithmSelectionEnabled(false);
+			@Override
+			protected Integer call() throws Exception
+			{
+				return readArchive(this, algorithm, key, inputFilePath);
+			}
+		};
+		
+		opening.setOnSucceeded(e -> finishOpening(opening.getValue() > 0, inputFilePath));
+		opening.setOnFailed(e ->
+		{
+			Throwable error = opening.getException();
+			if (error instanceof Exception)
+				Logger.log(LogLevel.k_debug, (Exception) error, false);
 			
-			ArchiveContents archiveContents = ConversionAPI.openArchive(f_selectedAlgorithm, getKey(), getInputFile());
+			Logger.log(LogLevel.k_error, error.getMessage());
 			
-			if (!archiveContents.getFileContents().isEmpty())
-				f_nonInitialFragment = archiveContents.getFileContents().get(0).getFragmentNumber() > 1;
-			else
-				f_nonInitialFragment = false;
+			finishOpening(false, inputFilePath);
+		});
+		
+		f_opening = opening;
+		
+		Thread thread = new Thread(opening);
+		thread.setDaemon(true);
+		f_openingThread = thread;
+		thread.start();
+	}
+	
+	/**
+	 * Reads the files in an archive, adding them to the table in batches. This runs
+	 * in the background.
+	 * @param p_task The task this is running in, which stops reading when cancelled
+	 * @param p_algorithm The algorithm to use
+	 * @param p_key The key to use
+	 * @param p_inputFilePath The path of the archive file
+	 * @return The number of files read
+	 * @throws IOException If the archive cannot be read
+	 * @throws UsageException If the archive file cannot be found
+	 */
+	private int readArchive(Task<Integer> p_task, Algorithm p_algorithm, Key p_key,
+					String p_inputFilePath) throws IOException, UsageException
+	{
+		if (p_inputFilePath == null || p_inputFilePath.isEmpty())
+			throw new UsageException("The input file must exist.");
+		
+		Iterator<FileContents> contents = ConversionAPI.iterateArchive(p_algorithm, p_key,
+						new File(p_inputFilePath));
+		
+		int count = 0;
+		long lastUpdate = 0;
+		List<FileContents> batch = new ArrayList<FileContents>();
+		while (!p_task.isCancelled() && contents.hasNext())
+		{
+			FileContents fileContents = contents.next();
+			if (count == 0)
+				f_nonInitialFragment = fileContents.getFragmentNumber() > 1;
 			
-			f_view.setTableData(archiveContents.getFileContents());
+			batch.add(fileContents);
+			++count;
+			
+			//the first file shows right away, then the table is updated periodically
+			if (batch.size() >= s_rowBatchSize || 
+							System.currentTimeMillis() - lastUpdate >= s_rowUpdateInterval)
+			{
+				addRows(p_task, batch);
+				batch = new ArrayList<FileContents>();
+				lastUpdate = System.currentTimeMillis();
+			}
+		}
+		
+		if (!batch.isEmpty())
+			addRows(p_task, batch);
+		
+		return count;
+	}
+	
+	/**
+	 * Adds rows to the table unless the task reading them was cancelled
+	 * @param p_task The task which read the rows
+	 * @param p_rows The file contents to add
+	 */
+	private void addRows(Task<Integer> p_task, List<FileContents> p_rows)
+	{
+		Platform.runLater(() ->
+		{
+			if (!p_task.isCancelled())
+				f_view.addTableData(p_rows);
+		});
+	}
+	
+	/**
+	 * Updates the gui once the archive is read
+	 * @param p_opened If any files were found in the archive
+	 * @param p_inputFilePath The path of the archive file
+	 */
+	private void finishOpening(boolean p_opened, String p_inputFilePath)
+	{
+		f_opening = null;
+		f_openingThread = null;
+		
+		if (p_opened)
+		{
 			f_view.setExtractionButtonsEnabled(true);
 		}
-		catch (Exception e)
+		else
 		{
-			Logger.log(LogLevel.k_debug, e, false);
-			Logger.log(LogLevel.k_error, e.getMessage());
+			if (!f_gui.hasErrors())
+				Logger.log(LogLevel.k_error, "There were no files recovered from " + p_inputFilePath);
 			
 			f_view.setOpenButtonEnabled(true);
 			f_view.setAlgorithmSelectionEnabled(true);
@@ -97,6 +210,21 @@ public class OpenArchiveController
 		}
 	}
 	
+	/**
+	 * Stops reading the archive which is being opened, if any. The task runs until
+	 * it reads the next header, and any errors it reports until then are ignored.
+	 */
+	private void cancelOpening()
+	{
+		if (f_opening != null)
+		{
+			f_gui.ignoreErrors(f_openingThread);
+			f_opening.cancel();
+			f_opening = null;
+			f_openingThread = null;
+		}
+	}
+	
 	/**
 	 * Gets the input file from the gui
 	 * @return The input file location
@@ -196,7 +324,7 @@ public class OpenArchiveController
 	}
 
 	/**
-	 * Attempts to extract the selected files
+	 * Attempts to extract the selected files, all in one pass through the archive
 	 */
 	public void extractSelected()
 	{
@@ -207,6 +335,7 @@ public class OpenArchiveController
 			File outputFolder = getOutputFolder();
 			File inputFile = getInputFile();
 			
+			ExtractionFilter filter = new ExtractionFilter();
 			for (int index : indices)
 			{
 				if (index == 0 && f_nonInitialFragment)
@@ -215,17 +344,18 @@ public class OpenArchiveController
 					Logger.log(LogLevel.k_error, "Only initial fragments may start an extraction chain, "
 									+ "so this file will not be complete.");
 				}
-
-				try
-				{
-					ConversionAPI.extractFile(f_selectedAlgorithm, getKey(), inputFile, outputFolder, index);
-				}
-				catch (IOException | UsageException e)
-				{
-					Logger.log(LogLevel.k_debug, e, false);
-					Logger.log(LogLevel.k_error, e.getMessage());
-				}
-
+				
+				filter.addIndex(index);
+			}
+			
+			try
+			{
+				ConversionAPI.extractFiles(f_selectedAlgorithm, getKey(), inputFile, outputFolder, filter);
+			}
+			catch (IOException | UsageException e)
+			{
+				Logger.log(LogLevel.k_debug, e, false);
+				Logger.log(LogLevel.k_error, e.getMessage());
 			}
 		}
 		catch (Exception e)
@@ -333,6 +463,7 @@ public class OpenArchiveController
 			f_view.setInputFilePath(file.getAbsolutePath());
 			
 			//reset
+			cancelOpening();
 			f_view.setOpenButtonEnabled(true);
 			f_view.setAlgorithmSelectionEnabled(true);
 			f_view.clearTable();
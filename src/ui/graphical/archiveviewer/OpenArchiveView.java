@@ -419,10 +419,35 @@ public class OpenArchiveView extends View
 	 * @param p_data The list of file contents read from an archive file
 	 */
 	public void setTableData(List<FileContents> p_data)
+	{
+		f_table.setItems(FXCollections.observableArrayList(createRecords(p_data, 1)));
+	}
+	
+	/**
+	 * Adds file contents to the end of the table, numbered after the ones
+	 * already in it
+	 * @param p_data The list of file contents read from an archive file
+	 */
+	public void addTableData(List<FileContents> p_data)
+	{
+		if (f_table.getItems() == null)
+			f_table.setItems(FXCollections.observableArrayList());
+		
+		ObservableList<FileContentsTableRecord> items = f_table.getItems();
+		items.addAll(createRecords(p_data, items.size() + 1));
+	}
+	
+	/**
+	 * Creates table records from a list of file contents
+	 * @param p_data The list of file contents read from an archive file
+	 * @param p_firstIndex The index shown for the first record
+	 * @return The table records
+	 */
+	private List<FileContentsTableRecord> createRecords(List<FileContents> p_data, int p_firstIndex)
 	{
 		List<FileContentsTableRecord> records = new ArrayList<FileContentsTableRecord>();
 		
-		int count = 1;
+		int count = p_firstIndex;
 		for (FileContents fileContents : p_data)
 		{
 			records.add(new FileContentsTableRecord(count++,
@@ -434,7 +459,7 @@ public class OpenArchiveView extends View
 							fileContents.getMetadata().getDateModified()));
 		}
 		
-		f_table.setItems(FXCollections.observableArrayList(records));
+		return records;
 	}
 	
 	/**
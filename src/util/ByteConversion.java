@@ -1,8 +1,8 @@
 package util;
 
 import java.nio.ByteBuffer;
-
-import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
 import config.Constants;
 
@@ -204,7 +204,7 @@ public class ByteConversion
 	 */
 	public static final String bytesToHex(byte[] p_bytes)
 	{
-		return DatatypeConverter.printHexBinary(p_bytes);
+		return new String(TextCodec.encodeHex(p_bytes, 0, p_bytes.length), StandardCharsets.US_ASCII);
 	}
 
 	/**
@@ -214,7 +214,21 @@ public class ByteConversion
 	 */
 	public static final byte[] hexToBytes(String p_string)
 	{
-		return DatatypeConverter.parseHexBinary(p_string);
+		if (p_string.length() % 2 != 0)
+			throw new IllegalArgumentException("Hex string needs to be an even length: " + p_string);
+
+		byte[] bytes = new byte[p_string.length() / 2];
+		for (int i = 0; i < bytes.length; ++i)
+		{
+			int high = Character.digit(p_string.charAt(i * 2), 16);
+			int low = Character.digit(p_string.charAt((i * 2) + 1), 16);
+			if (high < 0 || low < 0)
+				throw new IllegalArgumentException("Invalid hex string: " + p_string);
+
+			bytes[i] = (byte) ((high << 4) | low);
+		}
+
+		return bytes;
 	}
 
 	/**
@@ -224,7 +238,7 @@ public class ByteConversion
 	 */
 	public static final String bytesToBase64(byte[] p_bytes)
 	{
-		return DatatypeConverter.printBase64Binary(p_bytes);
+		return Base64.getEncoder().encodeToString(p_bytes);
 	}
 
 	/**
@@ -234,7 +248,8 @@ public class ByteConversion
 	 */
 	public static final byte[] base64ToBytes(String p_string)
 	{
-		return DatatypeConverter.parseBase64Binary(p_string);
+		// the mime decoder ignores characters outside the alphabet
+		return Base64.getMimeDecoder().decode(p_string);
 	}
 
 	/**
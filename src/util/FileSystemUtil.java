@@ -13,6 +13,7 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.EnumSet;
 import java.util.Set;
@@ -72,6 +73,10 @@ public class FileSystemUtil
 			Logger.log(LogLevel.k_debug, e, false);
 			Logger.log(LogLevel.k_warning, "Cannot set permissions for file: " + p_file.getName());
 		}
+		catch (UnsupportedOperationException e)
+		{
+			//TODO support file permissions in windows
+		}
 	}
 
 	/**
@@ -244,24 +249,90 @@ public class FileSystemUtil
 		setFileDates(p_file, p_dateCreated, p_dateModified, p_dateModified);
 	}
 
+	/**
+	 * Applies the dates and permissions in a metadata object to a file. This is
+	 * done once the file is written. Dates are set first, since the permissions
+	 * may not allow the file to be changed afterwards.
+	 * @param p_file The file
+	 * @param p_metadata The metadata to apply
+	 */
+	public static void applyMetadata(File p_file, Metadata p_metadata)
+	{
+		setFileDates(p_file, p_metadata.getDateCreated(), p_metadata.getDateModified());
+		setNumericFilePermissions(p_file, p_metadata.getPermissions());
+	}
+
 	/**
 	 * Loads a metadata object from a file in the file system
 	 * @param p_file The file
 	 * @return The file metadata
 	 */
 	public static Metadata loadMetadataFromFile(ArchiveFile p_file)
+	{
+		try
+		{
+			return loadMetadataFromAttributes(p_file, readAttributes(p_file.toPath()));
+		}
+		catch (IOException e)
+		{
+			Logger.log(LogLevel.k_error, "Cannot read attributes for: " + p_file.getPath());
+			Logger.log(LogLevel.k_debug, e, false);
+			
+			Metadata metadata = new Metadata();
+			metadata.setDateCreated(-1);
+			metadata.setDateModified(-1);
+			metadata.setFile(p_file);
+			metadata.setPermissions((short) 444);
+			metadata.setType(p_file.isDirectory() ? FileType.k_folder : FileType.k_file);
+			
+			return metadata;
+		}
+	}
+
+	/**
+	 * Loads a metadata object from the attributes already read for a file
+	 * @param p_file The file
+	 * @param p_attributes The attributes of the file (see readAttributes())
+	 * @return The file metadata
+	 */
+	public static Metadata loadMetadataFromAttributes(ArchiveFile p_file, BasicFileAttributes p_attributes)
 	{
 		Metadata metadata = new Metadata();
 
-		metadata.setDateCreated(getDateCreated(p_file));
-		metadata.setDateModified(getDateModified(p_file));
+		metadata.setDateCreated(p_attributes.creationTime().toMillis());
+		metadata.setDateModified(p_attributes.lastModifiedTime().toMillis());
 		metadata.setFile(p_file);
-		metadata.setPermissions(getNumericFilePermissions(p_file));
-		metadata.setType(p_file.isDirectory() ? FileType.k_folder : FileType.k_file);
+		metadata.setType(p_attributes.isDirectory() ? FileType.k_folder : FileType.k_file);
+		metadata.setSize(p_attributes.isDirectory() ? 0 : p_attributes.size());
+		
+		if (p_attributes instanceof PosixFileAttributes)
+			metadata.setPermissions((short) permissionsToInt(((PosixFileAttributes) p_attributes).permissions()));
+		else
+			metadata.setPermissions((short) 444); //TODO support file permissions in windows
 					
 		return metadata;
 	}
 
+	/**
+	 * Reads the dates, type, and (where supported) posix permissions of a file in
+	 * one call to the file system
+	 * @param p_path The path of the file
+	 * @return The posix file attributes, or the basic file attributes if the
+	 * file system doesn't support posix
+	 * @throws IOException If the attributes could not be read
+	 */
+	public static BasicFileAttributes readAttributes(Path p_path) throws IOException
+	{
+		try
+		{
+			return Files.readAttributes(p_path, PosixFileAttributes.class);
+		}
+		catch (UnsupportedOperationException e)
+		{
+			return Files.readAttributes(p_path, BasicFileAttributes.class);
+		}
+	}
+
 	/**
 	 * @credit http://stackoverflow.com/questions/20281835/how-to-delete-a-folder-with-files-using-java
 	 * Deletes a directory and its contents
@@ -10,6 +10,8 @@ import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
@@ -292,4 +294,23 @@ public abstract class StandardUtil
 		DateFormat formatter = new SimpleDateFormat("MM/dd/yyyy");
 		return formatter.format(date);
 	}
+
+	/**
+	 * Gets the total number of bytes the current thread has allocated on the heap
+	 * so far. Taking the difference of two calls gives the allocation of the code
+	 * in between (on this thread only).
+	 * @return The number of bytes allocated, or -1 if the jvm can't measure it
+	 */
+	public static long getThreadAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return -1;
+	}
 }
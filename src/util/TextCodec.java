@@ -0,0 +1,308 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Writes byte arrays to files as base64 or hex text, and reads them back, without
+ * building the whole encoded text in memory. Data is encoded in fixed size chunks
+ * which are written through a file channel as they are finished. Large arrays are
+ * encoded several chunks at a time in parallel.
+ */
+public class TextCodec
+{
+	// a multiple of three, so only the last chunk of base64 has padding
+	private static final int CHUNK_SIZE = 3 * 16 * 1024;
+	private static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+	private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Writes data to a file as base64 text (standard alphabet, with padding, no
+	 * line breaks)
+	 * @param p_data The data to encode
+	 * @param p_file The file to write
+	 * @throws IOException If the file could not be written
+	 */
+	public static void writeBase64(byte[] p_data, File p_file) throws IOException
+	{
+		writeEncoded(p_data, p_file, true);
+	}
+
+	/**
+	 * Writes data to a file as uppercase hex text
+	 * @param p_data The data to encode
+	 * @param p_file The file to write
+	 * @throws IOException If the file could not be written
+	 */
+	public static void writeHex(byte[] p_data, File p_file) throws IOException
+	{
+		writeEncoded(p_data, p_file, false);
+	}
+
+	/**
+	 * Reads base64 text from a file. Characters outside the base64 alphabet, such
+	 * as line breaks, are ignored.
+	 * @param p_file The file to read
+	 * @param p_reuse An array to decode into if it is exactly the decoded size, or null
+	 * @return The decoded data
+	 * @throws IOException If the file could not be read or is not valid base64
+	 */
+	public static byte[] readBase64(File p_file, byte[] p_reuse) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(p_file.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			// size the output exactly for well formed text, so it doesn't need trimming
+			ByteBuffer tail = ByteBuffer.allocate(2);
+			channel.read(tail, Math.max(0, size - 2));
+			int padding = 0;
+			for (int i = 0; i < tail.position(); ++i)
+			{
+				if (tail.get(i) == '=')
+					++padding;
+			}
+
+			byte[] data = allocate(checkedLength(((size / 4) * 3) - padding, p_file), p_reuse);
+			int length = 0;
+
+			InputStream in = Base64.getMimeDecoder().wrap(
+							new BufferedInputStream(Channels.newInputStream(channel), CHUNK_SIZE));
+			while (true)
+			{
+				if (length == data.length)
+				{
+					// text without padding can decode to a little more than expected
+					int next = in.read();
+					if (next < 0)
+						break;
+
+					data = Arrays.copyOf(data, Math.max(16, data.length * 2));
+					data[length++] = (byte) next;
+				}
+
+				int read = in.read(data, length, data.length - length);
+				if (read < 0)
+					break;
+
+				length += read;
+			}
+
+			return length == data.length ? data : Arrays.copyOf(data, length);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Invalid base64 text in " + p_file.getName(), e);
+		}
+	}
+
+	/**
+	 * Reads hex text from a file. Either case is accepted and whitespace is ignored.
+	 * @param p_file The file to read
+	 * @param p_reuse An array to decode into if it is exactly the decoded size, or null
+	 * @return The decoded data
+	 * @throws IOException If the file could not be read or is not valid hex
+	 */
+	public static byte[] readHex(File p_file, byte[] p_reuse) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(p_file.toPath(), StandardOpenOption.READ))
+		{
+			byte[] data = allocate(checkedLength(channel.size() / 2, p_file), p_reuse);
+			int length = 0;
+			int high = -1;
+
+			ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+			while (channel.read(chunk) >= 0)
+			{
+				chunk.flip();
+				while (chunk.hasRemaining())
+				{
+					byte c = chunk.get();
+					int nibble = Character.digit(c, 16);
+					if (nibble < 0)
+					{
+						if (Character.isWhitespace(c))
+							continue;
+
+						throw new IOException("Invalid hex character in " + p_file.getName());
+					}
+
+					if (high < 0)
+					{
+						high = nibble;
+					}
+					else
+					{
+						data[length++] = (byte) ((high << 4) | nibble);
+						high = -1;
+					}
+				}
+				chunk.clear();
+			}
+
+			if (high >= 0)
+				throw new IOException("Hex text has an odd number of digits in " + p_file.getName());
+
+			return length == data.length ? data : Arrays.copyOf(data, length);
+		}
+	}
+
+	/**
+	 * Encodes a byte array to hex bytes
+	 * @param p_data The data
+	 * @param p_offset The index to start encoding at
+	 * @param p_length The number of bytes to encode
+	 * @return The uppercase hex characters as ascii bytes
+	 */
+	public static byte[] encodeHex(byte[] p_data, int p_offset, int p_length)
+	{
+		byte[] hex = new byte[p_length * 2];
+		for (int i = 0, h = 0; i < p_length; ++i, h += 2)
+		{
+			int b = p_data[p_offset + i] & 0xFF;
+			hex[h] = HEX_DIGITS[b >> 4];
+			hex[h + 1] = HEX_DIGITS[b & 0x0F];
+		}
+
+		return hex;
+	}
+
+	/**
+	 * Writes data to a file in encoded chunks
+	 * @param p_data The data to encode
+	 * @param p_file The file to write
+	 * @param p_base64 True for base64, false for hex
+	 * @throws IOException If the file could not be written
+	 */
+	private static void writeEncoded(byte[] p_data, File p_file, boolean p_base64) throws IOException
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		int batchSize = p_data.length >= PARALLEL_THRESHOLD ? Math.max(1, cores) : 1;
+
+		try (FileChannel channel = FileChannel.open(p_file.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			int offset = 0;
+			while (offset < p_data.length)
+			{
+				if (batchSize == 1)
+				{
+					int length = Math.min(CHUNK_SIZE, p_data.length - offset);
+					writeFully(channel, encodeChunk(p_data, offset, length, p_base64));
+					offset += length;
+				}
+				else
+				{
+					// encode a batch of chunks at once, but write them in order
+					List<Future<ByteBuffer>> chunks = new ArrayList<Future<ByteBuffer>>(batchSize);
+					for (int i = 0; i < batchSize && offset < p_data.length; ++i)
+					{
+						final int chunkOffset = offset;
+						final int length = Math.min(CHUNK_SIZE, p_data.length - offset);
+						chunks.add(ForkJoinPool.commonPool().submit(
+										() -> encodeChunk(p_data, chunkOffset, length, p_base64)));
+						offset += length;
+					}
+
+					for (Future<ByteBuffer> chunk : chunks)
+						writeFully(channel, getChunk(chunk));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encodes one chunk of data
+	 * @param p_data The data
+	 * @param p_offset The start of the chunk
+	 * @param p_length The length of the chunk
+	 * @param p_base64 True for base64, false for hex
+	 * @return The encoded chunk
+	 */
+	private static ByteBuffer encodeChunk(byte[] p_data, int p_offset, int p_length, boolean p_base64)
+	{
+		if (p_base64)
+			return Base64.getEncoder().encode(ByteBuffer.wrap(p_data, p_offset, p_length));
+		else
+			return ByteBuffer.wrap(encodeHex(p_data, p_offset, p_length));
+	}
+
+	/**
+	 * Waits for a chunk to be encoded
+	 * @param p_chunk The pending chunk
+	 * @return The encoded chunk
+	 * @throws IOException If encoding failed or was interrupted
+	 */
+	private static ByteBuffer getChunk(Future<ByteBuffer> p_chunk) throws IOException
+	{
+		try
+		{
+			return p_chunk.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding text.", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Could not encode text.", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes the whole buffer to the channel
+	 * @param p_channel The channel
+	 * @param p_buffer The buffer
+	 * @throws IOException If the write fails
+	 */
+	private static void writeFully(FileChannel p_channel, ByteBuffer p_buffer) throws IOException
+	{
+		while (p_buffer.hasRemaining())
+			p_channel.write(p_buffer);
+	}
+
+	/**
+	 * Gets an array to decode into
+	 * @param p_length The expected decoded length
+	 * @param p_reuse An array to use if it is exactly that length, or null
+	 * @return The array
+	 */
+	private static byte[] allocate(int p_length, byte[] p_reuse)
+	{
+		if (p_reuse != null && p_reuse.length == p_length)
+			return p_reuse;
+
+		return new byte[p_length];
+	}
+
+	/**
+	 * Checks that a decoded length fits in an array
+	 * @param p_length The length
+	 * @param p_file The file being decoded
+	 * @return The length as an int
+	 * @throws IOException If the length is too large
+	 */
+	private static int checkedLength(long p_length, File p_file) throws IOException
+	{
+		if (p_length > Integer.MAX_VALUE - 8)
+			throw new IOException("Text archive is too large: " + p_file.getName());
+
+		return (int) Math.max(0, p_length);
+	}
+}
@@ -1,12 +1,12 @@
 package util.algorithms;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import config.Constants;
 import logging.LogLevel;
 import logging.Logger;
-import testing.CodeTimer;
 import util.ByteConversion;
 
 
@@ -16,11 +16,16 @@ import util.ByteConversion;
  */
 public class HashRandom
 {
-	private byte[] f_curHash;
+	private static final int HASH_SIZE = 512 / 8;
+	private static final int BATCH_SIZE = 32; // hashes generated at a time
+
+	private byte[] f_hashes;
+	private int f_hashCount;
+	private int f_base;
 	private MessageDigest f_digest;
 	private int f_index = 0;
 	private final int STOP = ((512 / 8) / 2); // half way
-	
+
 	/**
 	 * Constructs a new hash random with a given seed
 	 * @param p_seed The seed as an array of bytes. Can be of any length.
@@ -37,7 +42,8 @@ public class HashRandom
 			Logger.log(LogLevel.k_fatal, "The random number generator failed to initialize.");
 		}
 
-		f_curHash = f_digest.digest(p_seed);
+		f_hashes = new byte[HASH_SIZE * BATCH_SIZE];
+		reseed(p_seed);
 	}
 
 	/**
@@ -58,6 +64,32 @@ public class HashRandom
 		this(ByteConversion.longToBytes(p_seed));
 	}
 
+	/**
+	 * Restarts the sequence from a new seed. This gives the same sequence as
+	 * constructing a new hash random with the seed.
+	 * @param p_seed The seed as an array of bytes. Can be of any length.
+	 */
+	public void reseed(byte[] p_seed)
+	{
+		// only the first hash is made now, in case few numbers are needed
+		f_digest.update(p_seed);
+		digestInto(0);
+
+		f_hashCount = 1;
+		f_base = 0;
+		f_index = 0;
+	}
+
+	/**
+	 * Restarts the sequence from a new seed. This gives the same sequence as
+	 * constructing a new hash random with the seed.
+	 * @param p_seed The seed as a long
+	 */
+	public void reseed(long p_seed)
+	{
+		reseed(ByteConversion.longToBytes(p_seed));
+	}
+
 	/**
 	 * Gets a random short
 	 * @param p_to The max value of the short (non inclusive)
@@ -68,7 +100,8 @@ public class HashRandom
 		if (f_index >= STOP - 1)
 			refresh();
 
-		short next = (short) ((f_curHash[f_index] << 8) | (f_curHash[f_index + 1]));
+		int i = f_base + f_index;
+		short next = (short) ((f_hashes[i] << 8) | (f_hashes[i + 1]));
 		f_index += 2;
 		return (short) Math.abs(next % p_to);
 	}
@@ -78,10 +111,43 @@ public class HashRandom
 	 */
 	private void refresh()
 	{
-		//because of the half way stop, the last half of the hash was 
+		//because of the half way stop, the last half of the hash was
 		//maintained as unknown entropy for the refresh
 		f_index = 0;
-		f_curHash = f_digest.digest(f_curHash);
+		f_base += HASH_SIZE;
+
+		if (f_base == f_hashCount * HASH_SIZE)
+		{
+			// the batch is used up, so hash the next batch all at once,
+			// starting from the last hash of this one
+			int last = f_base - HASH_SIZE;
+			for (int h = 0; h < BATCH_SIZE; ++h)
+			{
+				f_digest.update(f_hashes, last, HASH_SIZE);
+				last = h * HASH_SIZE;
+				digestInto(last);
+			}
+
+			f_hashCount = BATCH_SIZE;
+			f_base = 0;
+		}
+	}
+
+	/**
+	 * Finishes the current digest, storing the hash in the batch
+	 * @param p_offset The offset in the batch to store the hash at
+	 */
+	private void digestInto(int p_offset)
+	{
+		try
+		{
+			f_digest.digest(f_hashes, p_offset, HASH_SIZE);
+		}
+		catch (DigestException e)
+		{
+			Logger.log(LogLevel.k_debug, e, false);
+			Logger.log(LogLevel.k_fatal, "The random number generator failed to refresh.");
+		}
 	}
 
 	/**
@@ -93,105 +159,114 @@ public class HashRandom
 		if (f_index >= STOP)
 			refresh();
 
-		return f_curHash[f_index++];
+		return f_hashes[f_base + f_index++];
 	}
 
 	/**
-	 * Gets a random int
-	 * @param p_to The max value of the int (non inclusive)
-	 * @return A random int value
+	 * Fills part of an array with random bytes. This produces the same bytes as
+	 * calling nextByte() once for each element, without the per call overhead.
+	 * @param p_bytes The array to fill
+	 * @param p_offset The index to start filling at
+	 * @param p_length The number of bytes to fill
 	 */
-	public int nextInt(int p_to)
+	public void nextBytes(byte[] p_bytes, int p_offset, int p_length)
 	{
-		if (p_to == 0)
-			return 0;
-
-		if (f_index >= STOP - 3)
-			refresh();
+		while (p_length > 0)
+		{
+			if (f_index >= STOP)
+				refresh();
 
-		f_index += 4;
+			int count = Math.min(STOP - f_index, p_length);
+			System.arraycopy(f_hashes, f_base + f_index, p_bytes, p_offset, count);
 
-		return Math.abs((f_curHash[f_index] << 24 | (f_curHash[f_index + 1] & 0xFF) << 16
-			| (f_curHash[f_index + 2] & 0xFF) << 8 | (f_curHash[f_index + 3] & 0xFF)) % p_to);
+			f_index += count;
+			p_offset += count;
+			p_length -= count;
+		}
 	}
 
 	/**
-	 * Bonus profiling entry point
+	 * Skips random bytes. This leaves the sequence in the same state as calling
+	 * nextByte() the given number of times.
+	 * @param p_count The number of bytes to skip
 	 */
-	public static void main(String p_args[])
+	public void skipBytes(long p_count)
 	{
-		profileIntIterative();
-		profileIntPreGeneration();
+		while (p_count > 0)
+		{
+			if (f_index >= STOP)
+				refresh();
+
+			int count = (int) Math.min(STOP - f_index, p_count);
+			f_index += count;
+			p_count -= count;
+		}
 	}
 
 	/**
-	 * Bonus profiling function
+	 * Gets a random int
+	 * @param p_to The max value of the int (non inclusive)
+	 * @return A random int value
 	 */
-	private static void profileIntIterative()
+	public int nextInt(int p_to)
 	{
-		int averageImageSize = 6022800;
-		int images = 16;
-		int rotations = averageImageSize * images;
+		if (p_to == 0)
+			return 0;
 
-		CodeTimer ct = new CodeTimer();
-		ct.start();
+		return Math.abs(nextRawInt() % p_to);
+	}
 
-		HashRandom random = new HashRandom("seed");
-		long dump = 0;
-		for (int i = 0; i < rotations; ++i)
+	/**
+	 * Fills part of an array with random ints. This produces the same ints as
+	 * calling nextInt(p_to) once for each element, without the per call overhead.
+	 * @param p_values The array to fill
+	 * @param p_offset The index to start filling at
+	 * @param p_length The number of ints to fill
+	 * @param p_to The max value of the ints (non inclusive)
+	 */
+	public void nextInts(int[] p_values, int p_offset, int p_length, int p_to)
+	{
+		if (p_to == 0)
+		{
+			for (int x = p_offset; x < p_offset + p_length; ++x)
+				p_values[x] = 0;
+		}
+		else
 		{
-			// this number is not important for profiling
-			dump += random.nextInt(averageImageSize);
-			
-			dump += random.nextByte();
+			nextRawInts(p_values, p_offset, p_length);
+			for (int x = p_offset; x < p_offset + p_length; ++x)
+				p_values[x] = Math.abs(p_values[x] % p_to);
 		}
+	}
 
-		ct.end();
-		System.out.println("Dump: " + dump);
-		System.out.println(rotations + " rotations in " + ct.getElapsedTime()
-			+ " milliseconds.");
-		System.out.println(
-			"(~" + (ct.getElapsedTime() / images) + " milliseconds/image)");
+	/**
+	 * Fills part of an array with unbounded random ints. Reducing each one with
+	 * Math.abs(value % p_to) gives the same ints as calling nextInt(p_to) for
+	 * each element, for any nonzero bounds. This allows each element to have a
+	 * different bound.
+	 * @param p_values The array to fill
+	 * @param p_offset The index to start filling at
+	 * @param p_length The number of ints to fill
+	 */
+	public void nextRawInts(int[] p_values, int p_offset, int p_length)
+	{
+		for (int x = p_offset; x < p_offset + p_length; ++x)
+			p_values[x] = nextRawInt();
 	}
 
 	/**
-	 * Bonus profiling function
+	 * Gets the next four bytes of the sequence as an int
+	 * @return The unbounded int
 	 */
-	private static void profileIntPreGeneration()
+	private int nextRawInt()
 	{
-		int averageImageSize = 6022800;
-		int maxApplicationSize = 8000000;
-		
-		// the number of images close to iterative profiling
-		int images = 100000000 / averageImageSize; 
-
-		CodeTimer ct = new CodeTimer();
-		ct.start();
-
-		HashRandom random = new HashRandom("seed");
-		int[] ibuffer = new int[maxApplicationSize];
-		byte[] bbuffer = new byte[maxApplicationSize];
-		for (int i = 0; i < maxApplicationSize; ++i)
-		{
-			ibuffer[i] = random.nextInt(averageImageSize);
-			bbuffer[i] = random.nextByte();
-		}
+		if (f_index >= STOP - 3)
+			refresh();
 
-		long dump = 0;
-		for (int x = 0; x < images; ++x)
-		{
-			for (int y = 0; y < averageImageSize; ++y)
-			{
-				dump += ibuffer[y];
-				dump += bbuffer[y];
-			}
-		}
+		f_index += 4;
 
-		ct.end();
-		System.out.println("Dump: " + dump);
-		System.out.println("Generated " + images + " images in " + ct.getElapsedTime()
-			+ " milliseconds.");
-		System.out.println(
-			"(~" + (ct.getElapsedTime() / images) + " milliseconds/image)");
+		int i = f_base + f_index;
+		return f_hashes[i] << 24 | (f_hashes[i + 1] & 0xFF) << 16
+			| (f_hashes[i + 2] & 0xFF) << 8 | (f_hashes[i + 3] & 0xFF);
 	}
 }
@@ -2,8 +2,11 @@ package util.algorithms;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.WritableRaster;
 
 import util.ByteConversion;
@@ -95,6 +98,123 @@ public class ImageUtil
 						| ((p_green << 8) & 0x0000FF00) | (p_blue & 0x000000FF);
 	}
 	
+	/**
+	 * Gets the backing array of an image of type TYPE_INT_RGB
+	 * @param p_img The image
+	 * @return The array of rgb ints, one per pixel in row major order
+	 */
+	public static int[] getIntRGBData(BufferedImage p_img)
+	{
+		return ((DataBufferInt) p_img.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Converts an image to TYPE_INT_RGB. The layouts ImageIO commonly produces for
+	 * jpeg and png files are copied directly from their rasters. Anything else is
+	 * redrawn, which flattens any transparency onto black.
+	 * @param p_img The image to convert
+	 * @return An image of type TYPE_INT_RGB. This is the input image if it already
+	 * had that type.
+	 */
+	public static BufferedImage toIntRGB(BufferedImage p_img)
+	{
+		int type = p_img.getType();
+		if (type == BufferedImage.TYPE_INT_RGB)
+			return p_img;
+
+		int width = p_img.getWidth();
+		int height = p_img.getHeight();
+		BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] rgbs = getIntRGBData(copy);
+
+		if (type == BufferedImage.TYPE_3BYTE_BGR && isPacked(p_img, 3))
+		{
+			byte[] bgr = ((DataBufferByte) p_img.getRaster().getDataBuffer()).getData();
+			for (int i = 0, b = 0; i < rgbs.length; ++i, b += 3)
+				rgbs[i] = toRGB(bgr[b + 2], bgr[b + 1], bgr[b]);
+		}
+		else if (type == BufferedImage.TYPE_INT_BGR && isPacked(p_img, 1))
+		{
+			int[] bgrs = ((DataBufferInt) p_img.getRaster().getDataBuffer()).getData();
+			for (int i = 0; i < rgbs.length; ++i)
+			{
+				int bgr = bgrs[i];
+				rgbs[i] = 0xFF000000 | ((bgr & 0xFF) << 16) | (bgr & 0xFF00) | ((bgr >> 16) & 0xFF);
+			}
+		}
+		else if (type == BufferedImage.TYPE_INT_ARGB && isPacked(p_img, 1)
+						&& isOpaque(((DataBufferInt) p_img.getRaster().getDataBuffer()).getData()))
+		{
+			int[] argbs = ((DataBufferInt) p_img.getRaster().getDataBuffer()).getData();
+			System.arraycopy(argbs, 0, rgbs, 0, rgbs.length);
+		}
+		else if (type == BufferedImage.TYPE_4BYTE_ABGR && isPacked(p_img, 4)
+						&& isOpaque(((DataBufferByte) p_img.getRaster().getDataBuffer()).getData()))
+		{
+			byte[] abgr = ((DataBufferByte) p_img.getRaster().getDataBuffer()).getData();
+			for (int i = 0, b = 0; i < rgbs.length; ++i, b += 4)
+				rgbs[i] = toRGB(abgr[b + 3], abgr[b + 2], abgr[b + 1]);
+		}
+		else
+		{
+			// @credit http://stackoverflow.com/questions/26918675/removing-transparency-in-png-bufferedimage
+			Graphics2D g2d = copy.createGraphics();
+			g2d.drawImage(p_img, 0, 0, null);
+			g2d.dispose();
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Tells if the raster of an image covers its whole data buffer with no
+	 * padding, so the buffer can be walked directly
+	 * @param p_img The image
+	 * @param p_elementsPerPixel The number of buffer elements in each pixel
+	 * @return If the raster is tightly packed
+	 */
+	private static boolean isPacked(BufferedImage p_img, int p_elementsPerPixel)
+	{
+		WritableRaster raster = p_img.getRaster();
+		return raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+						&& raster.getSampleModelTranslateY() == 0
+						&& raster.getDataBuffer().getNumBanks() == 1
+						&& raster.getDataBuffer().getSize() == p_img.getWidth()
+										* p_img.getHeight() * p_elementsPerPixel;
+	}
+
+	/**
+	 * Tells if every pixel in argb data is fully opaque
+	 * @param p_argbs The argb ints
+	 * @return If every alpha is 255
+	 */
+	private static boolean isOpaque(int[] p_argbs)
+	{
+		for (int argb : p_argbs)
+		{
+			if ((argb >>> 24) != 0xFF)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tells if every pixel in abgr byte data is fully opaque
+	 * @param p_abgr The abgr bytes
+	 * @return If every alpha is 255
+	 */
+	private static boolean isOpaque(byte[] p_abgr)
+	{
+		for (int i = 0; i < p_abgr.length; i += 4)
+		{
+			if (p_abgr[i] != (byte) 0xFF)
+				return false;
+		}
+
+		return true;
+	}
+
 	/**
 	 * Compares images to see if each pixel has the same colors. Used for testing purposes only.
 	 * @param p_img1 The first image
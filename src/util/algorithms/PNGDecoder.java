@@ -0,0 +1,597 @@
+package util.algorithms;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import logging.LogLevel;
+import logging.Logger;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Reads png files into an array of rgb bytes. Non-interlaced 8 bit rgb and rgba
+ * files are decoded directly (alpha is dropped). If the file has the segment layout
+ * chunk written by PNGEncoder, its segments are inflated and unfiltered in
+ * parallel. Any other png (or anything this decoder cannot make sense of) is read
+ * through ImageIO.
+ *
+ * A decoder can read many files. The buffers for the file contents, the filtered
+ * rows and the rgb bytes are kept between files, so reading a series of images of
+ * the same size allocates nothing large after the first one. Because of this, the
+ * array from getRGB() is only valid until the next file is read.
+ */
+public class PNGDecoder
+{
+	private int f_width;
+	private int f_height;
+	private byte[] f_rgb;
+	private byte[] f_fileBuffer;
+	private byte[] f_filtered;
+
+	/**
+	 * Constructs a png decoder which has not read a file yet
+	 */
+	public PNGDecoder()
+	{
+	}
+
+	/**
+	 * Constructs a png decoder and reads a file
+	 * @param p_file The file to read
+	 * @throws IOException If the file could not be read as an image
+	 */
+	public PNGDecoder(File p_file) throws IOException
+	{
+		read(p_file);
+	}
+
+	/**
+	 * Reads and decodes a png file, replacing the previously read image
+	 * @param p_file The file to read
+	 * @throws IOException If the file could not be read as an image
+	 */
+	public void read(File p_file) throws IOException
+	{
+		int length = readFile(p_file);
+
+		boolean decoded = false;
+		try
+		{
+			decoded = decode(f_fileBuffer, length);
+		}
+		catch (IOException e)
+		{
+			// ImageIO may still be more forgiving
+			Logger.log(LogLevel.k_debug, e, false);
+		}
+
+		if (!decoded)
+		{
+			Logger.log(LogLevel.k_debug, "Reading image with ImageIO: " + p_file.getName());
+			decodeWithImageIO(p_file);
+		}
+	}
+
+	/**
+	 * @return The width of the image
+	 */
+	public int getWidth()
+	{
+		return f_width;
+	}
+
+	/**
+	 * @return The height of the image
+	 */
+	public int getHeight()
+	{
+		return f_height;
+	}
+
+	/**
+	 * Gets the colors of the image, three bytes per pixel in red, green, blue order,
+	 * with pixels in row major order
+	 * @return The rgb bytes
+	 */
+	public byte[] getRGB()
+	{
+		return f_rgb;
+	}
+
+	/**
+	 * Creates an image of type TYPE_INT_RGB with the decoded colors
+	 * @return The image
+	 */
+	public BufferedImage toIntRGBImage()
+	{
+		return toIntRGBImage(null);
+	}
+
+	/**
+	 * Copies the decoded colors into an image of type TYPE_INT_RGB
+	 * @param p_reuse An image to copy into if it is a TYPE_INT_RGB image of the
+	 * same size, or null
+	 * @return The given image if it could be reused, otherwise a new image
+	 */
+	public BufferedImage toIntRGBImage(BufferedImage p_reuse)
+	{
+		BufferedImage img = p_reuse;
+		if (img == null || img.getType() != BufferedImage.TYPE_INT_RGB
+						|| img.getWidth() != f_width || img.getHeight() != f_height)
+			img = new BufferedImage(f_width, f_height, BufferedImage.TYPE_INT_RGB);
+
+		int[] rgbs = ImageUtil.getIntRGBData(img);
+		for (int i = 0, b = 0; i < rgbs.length; ++i, b += 3)
+			rgbs[i] = ImageUtil.toRGB(f_rgb[b], f_rgb[b + 1], f_rgb[b + 2]);
+
+		return img;
+	}
+
+	/**
+	 * Reads the image through ImageIO
+	 * @param p_file The file to read
+	 * @throws IOException If the file could not be read as an image
+	 */
+	private void decodeWithImageIO(File p_file) throws IOException
+	{
+		BufferedImage img = ImageIO.read(p_file);
+		if (img == null)
+			throw new IOException("Not a readable image file: " + p_file.getName());
+
+		f_width = img.getWidth();
+		f_height = img.getHeight();
+
+		int[] rgbs = img.getRGB(0, 0, f_width, f_height, null, 0, f_width);
+		allocateRGB();
+		for (int i = 0, b = 0; i < rgbs.length; ++i, b += 3)
+		{
+			f_rgb[b] = ImageUtil.getRed(rgbs[i]);
+			f_rgb[b + 1] = ImageUtil.getGreen(rgbs[i]);
+			f_rgb[b + 2] = ImageUtil.getBlue(rgbs[i]);
+		}
+	}
+
+	/**
+	 * Reads the whole file into the file buffer, growing it if needed
+	 * @param p_file The file to read
+	 * @return The length of the file
+	 * @throws IOException If the file could not be read
+	 */
+	private int readFile(File p_file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(p_file.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE - 8)
+				throw new IOException("Image file is too large: " + p_file.getName());
+
+			if (f_fileBuffer == null || f_fileBuffer.length < size)
+				f_fileBuffer = new byte[(int) size];
+
+			ByteBuffer buffer = ByteBuffer.wrap(f_fileBuffer, 0, (int) size);
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) < 0)
+					break;
+			}
+
+			return buffer.position();
+		}
+	}
+
+	/**
+	 * Makes sure the rgb array is exactly the size of the current image, keeping
+	 * the previous one if it is
+	 */
+	private void allocateRGB()
+	{
+		int length = f_width * f_height * 3;
+		if (f_rgb == null || f_rgb.length != length)
+			f_rgb = new byte[length];
+	}
+
+	/**
+	 * Decodes the png file directly
+	 * @param p_file The file contents
+	 * @param p_length The length of the file contents
+	 * @return False if the png uses features this decoder does not support
+	 * @throws IOException If the png is corrupt
+	 */
+	private boolean decode(byte[] p_file, int p_length) throws IOException
+	{
+		if (p_length < PNGEncoder.SIGNATURE.length)
+			return false;
+		for (int i = 0; i < PNGEncoder.SIGNATURE.length; ++i)
+		{
+			if (p_file[i] != PNGEncoder.SIGNATURE[i])
+				return false;
+		}
+
+		int channels = 0;
+		int[] segmentRows = null;
+		int[] segmentLengths = null;
+		List<int[]> idatRanges = new ArrayList<int[]>();
+		int idatLength = 0;
+
+		int pos = PNGEncoder.SIGNATURE.length;
+		boolean ended = false;
+		while (!ended)
+		{
+			if (pos + 8 > p_length)
+				throw new IOException("Png file ended unexpectedly.");
+
+			int length = readInt(p_file, pos);
+			String type = new String(p_file, pos + 4, 4, StandardCharsets.US_ASCII);
+			int data = pos + 8;
+			if (length < 0 || data + length + 4 > p_length)
+				throw new IOException("Png chunk extends past the end of the file.");
+
+			if (type.equals("IHDR"))
+			{
+				f_width = readInt(p_file, data);
+				f_height = readInt(p_file, data + 4);
+				int bitDepth = p_file[data + 8];
+				int colorType = p_file[data + 9];
+				int interlace = p_file[data + 12];
+
+				if (bitDepth != 8 || interlace != 0 || p_file[data + 10] != 0
+								|| p_file[data + 11] != 0)
+					return false;
+
+				if (colorType == 2)
+					channels = 3;
+				else if (colorType == 6)
+					channels = 4;
+				else
+					return false;
+
+				if (f_width <= 0 || f_height <= 0
+								|| (long) f_height * (1 + ((long) f_width * channels)) > Integer.MAX_VALUE - 8)
+					return false;
+			}
+			else if (type.equals(PNGEncoder.SEGMENT_CHUNK_TYPE) && length >= 4)
+			{
+				int count = readInt(p_file, data);
+				if (count > 0 && length == 4 + (count * 8))
+				{
+					segmentRows = new int[count];
+					segmentLengths = new int[count];
+					for (int i = 0; i < count; ++i)
+					{
+						segmentRows[i] = readInt(p_file, data + 4 + (i * 8));
+						segmentLengths[i] = readInt(p_file, data + 8 + (i * 8));
+					}
+				}
+			}
+			else if (type.equals("IDAT"))
+			{
+				idatRanges.add(new int[] {data, length});
+				idatLength += length;
+			}
+			else if (type.equals("IEND"))
+			{
+				ended = true;
+			}
+
+			pos = data + length + 4;
+		}
+
+		if (channels == 0 || idatLength < 2)
+			return false;
+
+		// join the image data chunks
+		byte[] idat;
+		int idatOffset;
+		if (idatRanges.size() == 1)
+		{
+			idat = p_file;
+			idatOffset = idatRanges.get(0)[0];
+		}
+		else
+		{
+			idat = new byte[idatLength];
+			idatOffset = 0;
+			int offset = 0;
+			for (int[] range : idatRanges)
+			{
+				System.arraycopy(p_file, range[0], idat, offset, range[1]);
+				offset += range[1];
+			}
+		}
+
+		int rowLength = 1 + (f_width * channels);
+		if (f_filtered == null || f_filtered.length < f_height * rowLength)
+			f_filtered = new byte[f_height * rowLength];
+		byte[] filtered = f_filtered;
+
+		if (!isSegmentLayoutValid(segmentRows, segmentLengths, idat, idatOffset, idatLength))
+		{
+			segmentRows = new int[] {f_height};
+			segmentLengths = null;
+		}
+
+		// inflate and unfilter each segment
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(segmentRows.length);
+		int startRow = 0;
+		int compressedOffset = idatOffset + 2;
+		for (int i = 0; i < segmentRows.length; ++i)
+		{
+			SegmentTask task;
+			if (segmentLengths == null)
+				task = new SegmentTask(idat, idatOffset, idatLength, true, filtered,
+								startRow, segmentRows[i], rowLength, channels);
+			else
+				task = new SegmentTask(idat, compressedOffset, segmentLengths[i], false, filtered,
+								startRow, segmentRows[i], rowLength, channels);
+
+			if (segmentRows.length == 1)
+				runTask(task);
+			else
+				futures.add(ForkJoinPool.commonPool().submit(task));
+
+			startRow += segmentRows[i];
+			if (segmentLengths != null)
+				compressedOffset += segmentLengths[i];
+		}
+
+		try
+		{
+			for (Future<Void> future : futures)
+				future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding png.", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Could not decode png.", e.getCause());
+		}
+
+		// strip the filter bytes (and alpha) into the output array
+		allocateRGB();
+		int out = 0;
+		for (int y = 0; y < f_height; ++y)
+		{
+			int in = (y * rowLength) + 1;
+			if (channels == 3)
+			{
+				System.arraycopy(filtered, in, f_rgb, out, f_width * 3);
+				out += f_width * 3;
+			}
+			else
+			{
+				for (int x = 0; x < f_width; ++x, in += 4, out += 3)
+				{
+					f_rgb[out] = filtered[in];
+					f_rgb[out + 1] = filtered[in + 1];
+					f_rgb[out + 2] = filtered[in + 2];
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks that a segment layout chunk matches the image and its data
+	 * @param p_rows The rows in each segment, or null if there was no layout chunk
+	 * @param p_lengths The compressed length of each segment
+	 * @param p_idat The image data
+	 * @param p_offset The offset of the image data
+	 * @param p_length The length of the image data
+	 * @return If the segments can be decoded independently
+	 */
+	private boolean isSegmentLayoutValid(int[] p_rows, int[] p_lengths, byte[] p_idat,
+					int p_offset, int p_length)
+	{
+		if (p_rows == null)
+			return false;
+
+		// the zlib header must not ask for a preset dictionary
+		if ((p_idat[p_offset] & 0x0F) != 8 || (p_idat[p_offset + 1] & 0x20) != 0)
+			return false;
+
+		long rows = 0;
+		long length = 0;
+		for (int i = 0; i < p_rows.length; ++i)
+		{
+			if (p_rows[i] <= 0 || p_lengths[i] < 0)
+				return false;
+
+			rows += p_rows[i];
+			length += p_lengths[i];
+		}
+
+		// two bytes of zlib header and four bytes of checksum surround the segments
+		return rows == f_height && length + 6 == p_length;
+	}
+
+	/**
+	 * Runs a segment task on the current thread
+	 * @param p_task The task
+	 * @throws IOException If the segment could not be decoded
+	 */
+	private static void runTask(SegmentTask p_task) throws IOException
+	{
+		try
+		{
+			p_task.call();
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Could not decode png.", e);
+		}
+	}
+
+	/**
+	 * Reads a big endian int
+	 * @param p_bytes The array to read from
+	 * @param p_offset The offset of the int
+	 * @return The int
+	 */
+	private static int readInt(byte[] p_bytes, int p_offset)
+	{
+		return ((p_bytes[p_offset] & 0xFF) << 24) | ((p_bytes[p_offset + 1] & 0xFF) << 16)
+						| ((p_bytes[p_offset + 2] & 0xFF) << 8) | (p_bytes[p_offset + 3] & 0xFF);
+	}
+
+	/**
+	 * Inflates a run of rows and reverses their filters in place
+	 */
+	private static class SegmentTask implements Callable<Void>
+	{
+		private byte[] f_input;
+		private int f_inputOffset;
+		private int f_inputLength;
+		private boolean f_zlibWrapped;
+		private byte[] f_output;
+		private int f_startRow;
+		private int f_rowCount;
+		private int f_rowLength;
+		private int f_bpp;
+
+		/**
+		 * Constructs a segment task
+		 * @param p_input The compressed data
+		 * @param p_inputOffset The offset of this segment's compressed data
+		 * @param p_inputLength The length of this segment's compressed data
+		 * @param p_zlibWrapped If the data includes the zlib header and checksum
+		 * @param p_output The array of filtered rows for the whole image
+		 * @param p_startRow The first row of the segment
+		 * @param p_rowCount The number of rows in the segment
+		 * @param p_rowLength The length of a row including its filter byte
+		 * @param p_bpp The number of bytes per pixel
+		 */
+		public SegmentTask(byte[] p_input, int p_inputOffset, int p_inputLength,
+						boolean p_zlibWrapped, byte[] p_output, int p_startRow, int p_rowCount,
+						int p_rowLength, int p_bpp)
+		{
+			f_input = p_input;
+			f_inputOffset = p_inputOffset;
+			f_inputLength = p_inputLength;
+			f_zlibWrapped = p_zlibWrapped;
+			f_output = p_output;
+			f_startRow = p_startRow;
+			f_rowCount = p_rowCount;
+			f_rowLength = p_rowLength;
+			f_bpp = p_bpp;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Void call() throws IOException
+		{
+			int start = f_startRow * f_rowLength;
+			int end = start + (f_rowCount * f_rowLength);
+
+			Inflater inflater = new Inflater(!f_zlibWrapped);
+			try
+			{
+				inflater.setInput(f_input, f_inputOffset, f_inputLength);
+
+				int pos = start;
+				while (pos < end)
+				{
+					int len = inflater.inflate(f_output, pos, end - pos);
+					if (len == 0 && (inflater.finished() || inflater.needsInput()
+									|| inflater.needsDictionary()))
+						throw new IOException("Png image data ended unexpectedly.");
+
+					pos += len;
+				}
+			}
+			catch (DataFormatException e)
+			{
+				throw new IOException("Png image data is corrupt.", e);
+			}
+			finally
+			{
+				inflater.end();
+			}
+
+			for (int r = 0; r < f_rowCount; ++r)
+				unfilter(start + (r * f_rowLength), r == 0 && f_startRow > 0);
+
+			return null;
+		}
+
+		/**
+		 * Reverses the filter on a row
+		 * @param p_row The offset of the row's filter byte
+		 * @param p_segmentStart If this row starts a segment after the first, in
+		 * which case the row above may still be filtered and must not be used
+		 * @throws IOException If the row's filter cannot be reversed
+		 */
+		private void unfilter(int p_row, boolean p_segmentStart) throws IOException
+		{
+			byte[] data = f_output;
+			int type = data[p_row];
+			int first = p_row + 1;
+			int last = p_row + f_rowLength;
+			int prior = first - f_rowLength;
+			boolean hasPrior = prior > 0;
+
+			if (p_segmentStart && type != PNGEncoder.FILTER_NONE && type != PNGEncoder.FILTER_SUB)
+				throw new IOException("Png segment does not start with an independent row.");
+
+			switch (type)
+			{
+				case PNGEncoder.FILTER_NONE:
+					break;
+				case PNGEncoder.FILTER_SUB:
+					for (int i = first + f_bpp; i < last; ++i)
+						data[i] += data[i - f_bpp];
+					break;
+				case PNGEncoder.FILTER_UP:
+					if (hasPrior)
+					{
+						for (int i = first; i < last; ++i)
+							data[i] += data[i - f_rowLength];
+					}
+					break;
+				case PNGEncoder.FILTER_AVERAGE:
+					for (int i = first; i < last; ++i)
+					{
+						int left = i - first < f_bpp ? 0 : data[i - f_bpp] & 0xFF;
+						int up = hasPrior ? data[i - f_rowLength] & 0xFF : 0;
+						data[i] += (left + up) >> 1;
+					}
+					break;
+				case PNGEncoder.FILTER_PAETH:
+					for (int i = first; i < last; ++i)
+					{
+						boolean hasLeft = i - first >= f_bpp;
+						int left = hasLeft ? data[i - f_bpp] & 0xFF : 0;
+						int up = hasPrior ? data[i - f_rowLength] & 0xFF : 0;
+						int upLeft = hasLeft && hasPrior ? data[i - f_rowLength - f_bpp] & 0xFF : 0;
+						data[i] += PNGEncoder.paeth(left, up, upLeft);
+					}
+					break;
+				default:
+					throw new IOException("Unknown png filter type: " + type);
+			}
+		}
+	}
+}
@@ -0,0 +1,564 @@
+package util.algorithms;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * Writes 8 bit rgb png files. The rows of the image are split into segments which
+ * are filtered and deflated independently on separate threads. The segments are
+ * joined into one standard zlib stream, so any png reader can read the output.
+ * The segment layout is recorded in a private ancillary chunk so that a reader
+ * which understands it can inflate the segments in parallel as well.
+ */
+public class PNGEncoder
+{
+	public static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+	public static final String SEGMENT_CHUNK_TYPE = "imSG";
+	public static final int BYTES_PER_PIXEL = 3;
+
+	public static final int FILTER_NONE = 0;
+	public static final int FILTER_SUB = 1;
+	public static final int FILTER_UP = 2;
+	public static final int FILTER_AVERAGE = 3;
+	public static final int FILTER_PAETH = 4;
+
+	public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+	public static final PNGFilterStrategy DEFAULT_FILTER_STRATEGY = PNGFilterStrategy.k_adaptive;
+
+	private static final int MIN_SEGMENT_BYTES = 256 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private int f_compressionLevel;
+	private PNGFilterStrategy f_strategy;
+
+	/**
+	 * Constructs a png encoder
+	 * @param p_compressionLevel The deflate compression level [0, 9]
+	 * @param p_strategy How to choose the filter for each row
+	 */
+	public PNGEncoder(int p_compressionLevel, PNGFilterStrategy p_strategy)
+	{
+		f_compressionLevel = p_compressionLevel;
+		f_strategy = p_strategy;
+	}
+
+	/**
+	 * Constructs a png encoder from parameter values. Missing or invalid values
+	 * (as with algorithms saved before these parameters existed) use the defaults.
+	 * @param p_compressionLevel The compression level string, or null
+	 * @param p_strategy The filter strategy string, or null
+	 * @return The png encoder
+	 */
+	public static PNGEncoder create(String p_compressionLevel, String p_strategy)
+	{
+		int level = DEFAULT_COMPRESSION_LEVEL;
+		if (p_compressionLevel != null)
+		{
+			try
+			{
+				level = Math.max(0, Math.min(9, Integer.parseInt(p_compressionLevel)));
+			}
+			catch (NumberFormatException e)
+			{
+				// use the default
+			}
+		}
+
+		PNGFilterStrategy strategy = null;
+		if (p_strategy != null)
+			strategy = PNGFilterStrategy.parseStrategy(p_strategy);
+
+		return new PNGEncoder(level, strategy == null ? DEFAULT_FILTER_STRATEGY : strategy);
+	}
+
+	/**
+	 * Writes an image to a png file
+	 * @param p_img The image to write
+	 * @param p_file The file to write to
+	 * @throws IOException If the file could not be written
+	 */
+	public void write(BufferedImage p_img, File p_file) throws IOException
+	{
+		int width = p_img.getWidth();
+		int height = p_img.getHeight();
+		int rowLength = 1 + (width * BYTES_PER_PIXEL);
+
+		// pick enough segments to keep every core busy, but not so many
+		// that each one is too small to compress well
+		int cores = Runtime.getRuntime().availableProcessors();
+		long rawLength = (long) rowLength * height;
+		int segmentCount = (int) Math.max(1, Math.min(Math.min(cores, height),
+						rawLength / MIN_SEGMENT_BYTES));
+
+		List<Future<Segment>> futures = new ArrayList<Future<Segment>>(segmentCount);
+		int startRow = 0;
+		for (int i = 0; i < segmentCount; ++i)
+		{
+			int rows = (height / segmentCount) + (i < height % segmentCount ? 1 : 0);
+			Segment segment = new Segment(p_img, startRow, rows, i == segmentCount - 1);
+			futures.add(ForkJoinPool.commonPool().submit(segment));
+			startRow += rows;
+		}
+
+		List<Segment> segments = new ArrayList<Segment>(segmentCount);
+		try
+		{
+			for (Future<Segment> future : futures)
+				segments.add(future.get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding png.", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Could not encode png.", e.getCause());
+		}
+
+		// the checksum of the whole stream is combined from the segment checksums
+		long adler = 1;
+		for (Segment segment : segments)
+			adler = combineAdler32(adler, segment.getAdler(), segment.getRawLength());
+
+		try (DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(p_file), BUFFER_SIZE)))
+		{
+			out.write(SIGNATURE);
+
+			ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+			DataOutputStream headerData = new DataOutputStream(header);
+			headerData.writeInt(width);
+			headerData.writeInt(height);
+			headerData.writeByte(8); // bit depth
+			headerData.writeByte(2); // color type: rgb
+			headerData.writeByte(0); // compression method: deflate
+			headerData.writeByte(0); // filter method: adaptive
+			headerData.writeByte(0); // interlace method: none
+			writeChunk(out, "IHDR", header.toByteArray());
+
+			ByteArrayOutputStream layout = new ByteArrayOutputStream(4 + (segmentCount * 8));
+			DataOutputStream layoutData = new DataOutputStream(layout);
+			layoutData.writeInt(segmentCount);
+			for (Segment segment : segments)
+			{
+				layoutData.writeInt(segment.getRowCount());
+				layoutData.writeInt(segment.getCompressed().size());
+			}
+			writeChunk(out, SEGMENT_CHUNK_TYPE, layout.toByteArray());
+
+			for (int i = 0; i < segmentCount; ++i)
+			{
+				ByteArrayOutputStream data = segments.get(i).getCompressed();
+				if (i == 0)
+					data = prepend(zlibHeader(), data);
+				if (i == segmentCount - 1)
+					data.write(new byte[] {(byte) (adler >> 24), (byte) (adler >> 16),
+									(byte) (adler >> 8), (byte) adler});
+
+				writeChunk(out, "IDAT", data.toByteArray());
+			}
+
+			writeChunk(out, "IEND", new byte[0]);
+		}
+	}
+
+	/**
+	 * Creates the two byte zlib header to match the compression level
+	 * @return The zlib header
+	 */
+	private byte[] zlibHeader()
+	{
+		int cmf = 0x78; // deflate, 32k window
+		int flevel;
+		if (f_compressionLevel < 2)
+			flevel = 0;
+		else if (f_compressionLevel < 6)
+			flevel = 1;
+		else if (f_compressionLevel == 6)
+			flevel = 2;
+		else
+			flevel = 3;
+
+		int flg = flevel << 6;
+		flg += (31 - (((cmf << 8) + flg) % 31)) % 31;
+
+		return new byte[] {(byte) cmf, (byte) flg};
+	}
+
+	/**
+	 * Creates a new stream which starts with the given bytes followed by the
+	 * contents of the given stream
+	 * @param p_start The bytes to start with
+	 * @param p_rest The stream to follow them
+	 * @return The new stream
+	 */
+	private static ByteArrayOutputStream prepend(byte[] p_start, ByteArrayOutputStream p_rest)
+	{
+		ByteArrayOutputStream joined = new ByteArrayOutputStream(p_start.length + p_rest.size() + 4);
+		joined.write(p_start, 0, p_start.length);
+		joined.write(p_rest.toByteArray(), 0, p_rest.size());
+		return joined;
+	}
+
+	/**
+	 * Writes a png chunk
+	 * @param p_out The stream to write to
+	 * @param p_type The four character chunk type
+	 * @param p_data The chunk data
+	 * @throws IOException If the chunk could not be written
+	 */
+	private static void writeChunk(DataOutputStream p_out, String p_type, byte[] p_data)
+					throws IOException
+	{
+		byte[] type = p_type.getBytes(StandardCharsets.US_ASCII);
+
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(p_data);
+
+		p_out.writeInt(p_data.length);
+		p_out.write(type);
+		p_out.write(p_data);
+		p_out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Combines the adler-32 checksums of two adjacent pieces of data into the
+	 * checksum of the whole. This is the same calculation zlib uses.
+	 * @param p_adler1 The checksum of the first piece
+	 * @param p_adler2 The checksum of the second piece
+	 * @param p_length2 The length of the second piece
+	 * @return The checksum of both pieces together
+	 */
+	public static long combineAdler32(long p_adler1, long p_adler2, long p_length2)
+	{
+		final long base = 65521;
+
+		long rem = p_length2 % base;
+		long sum1 = p_adler1 & 0xFFFF;
+		long sum2 = (rem * sum1) % base;
+		sum1 += (p_adler2 & 0xFFFF) + base - 1;
+		sum2 += ((p_adler1 >> 16) & 0xFFFF) + ((p_adler2 >> 16) & 0xFFFF) + base - rem;
+
+		if (sum1 >= base)
+			sum1 -= base;
+		if (sum1 >= base)
+			sum1 -= base;
+		if (sum2 >= (base << 1))
+			sum2 -= (base << 1);
+		if (sum2 >= base)
+			sum2 -= base;
+
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Predicts a byte from its neighbors as defined by the png paeth filter
+	 * @param p_left The byte to the left
+	 * @param p_up The byte above
+	 * @param p_upLeft The byte above and to the left
+	 * @return The predicted byte stored as an int [0, 255]
+	 */
+	public static int paeth(int p_left, int p_up, int p_upLeft)
+	{
+		int p = p_left + p_up - p_upLeft;
+		int pa = Math.abs(p - p_left);
+		int pb = Math.abs(p - p_up);
+		int pc = Math.abs(p - p_upLeft);
+
+		if (pa <= pb && pa <= pc)
+			return p_left;
+		else if (pb <= pc)
+			return p_up;
+		else
+			return p_upLeft;
+	}
+
+	/**
+	 * A run of rows which is filtered and deflated on its own. The first row of a
+	 * segment only uses filters which do not look at the row above, so a reader
+	 * can also reconstruct each segment on its own.
+	 */
+	private class Segment implements Callable<Segment>
+	{
+		private BufferedImage f_img;
+		private int f_startRow;
+		private int f_rowCount;
+		private boolean f_last;
+		private ByteArrayOutputStream f_compressed;
+		private long f_adler;
+
+		/**
+		 * Constructs a segment
+		 * @param p_img The image being encoded
+		 * @param p_startRow The first row in this segment
+		 * @param p_rowCount The number of rows in this segment
+		 * @param p_last If this is the last segment in the image
+		 */
+		public Segment(BufferedImage p_img, int p_startRow, int p_rowCount, boolean p_last)
+		{
+			f_img = p_img;
+			f_startRow = p_startRow;
+			f_rowCount = p_rowCount;
+			f_last = p_last;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Segment call() throws Exception
+		{
+			int width = f_img.getWidth();
+			int stride = width * BYTES_PER_PIXEL;
+
+			byte[] prior = new byte[stride];
+			byte[] current = new byte[stride];
+			byte[][] filtered = new byte[FILTER_PAETH + 1][1 + stride];
+			int[] argbs = new int[width];
+
+			Deflater deflater = new Deflater(f_compressionLevel, true);
+			Adler32 adler = new Adler32();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			f_compressed = new ByteArrayOutputStream(
+							(int) Math.min(Integer.MAX_VALUE - 8, (long) f_rowCount * (stride + 1) / 2));
+
+			try
+			{
+				for (int r = 0; r < f_rowCount; ++r)
+				{
+					loadRow(f_startRow + r, current, argbs);
+
+					byte[] row = filterRow(current, r == 0 ? null : prior, filtered);
+					adler.update(row);
+
+					deflater.setInput(row);
+					while (!deflater.needsInput())
+					{
+						int len = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+						f_compressed.write(buffer, 0, len);
+					}
+
+					byte[] temp = prior;
+					prior = current;
+					current = temp;
+				}
+
+				if (f_last)
+				{
+					// the last segment closes the deflate stream
+					deflater.finish();
+					while (!deflater.finished())
+					{
+						int len = deflater.deflate(buffer);
+						f_compressed.write(buffer, 0, len);
+					}
+				}
+				else
+				{
+					// the other segments end on a byte boundary, without
+					// ending the stream, so they can simply be concatenated
+					int len;
+					do
+					{
+						len = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+						f_compressed.write(buffer, 0, len);
+					}
+					while (len == buffer.length);
+				}
+			}
+			finally
+			{
+				deflater.end();
+			}
+
+			f_adler = adler.getValue();
+
+			return this;
+		}
+
+		/**
+		 * Copies a row of the image into an rgb byte array
+		 * @param p_y The row to copy
+		 * @param p_row The array to copy into
+		 * @param p_argbs A scratch array for image types that need conversion
+		 */
+		private void loadRow(int p_y, byte[] p_row, int[] p_argbs)
+		{
+			int width = f_img.getWidth();
+
+			byte[] bgr = null;
+			if (f_img.getType() == BufferedImage.TYPE_3BYTE_BGR)
+				bgr = ((DataBufferByte) f_img.getRaster().getDataBuffer()).getData();
+
+			if (bgr != null && bgr.length == p_row.length * f_img.getHeight())
+			{
+				for (int x = 0, b = p_y * width * 3; x < p_row.length; x += 3, b += 3)
+				{
+					p_row[x] = bgr[b + 2];
+					p_row[x + 1] = bgr[b + 1];
+					p_row[x + 2] = bgr[b];
+				}
+			}
+			else
+			{
+				if (f_img.getType() == BufferedImage.TYPE_INT_RGB)
+					System.arraycopy(((DataBufferInt) f_img.getRaster().getDataBuffer()).getData(),
+									p_y * width, p_argbs, 0, width);
+				else
+					f_img.getRGB(0, p_y, width, 1, p_argbs, 0, width);
+
+				for (int i = 0, x = 0; i < width; ++i, x += 3)
+				{
+					int rgb = p_argbs[i];
+					p_row[x] = (byte) (rgb >> 16);
+					p_row[x + 1] = (byte) (rgb >> 8);
+					p_row[x + 2] = (byte) rgb;
+				}
+			}
+		}
+
+		/**
+		 * Filters a row according to the filter strategy
+		 * @param p_row The raw row
+		 * @param p_prior The raw row above, or null if this is the first row of
+		 * the segment
+		 * @param p_filtered One output array for each filter type
+		 * @return The filtered row, starting with its filter type byte
+		 */
+		private byte[] filterRow(byte[] p_row, byte[] p_prior, byte[][] p_filtered)
+		{
+			switch (f_strategy)
+			{
+				case k_none:
+					return filter(FILTER_NONE, p_row, p_prior, p_filtered);
+				case k_sub:
+					return filter(FILTER_SUB, p_row, p_prior, p_filtered);
+				case k_up:
+					return filter(p_prior == null ? FILTER_NONE : FILTER_UP, p_row, p_prior, p_filtered);
+				case k_average:
+					return filter(p_prior == null ? FILTER_SUB : FILTER_AVERAGE, p_row, p_prior, p_filtered);
+				case k_paeth:
+					return filter(p_prior == null ? FILTER_SUB : FILTER_PAETH, p_row, p_prior, p_filtered);
+				default:
+					// try each filter and keep the one with the smallest sum of
+					// absolute differences, which tends to compress best
+					int lastType = p_prior == null ? FILTER_SUB : FILTER_PAETH;
+					byte[] best = null;
+					long bestSum = Long.MAX_VALUE;
+					for (int type = FILTER_NONE; type <= lastType; ++type)
+					{
+						byte[] candidate = filter(type, p_row, p_prior, p_filtered);
+						long sum = 0;
+						for (int i = 1; i < candidate.length && sum < bestSum; ++i)
+							sum += Math.abs((int) candidate[i]);
+
+						if (sum < bestSum)
+						{
+							bestSum = sum;
+							best = candidate;
+						}
+					}
+					return best;
+			}
+		}
+
+		/**
+		 * Applies one filter type to a row
+		 * @param p_type The filter type
+		 * @param p_row The raw row
+		 * @param p_prior The raw row above, only used by up, average, and paeth
+		 * @param p_filtered One output array for each filter type
+		 * @return The filtered row, starting with its filter type byte
+		 */
+		private byte[] filter(int p_type, byte[] p_row, byte[] p_prior, byte[][] p_filtered)
+		{
+			byte[] out = p_filtered[p_type];
+			out[0] = (byte) p_type;
+
+			int bpp = BYTES_PER_PIXEL;
+			switch (p_type)
+			{
+				case FILTER_NONE:
+					System.arraycopy(p_row, 0, out, 1, p_row.length);
+					break;
+				case FILTER_SUB:
+					for (int i = 0; i < p_row.length; ++i)
+						out[i + 1] = (byte) (p_row[i] - (i < bpp ? 0 : p_row[i - bpp]));
+					break;
+				case FILTER_UP:
+					for (int i = 0; i < p_row.length; ++i)
+						out[i + 1] = (byte) (p_row[i] - p_prior[i]);
+					break;
+				case FILTER_AVERAGE:
+					for (int i = 0; i < p_row.length; ++i)
+					{
+						int left = i < bpp ? 0 : p_row[i - bpp] & 0xFF;
+						out[i + 1] = (byte) (p_row[i] - ((left + (p_prior[i] & 0xFF)) >> 1));
+					}
+					break;
+				default:
+					for (int i = 0; i < p_row.length; ++i)
+					{
+						int left = i < bpp ? 0 : p_row[i - bpp] & 0xFF;
+						int upLeft = i < bpp ? 0 : p_prior[i - bpp] & 0xFF;
+						out[i + 1] = (byte) (p_row[i] - paeth(left, p_prior[i] & 0xFF, upLeft));
+					}
+					break;
+			}
+
+			return out;
+		}
+
+		/**
+		 * @return The number of rows in this segment
+		 */
+		public int getRowCount()
+		{
+			return f_rowCount;
+		}
+
+		/**
+		 * @return The deflated data of this segment
+		 */
+		public ByteArrayOutputStream getCompressed()
+		{
+			return f_compressed;
+		}
+
+		/**
+		 * @return The adler-32 checksum of the filtered rows
+		 */
+		public long getAdler()
+		{
+			return f_adler;
+		}
+
+		/**
+		 * @return The length of the filtered rows
+		 */
+		public long getRawLength()
+		{
+			return (long) f_rowCount * (1 + (f_img.getWidth() * BYTES_PER_PIXEL));
+		}
+	}
+}
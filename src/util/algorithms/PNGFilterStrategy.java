@@ -0,0 +1,43 @@
+package util.algorithms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Thomas Elgin (https://github.com/telgin)
+ * How the png encoder chooses a filter for each row of pixels. Filtering makes
+ * image data easier to compress, but the adaptive strategy has to try every
+ * filter on every row.
+ */
+public enum PNGFilterStrategy
+{
+	k_none,
+	k_sub,
+	k_up,
+	k_average,
+	k_paeth,
+	k_adaptive;
+
+	private static Map<String, PNGFilterStrategy> s_map;
+
+	static
+	{
+		s_map = new HashMap<String, PNGFilterStrategy>();
+		s_map.put("none", k_none);
+		s_map.put("sub", k_sub);
+		s_map.put("up", k_up);
+		s_map.put("average", k_average);
+		s_map.put("paeth", k_paeth);
+		s_map.put("adaptive", k_adaptive);
+	}
+
+	/**
+	 * Gets the enum associated with the display string
+	 * @param p_str The display string associated with the enum
+	 * @return The enum, or null if none matches
+	 */
+	public static PNGFilterStrategy parseStrategy(String p_str)
+	{
+		return s_map.get(p_str.toLowerCase());
+	}
+}
@@ -1,5 +1,7 @@
 package util.algorithms;
 
+import java.util.Arrays;
+
 import archive.ArchiveIOException;
 
 /**
@@ -7,12 +9,37 @@ import archive.ArchiveIOException;
  * Creates a random range of numbers from zero to some length and
  * returns these numbers in a random order. Uses the Fisher-Yates O(n) shuffle
  * algorithm for efficiency.
+ *
+ * The array being shuffled is not built up front. Until enough numbers have been
+ * drawn, only the slots which were swapped are recorded (any other slot still
+ * holds its own index), so drawing the first few numbers of a large range takes
+ * time and memory in proportion to the numbers drawn. Once the swapped slots
+ * become a sizable part of the range, the full array is built and used from then
+ * on. Either way, the numbers come out in exactly the same order.
  */
 public class UniqueRandomRange
 {
+	private static final int DRAW_BATCH_SIZE = 1024;
+
+	// ranges this small are always shuffled in a full array
+	private static final int SPARSE_MIN_RANGE = 4096;
+
+	// the full array is built when the swapped slots reach 1/8th of the range
+	private static final int SPARSE_LIMIT_SHIFT = 3;
+	private static final int SPARSE_INITIAL_CAPACITY = 64;
+	private static final int EMPTY_SLOT = -1;
+
 	private int f_index;
+	private int f_range;
 	private int[] f_array;
+	private boolean f_dense;
+	private int[] f_swapSlots;
+	private int[] f_swapValues;
+	private int f_swapCount;
+	private int f_swapShift;
 	private HashRandom f_random;
+	private HashRandom f_ownRandom;
+	private int[] f_draws;
 
 	/**
 	 * Creates a unique random range object for the range: [0, p_range)
@@ -20,24 +47,55 @@ public class UniqueRandomRange
 	 * @param p_range The max value in the range (exclusive)
 	 */
 	public UniqueRandomRange(HashRandom p_random, int p_range)
+	{
+		reset(p_random, p_range);
+	}
+
+	/**
+	 * Resets this object to the full range: [0, p_range), as if it were newly
+	 * constructed. The existing array is kept for reuse if it is large enough,
+	 * but it isn't filled again until it is needed.
+	 * @param p_random The hash random to use to shuffle the range.
+	 * @param p_range The max value in the range (exclusive)
+	 */
+	public void reset(HashRandom p_random, int p_range)
 	{
 		f_random = p_random;
 
 		f_index = p_range;
-		f_array = new int[p_range];
+		f_range = p_range;
 
-		for (int i = 0; i < p_range; ++i)
-			f_array[i] = i;
+		f_dense = false;
+		clearSwaps();
+
+		if (p_range <= SPARSE_MIN_RANGE)
+			materialize();
 	}
 
 	/**
 	 * Reseeds the random number generator which is picking the random numbers
-	 * as they are requested.
+	 * as they are requested. After this, the range has a generator of its own.
 	 * @param p_seed The new seed as an array of bytes
 	 */
 	public void reseed(byte[] p_seed)
 	{
-		f_random = new HashRandom(p_seed);
+		if (f_ownRandom == null)
+			f_ownRandom = new HashRandom(p_seed);
+		else
+			f_ownRandom.reseed(p_seed);
+
+		f_random = f_ownRandom;
+	}
+
+	/**
+	 * Tells if the range is drawing its random numbers from the given generator.
+	 * This is true until the range is reseeded.
+	 * @param p_random The hash random to check
+	 * @return If the given hash random is the one shuffling this range
+	 */
+	public boolean usesGenerator(HashRandom p_random)
+	{
+		return f_random == p_random;
 	}
 
 	/**
@@ -70,18 +128,233 @@ public class UniqueRandomRange
 
 		try
 		{
-			int swapIndex = f_random.nextInt(f_index);
-			int temp = f_array[swapIndex];
-			f_array[swapIndex] = f_array[f_index - 1];
-			f_array[f_index - 1] = temp;
-
-			--f_index;
-
-			return temp;
+			return take(f_random.nextInt(f_index));
 		}
 		catch (ArrayIndexOutOfBoundsException e)
 		{
 			throw new ArchiveIOException("URR ran out of numbers.");
 		}
 	}
+
+	/**
+	 * Gets the next ints from the range and puts them in an array. The ints are
+	 * the same ones that repeated calls to next() would produce.
+	 * @param p_values The array to fill
+	 * @param p_offset The index to start filling at
+	 * @param p_length The number of ints requested
+	 * @return The number of ints actually put in the array. This is less than
+	 * p_length only if the range ran out of numbers.
+	 */
+	public int next(int[] p_values, int p_offset, int p_length)
+	{
+		return draw(p_values, p_offset, p_length);
+	}
+
+	/**
+	 * Draws and discards ints from the range. This leaves the range (and its
+	 * generator) in the same state as the same number of calls to next().
+	 * @param p_count The number of ints to skip
+	 * @return The number of ints actually skipped. This is less than p_count
+	 * only if the range ran out of numbers.
+	 */
+	public int skip(int p_count)
+	{
+		return draw(null, 0, p_count);
+	}
+
+	/**
+	 * Draws ints from the range in batches
+	 * @param p_values The array to fill, or null to discard the ints
+	 * @param p_offset The index to start filling at
+	 * @param p_length The number of ints requested
+	 * @return The number of ints drawn
+	 */
+	private int draw(int[] p_values, int p_offset, int p_length)
+	{
+		if (f_draws == null)
+			f_draws = new int[DRAW_BATCH_SIZE];
+
+		int count = Math.min(p_length, f_index);
+		int end = p_offset + count;
+
+		for (int start = p_offset; start < end; start += f_draws.length)
+		{
+			// the random ints are drawn in batches, then each one is
+			// reduced to the size of the range at the time it is used
+			int batch = Math.min(f_draws.length, end - start);
+			f_random.nextRawInts(f_draws, 0, batch);
+
+			for (int i = 0; i < batch; ++i)
+			{
+				int temp = take(Math.abs(f_draws[i] % f_index));
+
+				if (p_values != null)
+					p_values[start + i] = temp;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Swaps the given slot with the last remaining slot and removes the last
+	 * slot from the range
+	 * @param p_swapIndex The slot which was randomly chosen
+	 * @return The number that was in the chosen slot
+	 */
+	private int take(int p_swapIndex)
+	{
+		int last = f_index - 1;
+		int temp;
+
+		if (f_dense)
+		{
+			temp = f_array[p_swapIndex];
+			f_array[p_swapIndex] = f_array[last];
+			f_array[last] = temp;
+		}
+		else
+		{
+			// the last slot is never looked at again, so only the
+			// chosen slot needs to be recorded
+			temp = getSlot(p_swapIndex);
+			if (p_swapIndex != last)
+				setSlot(p_swapIndex, getSlot(last));
+
+			if (f_swapCount > (f_range >>> SPARSE_LIMIT_SHIFT))
+				materialize();
+		}
+
+		--f_index;
+
+		return temp;
+	}
+
+	/**
+	 * Builds the full array from the swapped slots and switches to using it
+	 */
+	private void materialize()
+	{
+		if (f_array == null || f_array.length < f_range)
+			f_array = new int[f_range];
+
+		for (int i = 0; i < f_index; ++i)
+			f_array[i] = i;
+
+		if (!f_dense && f_swapCount > 0)
+		{
+			for (int i = 0; i < f_swapSlots.length; ++i)
+			{
+				int slot = f_swapSlots[i];
+				if (slot != EMPTY_SLOT && slot < f_index)
+					f_array[slot] = f_swapValues[i];
+			}
+
+			clearSwaps();
+		}
+
+		f_dense = true;
+	}
+
+	/**
+	 * Gets the number in a slot which has not been drawn yet
+	 * @param p_slot The slot
+	 * @return The number in the slot
+	 */
+	private int getSlot(int p_slot)
+	{
+		int mask = f_swapSlots.length - 1;
+		for (int i = hash(p_slot); ; i = (i + 1) & mask)
+		{
+			int slot = f_swapSlots[i];
+			if (slot == p_slot)
+				return f_swapValues[i];
+			if (slot == EMPTY_SLOT)
+				return p_slot;
+		}
+	}
+
+	/**
+	 * Records the number in a slot
+	 * @param p_slot The slot
+	 * @param p_value The number now in the slot
+	 */
+	private void setSlot(int p_slot, int p_value)
+	{
+		int mask = f_swapSlots.length - 1;
+		int i = hash(p_slot);
+		while (f_swapSlots[i] != EMPTY_SLOT && f_swapSlots[i] != p_slot)
+			i = (i + 1) & mask;
+
+		if (f_swapSlots[i] == EMPTY_SLOT)
+		{
+			f_swapSlots[i] = p_slot;
+			++f_swapCount;
+		}
+		f_swapValues[i] = p_value;
+
+		// keep the table at most half full
+		if (f_swapCount > f_swapSlots.length >>> 1)
+			growSwaps();
+	}
+
+	/**
+	 * Doubles the capacity of the swapped slot table
+	 */
+	private void growSwaps()
+	{
+		int[] slots = f_swapSlots;
+		int[] values = f_swapValues;
+
+		f_swapSlots = new int[slots.length * 2];
+		f_swapValues = new int[slots.length * 2];
+		--f_swapShift;
+		Arrays.fill(f_swapSlots, EMPTY_SLOT);
+
+		int mask = f_swapSlots.length - 1;
+		for (int s = 0; s < slots.length; ++s)
+		{
+			if (slots[s] != EMPTY_SLOT)
+			{
+				int i = hash(slots[s]);
+				while (f_swapSlots[i] != EMPTY_SLOT)
+					i = (i + 1) & mask;
+
+				f_swapSlots[i] = slots[s];
+				f_swapValues[i] = values[s];
+			}
+		}
+	}
+
+	/**
+	 * Empties the swapped slot table, creating it if needed. A table which grew is
+	 * replaced by one of the initial capacity, so it doesn't stay large after the
+	 * range is materialized or reset to a smaller one.
+	 */
+	private void clearSwaps()
+	{
+		if (f_swapSlots == null || f_swapSlots.length > SPARSE_INITIAL_CAPACITY)
+		{
+			f_swapSlots = new int[SPARSE_INITIAL_CAPACITY];
+			f_swapValues = new int[SPARSE_INITIAL_CAPACITY];
+			f_swapShift = 32 - Integer.numberOfTrailingZeros(SPARSE_INITIAL_CAPACITY);
+			Arrays.fill(f_swapSlots, EMPTY_SLOT);
+		}
+		else if (f_swapCount > 0)
+		{
+			Arrays.fill(f_swapSlots, EMPTY_SLOT);
+		}
+
+		f_swapCount = 0;
+	}
+
+	/**
+	 * Gets the table position to start looking for a slot at
+	 * @param p_slot The slot
+	 * @return The table position
+	 */
+	private int hash(int p_slot)
+	{
+		return (p_slot * 0x9E3779B9) >>> f_swapShift;
+	}
 }